@@ -0,0 +1,9 @@
+package me.samng.myreads.api;
+
+// A write that lost to another one because the entity isn't at the version the caller insisted on. When other
+// writes kept getting in first until we ran out of retries, it's the ContentionException subclass instead.
+public class ConflictException extends RuntimeException {
+    public ConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package me.samng.myreads.api;
+
+// Other writes kept getting in first until we ran out of retries. Nothing the caller asked for was wrong, so it's
+// worth trying again shortly.
+public class ContentionException extends ConflictException {
+    public ContentionException(String message) {
+        super(message);
+    }
+}
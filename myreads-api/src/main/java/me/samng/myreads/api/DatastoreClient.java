@@ -0,0 +1,117 @@
+package me.samng.myreads.api;
+
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreOptions;
+import com.google.cloud.http.HttpTransportOptions;
+import io.vertx.core.json.JsonObject;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.params.HttpParams;
+
+import java.io.FileInputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A single Datastore service shared by every verticle in the process. The underlying transport keeps a pool of
+// connections to the Datastore endpoint, so we only pay for credentials, TLS and socket setup once rather than
+// on every request. Verticles acquire the client on start and release it on stop; the last release shuts down
+// the transport.
+public class DatastoreClient {
+    private static String defaultKeyPath = "/users/samng/gcp-samng-privatekey.json";
+    private static int defaultMaxConnections = 64;
+    private static int defaultConnectTimeoutMs = 10000;
+    private static int defaultReadTimeoutMs = 30000;
+
+    private static final Object lock = new Object();
+    private static DatastoreClient shared;
+    private static int references = 0;
+    private static final AtomicLong clientsCreated = new AtomicLong();
+
+    private final Datastore datastore;
+    private final ApacheHttpTransport transport;
+    private final int maxConnections;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong uses = new AtomicLong();
+
+    private DatastoreClient(JsonObject config) {
+        maxConnections = config.getInteger("datastore.maxConnections", defaultMaxConnections);
+        connectTimeoutMs = config.getInteger("datastore.connectTimeoutMs", defaultConnectTimeoutMs);
+        readTimeoutMs = config.getInteger("datastore.readTimeoutMs", defaultReadTimeoutMs);
+
+        ApacheHttpTransport.Builder transportBuilder = new ApacheHttpTransport.Builder();
+        HttpParams params = transportBuilder.getHttpParams();
+        ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnections));
+        transport = transportBuilder.build();
+
+        DatastoreOptions.Builder builder = DatastoreOptions.newBuilder()
+            .setProjectId(MainVerticle.AppId)
+            .setTransportOptions(HttpTransportOptions.newBuilder()
+                .setHttpTransportFactory(() -> transport)
+                .setConnectTimeout(connectTimeoutMs)
+                .setReadTimeout(readTimeoutMs)
+                .build());
+
+        String keyPath = config.getString("datastore.keyPath", defaultKeyPath);
+        try (FileInputStream keyStream = new FileInputStream(keyPath)) {
+            builder.setCredentials(GoogleCredentials.fromStream(keyStream));
+        }
+        catch (Exception e) {
+            // Fall back to the application default credentials, which is what we get when running on GCP.
+            System.out.println("Unable to load Datastore credentials from " + keyPath + ", using default credentials");
+        }
+
+        datastore = builder.build().getService();
+        clientsCreated.incrementAndGet();
+    }
+
+    // Returns the process-wide client, creating it on first use. Every call must be paired with release().
+    public static DatastoreClient acquire(JsonObject config) {
+        synchronized (lock) {
+            if (shared == null) {
+                shared = new DatastoreClient(config);
+            }
+            references++;
+            shared.acquisitions.incrementAndGet();
+            return shared;
+        }
+    }
+
+    public void release() {
+        synchronized (lock) {
+            if (shared != this) {
+                return;
+            }
+            references--;
+            if (references == 0) {
+                shared = null;
+                try {
+                    transport.shutdown();
+                }
+                catch (Exception e) {
+                    // Nothing useful to do, we're going away anyway.
+                }
+            }
+        }
+    }
+
+    public Datastore datastore() {
+        uses.incrementAndGet();
+        return datastore;
+    }
+
+    public JsonObject metrics() {
+        return new JsonObject()
+            .put("clientsCreated", clientsCreated.get())
+            .put("acquisitions", acquisitions.get())
+            .put("uses", uses.get())
+            .put("maxConnections", maxConnections)
+            .put("connectTimeoutMs", connectTimeoutMs)
+            .put("readTimeoutMs", readTimeoutMs)
+            .put("lookupBatchSize", DatastoreHelpers.lookupBatchSize)
+            .put("maxEntityGroupsPerTransaction", UnitOfWork.maxEntityGroupsPerTransaction);
+    }
+}
@@ -1,20 +1,18 @@
 package me.samng.myreads.api;
 
-import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.datastore.*;
 import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
 import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
-import com.google.common.collect.ImmutableList;
 import me.samng.myreads.api.entities.*;
-import me.samng.myreads.api.entities.indexes.TagToReadingListElementEntity;
-import me.samng.myreads.api.entities.indexes.TagToReadingListEntity;
 
-import java.io.FileInputStream;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class DatastoreHelpers {
-    private static String keyPath = "/users/samng/gcp-samng-privatekey.json";
     public static String userKind = "user";
     public static String readingListKind = "readingList";
     public static String followedListKind = "followedList";
@@ -23,102 +21,116 @@ public class DatastoreHelpers {
     public static String tagKind = "tag";
     public static String tagToReadingListElementKind = "tagToReadingListElement";
     public static String tagToReadingListKind = "tagToReadingList";
-    private static KeyFactory keyFactory = new KeyFactory(MainVerticle.AppId);
+    public static String jobKind = "job";
+    public static String feedEntryKind = "feedEntry";
     private static String deletedMoniker = "deleted";
 
-    public static Datastore getDatastore() {
-        DatastoreOptions options = null;
-        try {
-            options = DatastoreOptions.newBuilder()
-                .setProjectId(MainVerticle.AppId)
-                .setCredentials(GoogleCredentials.fromStream(
-                    new FileInputStream(keyPath))).build();
-        }
-        catch (Exception e) {
-            assert false;
-        }
+    // Maximum number of keys sent in a single lookup. Datastore caps a lookup at 1000 keys, so larger id lists are
+    // split into several round trips.
+    public static int lookupBatchSize = 500;
+
+    // How many times a versioned write is tried before giving up on a busy entity.
+    public static int maxWriteAttempts = 5;
+
+    // How many entries a user's feed keeps; older ones are dropped as new ones come in. A feed is only trimmed now
+    // and then, so it can run past this by about feedTrimSlack of it before it's cut back.
+    public static int maxFeedEntries = 200;
+    public static double feedTrimSlack = 0.25;
+
+    // Keys are built directly rather than through a shared KeyFactory, since KeyFactory.setKind() mutates the
+    // factory and the helpers are called concurrently from the worker pool.
+    static IncompleteKey newUserKey() {
+        return IncompleteKey.newBuilder(MainVerticle.AppId, userKind).build();
+    }
+
+    static Key newUserKey(Long keyId) {
+        return Key.newBuilder(MainVerticle.AppId, userKind, keyId).build();
+    }
 
-        return options.getService();
+    static IncompleteKey newCommentKey() {
+        return IncompleteKey.newBuilder(MainVerticle.AppId, commentKind).build();
     }
 
-    private static IncompleteKey newUserKey() {
-        keyFactory.setKind(userKind);
-        return keyFactory.newKey();
+    static Key newCommentKey(Long keyId) {
+        return Key.newBuilder(MainVerticle.AppId, commentKind, keyId).build();
     }
 
-    private static Key newUserKey(Long keyId) {
-        keyFactory.setKind(userKind);
-        return keyFactory.newKey(keyId);
+    static IncompleteKey newTagKey() {
+        return IncompleteKey.newBuilder(MainVerticle.AppId, tagKind).build();
     }
 
-    private static IncompleteKey newCommentKey() {
-        keyFactory.setKind(commentKind);
-        return keyFactory.newKey();
+    static Key newTagKey(Long keyId) {
+        return Key.newBuilder(MainVerticle.AppId, tagKind, keyId).build();
     }
 
-    private static Key newCommentKey(Long keyId) {
-        keyFactory.setKind(commentKind);
-        return keyFactory.newKey(keyId);
+    static IncompleteKey newReadingListKey() {
+        return IncompleteKey.newBuilder(MainVerticle.AppId, readingListKind).build();
     }
 
-    private static IncompleteKey newTagKey() {
-        keyFactory.setKind(tagKind);
-        return keyFactory.newKey();
+    static Key newReadingListKey(Long keyId) {
+        return Key.newBuilder(MainVerticle.AppId, readingListKind, keyId).build();
     }
 
-    private static Key newTagKey(Long keyId) {
-        keyFactory.setKind(tagKind);
-        return keyFactory.newKey(keyId);
+    static IncompleteKey newReadingListElementKey() {
+        return IncompleteKey.newBuilder(MainVerticle.AppId, readingListElementKind).build();
     }
 
-    private static IncompleteKey newReadingListKey() {
-        keyFactory.setKind(readingListKind);
-        return keyFactory.newKey();
+    static Key newReadingListElementKey(Long keyId) {
+        return Key.newBuilder(MainVerticle.AppId, readingListElementKind, keyId).build();
     }
 
-    private static Key newReadingListKey(Long keyId) {
-        keyFactory.setKind(readingListKind);
-        return keyFactory.newKey(keyId);
+    static IncompleteKey newFollowedListKey() {
+        return IncompleteKey.newBuilder(MainVerticle.AppId, followedListKind).build();
     }
 
-    private static IncompleteKey newReadingListElementKey() {
-        keyFactory.setKind(readingListElementKind);
-        return keyFactory.newKey();
+    static Key newFollowedListKey(Long keyId) {
+        return Key.newBuilder(MainVerticle.AppId, followedListKind, keyId).build();
     }
 
-    private static Key newReadingListElementKey(Long keyId) {
-        keyFactory.setKind(readingListElementKind);
-        return keyFactory.newKey(keyId);
+    static IncompleteKey newJobKey() {
+        return IncompleteKey.newBuilder(MainVerticle.AppId, jobKind).build();
     }
 
-    private static IncompleteKey newFollowedListKey() {
-        keyFactory.setKind(followedListKind);
-        return keyFactory.newKey();
+    static Key newJobKey(Long keyId) {
+        return Key.newBuilder(MainVerticle.AppId, jobKind, keyId).build();
     }
 
-    private static Key newFollowedListKey(Long keyId) {
-        keyFactory.setKind(followedListKind);
-        return keyFactory.newKey(keyId);
+    // Equality-only queries come back in key order, so putting the time first, counting down, lists a feed newest
+    // first without a composite index. The rest keeps keys from different events apart.
+    public static String feedEntryKeyName(long createdAt, long userId, long readingListId, long readingListElementId) {
+        return String.format("%019d:%d:%d:%d", Long.MAX_VALUE - createdAt, userId, readingListId, readingListElementId);
     }
 
-    private static IncompleteKey newTagToReadingListKey() {
-        keyFactory.setKind(tagToReadingListKind);
-        return keyFactory.newKey();
+    static Key newFeedEntryKey(String keyName) {
+        return Key.newBuilder(MainVerticle.AppId, feedEntryKind, keyName).build();
     }
 
-    private static Key newTagToReadingListKey(Long keyId) {
-        keyFactory.setKind(tagToReadingListKind);
-        return keyFactory.newKey(keyId);
+    // Tag mappings are keyed by what they map, so each mapping has exactly one possible key and can be written or
+    // removed without looking it up first.
+    public static String tagMappingKeyName(long userId, long tagId, long targetId) {
+        return userId + ":" + tagId + ":" + targetId;
+    }
+
+    // The user, tag and target ids back out of a mapping key name, or null if it isn't one.
+    public static long[] parseTagMappingKeyName(String keyName) {
+        String[] parts = keyName == null ? new String[0] : keyName.split(":");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]) };
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
     }
 
-    private static IncompleteKey newTagToReadingListElementKey() {
-        keyFactory.setKind(tagToReadingListElementKind);
-        return keyFactory.newKey();
+    public static Key newTagToReadingListKey(long userId, long tagId, long readingListId) {
+        return Key.newBuilder(MainVerticle.AppId, tagToReadingListKind, tagMappingKeyName(userId, tagId, readingListId)).build();
     }
 
-    private static Key newTagToReadingListElementKey(Long keyId) {
-        keyFactory.setKind(tagToReadingListElementKind);
-        return keyFactory.newKey(keyId);
+    public static Key newTagToReadingListElementKey(long userId, long tagId, long readingListElementId) {
+        return Key.newBuilder(MainVerticle.AppId, tagToReadingListElementKind, tagMappingKeyName(userId, tagId, readingListElementId)).build();
     }
 
     public static long createUser(Datastore datastore, UserEntity userEntity) {
@@ -129,22 +141,44 @@ public class DatastoreHelpers {
             .set("deleted", false)
             .build();
         Entity entity = datastore.add(insertEntity);
+        Generations.bump(entity.getKey().getId());
         return entity.getKey().getId();
     }
 
-    public static long createReadingList(Datastore datastore, ReadingListEntity readingListEntity) {
-        FullEntity<IncompleteKey> insertEntity = Entity.newBuilder(DatastoreHelpers.newReadingListKey())
+    private static FullEntity<IncompleteKey> newReadingList(ReadingListEntity readingListEntity) {
+        return Entity.newBuilder(DatastoreHelpers.newReadingListKey())
             .set("name", readingListEntity.name() == null ? "My Reading List" : readingListEntity.name())
             .set("description", readingListEntity.description() == null ? "" : readingListEntity.description())
             .set("userId", readingListEntity.userId)
-            .set("tagIds", ImmutableList.copyOf(readingListEntity.tagIds().stream().map(LongValue::new).iterator()))
-            .set("readingListElementIds", ImmutableList.copyOf(readingListEntity.readingListElementIds().stream().map(LongValue::new).iterator()))
+            .set("tagIds", EntityCodecs.longValues(readingListEntity.tagIds()))
+            .set("readingListElementIds", EntityCodecs.longValues(readingListEntity.readingListElementIds()))
+            .set("version", 1L)
             .set("deleted", false)
             .build();
-        Entity entity = datastore.add(insertEntity);
+    }
+
+    public static long createReadingList(Datastore datastore, ReadingListEntity readingListEntity) {
+        Entity entity = datastore.add(newReadingList(readingListEntity));
+        Generations.bump(readingListEntity.userId());
         return entity.getKey().getId();
     }
 
+    // The ids line up with the lists.
+    public static List<Long> createReadingLists(Datastore datastore, List<ReadingListEntity> readingListEntities) {
+        ArrayList<FullEntity<IncompleteKey>> insertEntities = new ArrayList<>(readingListEntities.size());
+        HashSet<Long> owners = new HashSet<>();
+        for (ReadingListEntity readingListEntity : readingListEntities) {
+            insertEntities.add(newReadingList(readingListEntity));
+            owners.add(readingListEntity.userId());
+        }
+        try {
+            return addInBatches(datastore, insertEntities);
+        }
+        finally {
+            owners.forEach(Generations::bump);
+        }
+    }
+
     public static long createFollowedList(Datastore datastore, FollowedListEntity followedListEntity) {
         FullEntity<IncompleteKey> insertEntity = Entity.newBuilder(DatastoreHelpers.newFollowedListKey())
             .set("userId", followedListEntity.userId())
@@ -153,24 +187,58 @@ public class DatastoreHelpers {
             .set("deleted", false)
             .build();
         Entity entity = datastore.add(insertEntity);
+        Generations.bump(followedListEntity.userId());
         return entity.getKey().getId();
     }
 
-    public static long createReadingListElement(Datastore datastore, ReadingListElementEntity rleEntity) {
-        FullEntity<IncompleteKey> insertEntity = Entity.newBuilder(DatastoreHelpers.newReadingListElementKey())
+    private static FullEntity<IncompleteKey> newReadingListElement(ReadingListElementEntity rleEntity) {
+        return Entity.newBuilder(DatastoreHelpers.newReadingListElementKey())
             .set("name", rleEntity.name() == null ? "My Reading List Element" : rleEntity.name())
             .set("description", rleEntity.description() == null ? "" : rleEntity.description())
             .set("userId", rleEntity.userId())
             .set("link", rleEntity.link() == null ? "" : rleEntity.link())
-            .set("tagIds", ImmutableList.copyOf(rleEntity.tagIds().stream().map(LongValue::new).iterator()))
-            .set("listIds", ImmutableList.copyOf(rleEntity.listIds().stream().map(LongValue::new).iterator()))
+            .set("tagIds", EntityCodecs.longValues(rleEntity.tagIds()))
+            .set("listIds", EntityCodecs.longValues(rleEntity.listIds()))
+            .set("version", 1L)
             .set("deleted", false)
             .build();
+    }
 
-        Entity entity = datastore.add(insertEntity);
+    public static long createReadingListElement(Datastore datastore, ReadingListElementEntity rleEntity) {
+        Entity entity = datastore.add(newReadingListElement(rleEntity));
+        Generations.bump(rleEntity.userId());
         return entity.getKey().getId();
     }
 
+    // The ids line up with the elements.
+    public static List<Long> createReadingListElements(Datastore datastore, List<ReadingListElementEntity> rleEntities) {
+        ArrayList<FullEntity<IncompleteKey>> insertEntities = new ArrayList<>(rleEntities.size());
+        HashSet<Long> owners = new HashSet<>();
+        for (ReadingListElementEntity rleEntity : rleEntities) {
+            insertEntities.add(newReadingListElement(rleEntity));
+            owners.add(rleEntity.userId());
+        }
+        try {
+            return addInBatches(datastore, insertEntities);
+        }
+        finally {
+            owners.forEach(Generations::bump);
+        }
+    }
+
+    // Inserts the entities a commit's worth at a time, so a whole batch costs a round trip or two rather than one
+    // per entity. The ids come back in the same order as the entities.
+    private static List<Long> addInBatches(Datastore datastore, List<FullEntity<IncompleteKey>> insertEntities) {
+        ArrayList<Long> ids = new ArrayList<>(insertEntities.size());
+        for (int start = 0; start < insertEntities.size(); start += UnitOfWork.maxMutationsPerCommit) {
+            List<FullEntity<IncompleteKey>> chunk = insertEntities.subList(start, Math.min(insertEntities.size(), start + UnitOfWork.maxMutationsPerCommit));
+            for (Entity entity : datastore.add(chunk.toArray(new FullEntity<?>[chunk.size()]))) {
+                ids.add(entity.getKey().getId());
+            }
+        }
+        return ids;
+    }
+
     public static long createComment(Datastore datastore, CommentEntity commentEntity) {
         FullEntity<IncompleteKey> insertEntity = Entity.newBuilder(DatastoreHelpers.newCommentKey())
             .set("commentText", commentEntity.commentText())
@@ -179,135 +247,210 @@ public class DatastoreHelpers {
             .set("deleted", false)
             .build();
         Entity entity = datastore.add(insertEntity);
+        Generations.bump(commentEntity.userId());
         return entity.getKey().getId();
     }
 
     public static long createTag(Datastore datastore, TagEntity tagEntity) {
         FullEntity<IncompleteKey> insertEntity = Entity.newBuilder(DatastoreHelpers.newTagKey())
             .set("tagName", tagEntity.tagName())
+            .set("normalizedName", TagDictionary.normalize(tagEntity.tagName()))
             .set("deleted", false)
             .build();
         Entity addedEntity = datastore.add(insertEntity);
         return addedEntity.getKey().getId();
     }
 
-    public static List<UserEntity> getAllUsers(Datastore datastore) {
-        Query<Entity> query = Query.newEntityQueryBuilder()
+    // Runs one page of the query. A full page hands back a cursor for the next one; a short page is the last.
+    private static <T> Page<T> runPage(
+        Datastore datastore,
+        EntityQuery.Builder builder,
+        int limit,
+        String cursor,
+        Function<Entity, T> convert) {
+        builder.setLimit(limit);
+        if (cursor != null) {
+            builder.setStartCursor(Cursor.fromUrlSafe(cursor));
+        }
+        QueryResults<Entity> queryresult = datastore.run(builder.build());
+
+        ArrayList<T> results = new ArrayList<>();
+        queryresult.forEachRemaining(e -> results.add(convert.apply(e)));
+
+        String nextCursor = results.size() < limit ? null : queryresult.getCursorAfter().toUrlSafe();
+        return new Page<>(results, nextCursor);
+    }
+
+    private static EntityQuery.Builder userQuery() {
+        return Query.newEntityQueryBuilder()
             .setFilter(PropertyFilter.eq(DatastoreHelpers.deletedMoniker, false))
-            .setKind(DatastoreHelpers.userKind)
-            .build();
-        QueryResults<Entity> queryresult = datastore.run(query);
+            .setKind(DatastoreHelpers.userKind);
+    }
+
+    public static List<UserEntity> getAllUsers(Datastore datastore) {
+        QueryResults<Entity> queryresult = datastore.run(userQuery().build());
 
         // Iterate through the results to actually fetch them, then serialize them and return.
         ArrayList<UserEntity> results = new ArrayList<>();
-        queryresult.forEachRemaining(user -> results.add(UserEntity.fromEntity(user)));
+        queryresult.forEachRemaining(e -> results.add(UserEntity.fromEntity(e)));
+
+        return results;
+    }
+
+    public static Page<UserEntity> getAllUsers(Datastore datastore, int limit, String cursor) {
+        return DatastoreHelpers.runPage(datastore, userQuery(), limit, cursor, UserEntity::fromEntity);
+    }
 
+    private static EntityQuery.Builder tagQuery() {
+        return Query.newEntityQueryBuilder()
+            .setKind(DatastoreHelpers.tagKind);
+    }
+
+    // A full scan, for loading the tag dictionary. Tags stored before normalizedName was have it filled in on the
+    // way, so that lookups by name match them before the dictionary is loaded.
+    public static List<TagEntity> getAllTagsForDictionary(Datastore datastore) {
+        ArrayList<TagEntity> results = new ArrayList<>();
+        ArrayList<Entity> missingNormalizedName = new ArrayList<>();
+        datastore.run(tagQuery().build()).forEachRemaining(e -> {
+            TagEntity tag = TagEntity.fromEntity(e);
+            results.add(tag);
+            if (!e.contains("normalizedName") && tag.tagName() != null) {
+                missingNormalizedName.add(Entity.newBuilder(e).set("normalizedName", TagDictionary.normalize(tag.tagName())).build());
+            }
+        });
+
+        for (int start = 0; start < missingNormalizedName.size(); start += UnitOfWork.maxMutationsPerCommit) {
+            List<Entity> chunk = missingNormalizedName.subList(start, Math.min(missingNormalizedName.size(), start + UnitOfWork.maxMutationsPerCommit));
+            datastore.put(chunk.toArray(new Entity[0]));
+            chunk.forEach(e -> EntityCache.invalidate(e.getKey()));
+        }
         return results;
     }
 
     public static List<TagEntity> getAllTags(Datastore datastore) {
-        Query<Entity> query = Query.newEntityQueryBuilder()
-            .setKind(DatastoreHelpers.tagKind)
-            .build();
-        QueryResults<Entity> queryresult = datastore.run(query);
+        QueryResults<Entity> queryresult = datastore.run(tagQuery().build());
 
         // Iterate through the results to actually fetch them, then serialize them and return.
-        ArrayList<TagEntity> results = new ArrayList<TagEntity>();
-        queryresult.forEachRemaining(list -> { results.add(TagEntity.fromEntity(list)); });
+        ArrayList<TagEntity> results = new ArrayList<>();
+        queryresult.forEachRemaining(e -> results.add(TagEntity.fromEntity(e)));
 
         return results;
     }
 
-    public static List<ReadingListEntity> getAllReadingListsForUser(Datastore datastore, long userId) {
-        Query<Entity> query = Query.newEntityQueryBuilder()
+    public static Page<TagEntity> getAllTags(Datastore datastore, int limit, String cursor) {
+        return DatastoreHelpers.runPage(datastore, tagQuery(), limit, cursor, TagEntity::fromEntity);
+    }
+
+    private static EntityQuery.Builder readingListsForUserQuery(long userId) {
+        return Query.newEntityQueryBuilder()
             .setKind(DatastoreHelpers.readingListKind)
             .setFilter(CompositeFilter.and(
                 PropertyFilter.eq("userId", userId),
-                PropertyFilter.eq(DatastoreHelpers.deletedMoniker, false)))
-            .build();
-        QueryResults<Entity> queryresult = datastore.run(query);
+                PropertyFilter.eq(DatastoreHelpers.deletedMoniker, false)));
+    }
+
+    public static List<ReadingListEntity> getAllReadingListsForUser(Datastore datastore, long userId) {
+        QueryResults<Entity> queryresult = datastore.run(readingListsForUserQuery(userId).build());
 
         // Iterate through the results to actually fetch them, then serialize them and return.
         ArrayList<ReadingListEntity> results = new ArrayList<>();
-        queryresult.forEachRemaining(list -> results.add(ReadingListEntity.fromEntity(list)));
+        queryresult.forEachRemaining(e -> results.add(ReadingListEntity.fromEntity(e)));
 
         return results;
     }
 
-    public static List<ReadingListEntity> getAllReadingListsForUserWithTag(Datastore datastore, long userId, long tagId) {
-        Query<Entity> query = Query.newEntityQueryBuilder()
-            .setKind(DatastoreHelpers.tagToReadingListKind)
-            .setFilter(CompositeFilter.and(
-                PropertyFilter.eq("tagId", tagId),
-                PropertyFilter.eq("userId", userId)))
-            .build();
-        QueryResults<Entity> queryresult = datastore.run(query);
-
-        // Iterate through the results to actually fetch them, then serialize them and return.
-        ArrayList<TagToReadingListEntity> map = new ArrayList<>();
-        queryresult.forEachRemaining(list -> map.add(TagToReadingListEntity.fromEntity(list)));
-
-        ArrayList<ReadingListEntity> results = new ArrayList<>();
-        for (TagToReadingListEntity e : map) {
-            results.add(DatastoreHelpers.getReadingList(datastore, e.readingListId));
-        }
+    public static Page<ReadingListEntity> getAllReadingListsForUser(Datastore datastore, long userId, int limit, String cursor) {
+        return DatastoreHelpers.runPage(datastore, readingListsForUserQuery(userId), limit, cursor, ReadingListEntity::fromEntity);
+    }
 
-        return results;
+    // Evaluated against the user's tag index, so only the matching lists are read.
+    public static List<ReadingListEntity> getReadingListsForUserMatching(Datastore datastore, long userId, TagQuery query) {
+        List<Long> readingListIds = query.matches(TagIndex.readingLists().forUser(datastore, userId));
+        return withoutMissing(DatastoreHelpers.getReadingLists(datastore, readingListIds));
     }
 
-    public static List<ReadingListElementEntity> getAllReadingListElementsForUser(Datastore datastore, long userId) {
-        Query<Entity> query = Query.newEntityQueryBuilder()
+    private static EntityQuery.Builder readingListElementsForUserQuery(long userId) {
+        return Query.newEntityQueryBuilder()
             .setKind(DatastoreHelpers.readingListElementKind)
             .setFilter(CompositeFilter.and(
                 PropertyFilter.eq("userId", userId),
-                PropertyFilter.eq(DatastoreHelpers.deletedMoniker, false)))
-            .build();
-        QueryResults<Entity> queryresult = datastore.run(query);
+                PropertyFilter.eq(DatastoreHelpers.deletedMoniker, false)));
+    }
+
+    public static List<ReadingListElementEntity> getAllReadingListElementsForUser(Datastore datastore, long userId) {
+        QueryResults<Entity> queryresult = datastore.run(readingListElementsForUserQuery(userId).build());
 
         // Iterate through the results to actually fetch them, then serialize them and return.
         ArrayList<ReadingListElementEntity> results = new ArrayList<>();
-        queryresult.forEachRemaining(list -> results.add(ReadingListElementEntity.fromEntity(list)));
+        queryresult.forEachRemaining(e -> results.add(ReadingListElementEntity.fromEntity(e)));
 
         return results;
     }
 
-    public static List<ReadingListElementEntity> getAllReadingListElementsForUserWithTag(Datastore datastore, long userId, long tagId) {
-        Query<Entity> query = Query.newEntityQueryBuilder()
-            .setKind(DatastoreHelpers.tagToReadingListElementKind)
-            .setFilter(CompositeFilter.and(
-                PropertyFilter.eq("tagId", tagId),
-                PropertyFilter.eq("userId", userId)))
-            .build();
-        QueryResults<Entity> queryresult = datastore.run(query);
+    public static Page<ReadingListElementEntity> getAllReadingListElementsForUser(Datastore datastore, long userId, int limit, String cursor) {
+        return DatastoreHelpers.runPage(datastore, readingListElementsForUserQuery(userId), limit, cursor, ReadingListElementEntity::fromEntity);
+    }
 
-        // Iterate through the results to actually fetch them, then serialize them and return.
-        ArrayList<TagToReadingListElementEntity> map = new ArrayList<>();
-        queryresult.forEachRemaining(list -> map.add(TagToReadingListElementEntity.fromEntity(list)));
+    public static List<ReadingListElementEntity> getReadingListElementsForUserMatching(Datastore datastore, long userId, TagQuery query) {
+        List<Long> readingListElementIds = query.matches(TagIndex.readingListElements().forUser(datastore, userId));
+        return withoutMissing(DatastoreHelpers.getReadingListElements(datastore, readingListElementIds));
+    }
 
-        ArrayList<ReadingListElementEntity> results = new ArrayList<>();
-        for (TagToReadingListElementEntity e : map) {
-            results.add(DatastoreHelpers.getReadingListElement(datastore, e.readingListElementId));
+    // A mapping can outlive what it maps, when the list or element is deleted but its tags aren't removed.
+    private static <T> List<T> withoutMissing(List<T> entities) {
+        ArrayList<T> results = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            if (entity != null) {
+                results.add(entity);
+            }
         }
+        return results;
+    }
+
+    private static EntityQuery.Builder commentsForReadingListElementQuery(long userId, long readingListElementId) {
+        return Query.newEntityQueryBuilder()
+            .setKind(DatastoreHelpers.commentKind)
+            .setFilter(CompositeFilter.and(
+                PropertyFilter.eq("readingListElementId", readingListElementId),
+                PropertyFilter.eq("userId", userId)));
+    }
+
+    public static List<CommentEntity> getAllCommentsForReadingListElement(Datastore datastore, long userId, long readingListElementId) {
+        QueryResults<Entity> queryresult = datastore.run(commentsForReadingListElementQuery(userId, readingListElementId).build());
+
+        // Iterate through the results to actually fetch them, then serialize them and return.
+        ArrayList<CommentEntity> results = new ArrayList<>();
+        queryresult.forEachRemaining(e -> results.add(CommentEntity.fromEntity(e)));
 
         return results;
     }
 
-    public static List<FollowedListEntity> getAllFollowedListsForUser(Datastore datastore, long userId) {
-        Query<Entity> query = Query.newEntityQueryBuilder()
+    public static Page<CommentEntity> getAllCommentsForReadingListElement(Datastore datastore, long userId, long readingListElementId, int limit, String cursor) {
+        return DatastoreHelpers.runPage(datastore, commentsForReadingListElementQuery(userId, readingListElementId), limit, cursor, CommentEntity::fromEntity);
+    }
+
+    private static EntityQuery.Builder followedListsForUserQuery(long userId) {
+        return Query.newEntityQueryBuilder()
             .setKind(DatastoreHelpers.followedListKind)
             .setFilter(CompositeFilter.and(
                 PropertyFilter.eq("userId", userId),
-                PropertyFilter.eq(DatastoreHelpers.deletedMoniker, false)))
-            .build();
-        QueryResults<Entity> queryresult = datastore.run(query);
+                PropertyFilter.eq(DatastoreHelpers.deletedMoniker, false)));
+    }
+
+    public static List<FollowedListEntity> getAllFollowedListsForUser(Datastore datastore, long userId) {
+        QueryResults<Entity> queryresult = datastore.run(followedListsForUserQuery(userId).build());
 
         // Iterate through the results to actually fetch them, then serialize them and return.
         ArrayList<FollowedListEntity> results = new ArrayList<>();
-        queryresult.forEachRemaining(followedList -> results.add(FollowedListEntity.fromEntity(followedList)));
+        queryresult.forEachRemaining(e -> results.add(FollowedListEntity.fromEntity(e)));
 
         return results;
     }
 
+    public static Page<FollowedListEntity> getAllFollowedListsForUser(Datastore datastore, long userId, int limit, String cursor) {
+        return DatastoreHelpers.runPage(datastore, followedListsForUserQuery(userId), limit, cursor, FollowedListEntity::fromEntity);
+    }
+
     public static List<FollowedListEntity> getAllFollowedListsForList(Datastore datastore, long readingListId) {
         Query<Entity> query = Query.newEntityQueryBuilder()
             .setKind(DatastoreHelpers.followedListKind)
@@ -326,7 +469,7 @@ public class DatastoreHelpers {
 
     public static UserEntity getUser(Datastore datastore, long userId) {
         Key key = DatastoreHelpers.newUserKey(userId);
-        Entity entity = datastore.get(key);
+        Entity entity = EntityCache.get(datastore, key);
         if (entity == null) {
             return null;
         }
@@ -339,7 +482,7 @@ public class DatastoreHelpers {
 
     public static ReadingListEntity getReadingList(Datastore datastore, long readingListId) {
         Key key = DatastoreHelpers.newReadingListKey(readingListId);
-        Entity entity = datastore.get(key);
+        Entity entity = EntityCache.get(datastore, key);
 
         if (entity == null) {
             return null;
@@ -353,7 +496,7 @@ public class DatastoreHelpers {
 
     public static ReadingListElementEntity getReadingListElement(Datastore datastore, long readingListElementId) {
         Key key = DatastoreHelpers.newReadingListElementKey(readingListElementId);
-        Entity entity = datastore.get(key);
+        Entity entity = EntityCache.get(datastore, key);
         if (entity == null) {
             return null;
         }
@@ -366,7 +509,7 @@ public class DatastoreHelpers {
 
     public static FollowedListEntity getFollowedList(Datastore datastore, long listId) {
         Key key = DatastoreHelpers.newFollowedListKey(listId);
-        Entity entity = datastore.get(key);
+        Entity entity = EntityCache.get(datastore, key);
         if (entity == null) {
             return null;
         }
@@ -379,7 +522,7 @@ public class DatastoreHelpers {
 
     public static CommentEntity getComment(Datastore datastore, long commentId) {
         Key key = DatastoreHelpers.newCommentKey(commentId);
-        Entity entity = datastore.get(key);
+        Entity entity = EntityCache.get(datastore, key);
         if (entity == null) {
             return null;
         }
@@ -392,7 +535,7 @@ public class DatastoreHelpers {
 
     public static TagEntity getTag(Datastore datastore, long tagId) {
         Key key = DatastoreHelpers.newTagKey(tagId);
-        Entity entity = datastore.get(key);
+        Entity entity = EntityCache.get(datastore, key);
         if (entity == null) {
             return null;
         }
@@ -403,29 +546,83 @@ public class DatastoreHelpers {
         return tagEntity;
     }
 
+    // Looks up all the keys with as few round trips as possible, skipping any that are already cached. The result
+    // lines up with the keys, with null for any key that doesn't exist.
+    static List<Entity> fetchInBatches(Datastore datastore, List<Key> keys) {
+        ArrayList<Entity> results = new ArrayList<>(keys.size());
+        for (int start = 0; start < keys.size(); start += lookupBatchSize) {
+            results.addAll(EntityCache.fetch(datastore, keys.subList(start, Math.min(keys.size(), start + lookupBatchSize))));
+        }
+        return results;
+    }
+
+    public static List<ReadingListEntity> getReadingLists(Datastore datastore, List<Long> readingListIds) {
+        ArrayList<Key> keys = new ArrayList<>(readingListIds.size());
+        readingListIds.forEach(id -> keys.add(DatastoreHelpers.newReadingListKey(id)));
+
+        ArrayList<ReadingListEntity> results = new ArrayList<>(keys.size());
+        for (Entity entity : fetchInBatches(datastore, keys)) {
+            ReadingListEntity readingListEntity = entity == null ? null : ReadingListEntity.fromEntity(entity);
+            results.add(readingListEntity == null || readingListEntity.deleted ? null : readingListEntity);
+        }
+        return results;
+    }
+
+    public static List<ReadingListElementEntity> getReadingListElements(Datastore datastore, List<Long> readingListElementIds) {
+        ArrayList<Key> keys = new ArrayList<>(readingListElementIds.size());
+        readingListElementIds.forEach(id -> keys.add(DatastoreHelpers.newReadingListElementKey(id)));
+
+        ArrayList<ReadingListElementEntity> results = new ArrayList<>(keys.size());
+        for (Entity entity : fetchInBatches(datastore, keys)) {
+            ReadingListElementEntity rleEntity = entity == null ? null : ReadingListElementEntity.fromEntity(entity);
+            results.add(rleEntity == null || rleEntity.deleted ? null : rleEntity);
+        }
+        return results;
+    }
+
+    public static List<TagEntity> getTags(Datastore datastore, List<Long> tagIds) {
+        ArrayList<Key> keys = new ArrayList<>(tagIds.size());
+        tagIds.forEach(id -> keys.add(DatastoreHelpers.newTagKey(id)));
+
+        ArrayList<TagEntity> results = new ArrayList<>(keys.size());
+        for (Entity entity : fetchInBatches(datastore, keys)) {
+            TagEntity tagEntity = entity == null ? null : TagEntity.fromEntity(entity);
+            results.add(tagEntity == null || tagEntity.deleted ? null : tagEntity);
+        }
+        return results;
+    }
+
+    // Matches the way the tag dictionary does, on the normalized name, and like the dictionary skips deleted tags.
     public static TagEntity getTagByName(Datastore datastore, String tagName) {
         Query<Entity> query = Query.newEntityQueryBuilder()
             .setKind(DatastoreHelpers.tagKind)
-            .setFilter(PropertyFilter.eq("tagName", tagName))
+            .setFilter(PropertyFilter.eq("normalizedName", TagDictionary.normalize(tagName)))
             .build();
         QueryResults<Entity> queryresult = datastore.run(query);
 
         // We should only have one, but since there may be errors, just return the first one.
-        if (queryresult.hasNext()) {
-            return TagEntity.fromEntity(queryresult.next());
+        while (queryresult.hasNext()) {
+            TagEntity tagEntity = TagEntity.fromEntity(queryresult.next());
+            if (!tagEntity.deleted) {
+                return tagEntity;
+            }
         }
         return null;
     }
 
-    public static boolean updateUser(Datastore datastore, UserEntity userEntity, boolean updateForDelete) {
+    // The stored form of each entity type, marked deleted or not.
+    static Entity toEntity(UserEntity userEntity, boolean deleted) {
         Key key = DatastoreHelpers.newUserKey(userEntity.id());
-        Entity newEntity = Entity.newBuilder(key)
+        return Entity.newBuilder(key)
             .set("name", userEntity.name())
             .set("email", userEntity.email())
             .set("userId", userEntity.userId())
-            .set("deleted", updateForDelete)
+            .set("deleted", deleted)
             .build();
+    }
 
+    public static boolean updateUser(Datastore datastore, UserEntity userEntity, boolean updateForDelete) {
+        Entity newEntity = DatastoreHelpers.toEntity(userEntity, updateForDelete);
         try {
             datastore.update(newEntity);
             return true;
@@ -433,55 +630,179 @@ public class DatastoreHelpers {
         catch (DatastoreException e) {
             return false;
         }
+        finally {
+            EntityCache.invalidate(newEntity.getKey());
+            Generations.bump(userEntity.id());
+        }
     }
 
-    public static boolean updateReadingList(Datastore datastore, ReadingListEntity readingListEntity, boolean updateForDelete) {
-        Entity.Builder builder = Entity.newBuilder(DatastoreHelpers.newReadingListKey(readingListEntity.id))
+    static Entity toEntity(ReadingListEntity readingListEntity, boolean deleted) {
+        return Entity.newBuilder(DatastoreHelpers.newReadingListKey(readingListEntity.id))
             .set("name", readingListEntity.name())
             .set("description", readingListEntity.description())
             .set("userId", readingListEntity.userId())
-            .set("tagIds", ImmutableList.copyOf(readingListEntity.tagIds().stream().map(LongValue::new).iterator()))
-            .set("readingListElementIds", ImmutableList.copyOf(readingListEntity.readingListElementIds().stream().map(LongValue::new).iterator()))
-            .set("deleted", updateForDelete);
+            .set("tagIds", EntityCodecs.longValues(readingListEntity.tagIds()))
+            .set("readingListElementIds", EntityCodecs.longValues(readingListEntity.readingListElementIds()))
+            .set("version", readingListEntity.version())
+            .set("deleted", deleted)
+            .build();
+    }
+
+    // What a client can change with a PUT. The id lists are left alone, since they belong to the routes that add
+    // and remove elements and tags, and overwriting them would undo anything those did since the client's read. If
+    // the entity carries a version, the stored one has to match it.
+    public static boolean updateReadingList(Datastore datastore, ReadingListEntity readingListEntity, boolean updateForDelete) {
+        return modifyReadingList(datastore, readingListEntity.id, updateForDelete ? 0 : readingListEntity.version, current -> {
+            if (updateForDelete) {
+                current.deleted = true;
+            }
+            else {
+                current.name = readingListEntity.name;
+                current.description = readingListEntity.description;
+            }
+        }) != null;
+    }
 
-        Entity newEntity = builder.build();
+    // Reads the list inside a transaction, applies the change and writes it back one version on. If another write
+    // commits first, Datastore aborts ours and the whole read, change and write runs again on what's there now. An
+    // expected version of 0 takes whatever version is stored. Null if the list doesn't exist or is deleted.
+    public static ReadingListEntity modifyReadingList(Datastore datastore, long readingListId, long expectedVersion, Consumer<ReadingListEntity> change) {
+        Key key = DatastoreHelpers.newReadingListKey(readingListId);
         try {
-            datastore.update(newEntity);
-            return true;
+            ReadingListEntity updated = DatastoreHelpers.writeInTransaction(datastore, transaction -> {
+                Entity current = transaction.get(key);
+                ReadingListEntity entity = current == null ? null : ReadingListEntity.fromEntity(current);
+                if (entity == null || entity.deleted) {
+                    return null;
+                }
+
+                DatastoreHelpers.checkVersion(expectedVersion, entity.version);
+                change.accept(entity);
+                entity.version++;
+                transaction.put(DatastoreHelpers.toEntity(entity, entity.deleted));
+                return entity;
+            });
+            if (updated != null) {
+                Generations.bump(updated.userId);
+            }
+            return updated;
         }
-        catch (DatastoreException e) {
-            return false;
+        finally {
+            EntityCache.invalidate(key);
         }
     }
 
-    public static boolean updateReadingListElement(Datastore datastore, ReadingListElementEntity readingListElementEntity, boolean updateForDelete) {
-        Entity.Builder builder = Entity.newBuilder(DatastoreHelpers.newReadingListElementKey(readingListElementEntity.id))
+    static Entity toEntity(ReadingListElementEntity readingListElementEntity, boolean deleted) {
+        return Entity.newBuilder(DatastoreHelpers.newReadingListElementKey(readingListElementEntity.id))
             .set("name", readingListElementEntity.name())
             .set("description", readingListElementEntity.description())
             .set("userId", readingListElementEntity.userId())
             .set("link", readingListElementEntity.link())
-            .set("tagIds", ImmutableList.copyOf(readingListElementEntity.tagIds().stream().map(LongValue::new).iterator()))
-            .set("listIds", ImmutableList.copyOf(readingListElementEntity.listIds().stream().map(LongValue::new).iterator()))
-            .set("commentIds", ImmutableList.copyOf(readingListElementEntity.commentIds().stream().map(LongValue::new).iterator()))
-            .set("deleted", updateForDelete);
-        Entity newEntity = builder.build();
+            .set("tagIds", EntityCodecs.longValues(readingListElementEntity.tagIds()))
+            .set("listIds", EntityCodecs.longValues(readingListElementEntity.listIds()))
+            .set("commentIds", EntityCodecs.longValues(readingListElementEntity.commentIds()))
+            .set("version", readingListElementEntity.version())
+            .set("deleted", deleted)
+            .build();
+    }
+
+    public static boolean updateReadingListElement(Datastore datastore, ReadingListElementEntity readingListElementEntity, boolean updateForDelete) {
+        return modifyReadingListElement(datastore, readingListElementEntity.id, updateForDelete ? 0 : readingListElementEntity.version, current -> {
+            if (updateForDelete) {
+                current.deleted = true;
+            }
+            else {
+                current.name = readingListElementEntity.name;
+                current.description = readingListElementEntity.description;
+                current.link = readingListElementEntity.link;
+            }
+        }) != null;
+    }
+
+    public static ReadingListElementEntity modifyReadingListElement(Datastore datastore, long readingListElementId, long expectedVersion, Consumer<ReadingListElementEntity> change) {
+        Key key = DatastoreHelpers.newReadingListElementKey(readingListElementId);
         try {
-            datastore.update(newEntity);
-            return true;
+            ReadingListElementEntity updated = DatastoreHelpers.writeInTransaction(datastore, transaction -> {
+                Entity current = transaction.get(key);
+                ReadingListElementEntity entity = current == null ? null : ReadingListElementEntity.fromEntity(current);
+                if (entity == null || entity.deleted) {
+                    return null;
+                }
+
+                DatastoreHelpers.checkVersion(expectedVersion, entity.version);
+                change.accept(entity);
+                entity.version++;
+                transaction.put(DatastoreHelpers.toEntity(entity, entity.deleted));
+                return entity;
+            });
+            if (updated != null) {
+                Generations.bump(updated.userId);
+            }
+            return updated;
         }
-        catch (DatastoreException e) {
-            return false;
+        finally {
+            EntityCache.invalidate(key);
         }
     }
 
-    public static boolean updateComment(Datastore datastore, CommentEntity commentEntity, boolean updateForDelete) {
-        Entity.Builder builder = Entity.newBuilder(DatastoreHelpers.newCommentKey(commentEntity.id))
+    static void checkVersion(long expectedVersion, long currentVersion) {
+        if (expectedVersion > 0 && expectedVersion != currentVersion) {
+            throw new ConflictException("Expected version " + expectedVersion + " but found version " + currentVersion);
+        }
+    }
+
+    // Datastore aborts a transaction that read or wrote something another transaction committed in the meantime.
+    public static boolean isConflict(DatastoreException e) {
+        return e.getCode() == 10 || e.getCode() == 409 || "ABORTED".equals(e.getReason());
+    }
+
+    // A short pause before trying again, growing with each attempt and jittered so that writers that collided
+    // don't just collide again.
+    public static void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 10L << Math.min(attempt, 4)));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T writeInTransaction(Datastore datastore, Function<Transaction, T> work) {
+        for (int attempt = 1; ; attempt++) {
+            Transaction transaction = datastore.newTransaction();
+            try {
+                T result = work.apply(transaction);
+                transaction.commit();
+                return result;
+            }
+            catch (DatastoreException e) {
+                if (!DatastoreHelpers.isConflict(e)) {
+                    throw e;
+                }
+                if (attempt >= maxWriteAttempts) {
+                    throw new ContentionException("Gave up after " + attempt + " conflicting writes");
+                }
+            }
+            finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+            DatastoreHelpers.backOff(attempt);
+        }
+    }
+
+    static Entity toEntity(CommentEntity commentEntity, boolean deleted) {
+        return Entity.newBuilder(DatastoreHelpers.newCommentKey(commentEntity.id))
             .set("commentText", commentEntity.commentText())
             .set("userId", commentEntity.userId())
             .set("readingListElementId", commentEntity.readingListElementId())
-            .set("deleted", updateForDelete);
+            .set("deleted", deleted)
+            .build();
+    }
 
-        Entity newEntity = builder.build();
+    public static boolean updateComment(Datastore datastore, CommentEntity commentEntity, boolean updateForDelete) {
+        Entity newEntity = DatastoreHelpers.toEntity(commentEntity, updateForDelete);
         try {
             datastore.update(newEntity);
             return true;
@@ -489,17 +810,24 @@ public class DatastoreHelpers {
         catch (DatastoreException e) {
             return false;
         }
+        finally {
+            EntityCache.invalidate(newEntity.getKey());
+            Generations.bump(commentEntity.userId());
+        }
     }
 
-    public static boolean updateFollowedList(Datastore datastore, FollowedListEntity followedList, boolean updateForDelete) {
-        Entity.Builder builder = Entity.newBuilder(DatastoreHelpers.newFollowedListKey(followedList.id))
+    static Entity toEntity(FollowedListEntity followedList, boolean deleted) {
+        return Entity.newBuilder(DatastoreHelpers.newFollowedListKey(followedList.id))
             .set("userId", followedList.userId())
             .set("listId", followedList.listId())
             .set("ownerId", followedList.ownerId())
             .set("orphaned", followedList.orphaned())
-            .set("deleted", updateForDelete);
+            .set("deleted", deleted)
+            .build();
+    }
 
-        Entity newEntity = builder.build();
+    public static boolean updateFollowedList(Datastore datastore, FollowedListEntity followedList, boolean updateForDelete) {
+        Entity newEntity = DatastoreHelpers.toEntity(followedList, updateForDelete);
         try {
             datastore.update(newEntity);
             return true;
@@ -507,14 +835,22 @@ public class DatastoreHelpers {
         catch (DatastoreException e) {
             return false;
         }
+        finally {
+            EntityCache.invalidate(newEntity.getKey());
+            Generations.bump(followedList.userId());
+        }
     }
 
-    private static boolean updateTag(Datastore datastore, TagEntity tag, boolean updateForDelete) {
-        Entity.Builder builder = Entity.newBuilder(DatastoreHelpers.newTagKey(tag.id))
+    static Entity toEntity(TagEntity tag, boolean deleted) {
+        return Entity.newBuilder(DatastoreHelpers.newTagKey(tag.id))
             .set("tagName", tag.tagName())
-            .set("deleted", updateForDelete);
+            .set("normalizedName", TagDictionary.normalize(tag.tagName()))
+            .set("deleted", deleted)
+            .build();
+    }
 
-        Entity newEntity = builder.build();
+    private static boolean updateTag(Datastore datastore, TagEntity tag, boolean updateForDelete) {
+        Entity newEntity = DatastoreHelpers.toEntity(tag, updateForDelete);
         try {
             datastore.update(newEntity);
             return true;
@@ -522,6 +858,9 @@ public class DatastoreHelpers {
         catch (DatastoreException e) {
             return false;
         }
+        finally {
+            EntityCache.invalidate(newEntity.getKey());
+        }
     }
 
     public static void deleteFollowedList(Datastore datastore, long listId) {
@@ -537,71 +876,225 @@ public class DatastoreHelpers {
     }
 
     public static void deleteReadingListElement(Datastore datastore, long readingListElementId) {
-        updateReadingListElement(datastore, getReadingListElement(datastore, readingListElementId), true);
+        modifyReadingListElement(datastore, readingListElementId, 0, current -> current.deleted = true);
     }
 
     public static void deleteReadingList(Datastore datastore, long readingListId) {
-        updateReadingList(datastore,  getReadingList(datastore,  readingListId), true);
+        modifyReadingList(datastore, readingListId, 0, current -> current.deleted = true);
     }
 
-    // Tag management methods.
-    public static long addTagToReadingListElementMapping(Datastore datastore, long userId, long tagId, long readingListElementId) {
-        FullEntity<IncompleteKey> insertEntity = Entity.newBuilder(DatastoreHelpers.newTagToReadingListElementKey())
+    // Tag management methods. Both add and delete are blind writes, so repeating either one is harmless.
+    // Keeps the tag index in step with a mapping write. If the write failed we can't tell whether it landed.
+    private static void writeMapping(Key key, Runnable write, boolean present) {
+        try {
+            write.run();
+        }
+        catch (RuntimeException e) {
+            TagIndex.unsure(key);
+            throw e;
+        }
+        TagIndex.written(key, present);
+    }
+
+    static Entity tagToReadingListElementEntity(long userId, long tagId, long readingListElementId) {
+        return Entity.newBuilder(DatastoreHelpers.newTagToReadingListElementKey(userId, tagId, readingListElementId))
             .set("tagId", tagId)
             .set("userId", userId)
             .set("readingListElementId", readingListElementId)
             .build();
-        Entity addedEntity = datastore.add(insertEntity);
-        return addedEntity.getKey().getId();
     }
 
-    public static void deleteTagToReadingListElementMapping(Datastore datastore, long userId, long tagId, long readingListElementId) {
-        Query<Entity> query = Query.newEntityQueryBuilder()
-            .setKind(DatastoreHelpers.tagToReadingListElementKind)
-            .setFilter(CompositeFilter.and(
-                PropertyFilter.eq("tagId", tagId),
-                PropertyFilter.eq("userId", userId),
-                PropertyFilter.eq("readingListElementId", readingListElementId)))
-            .build();
-        QueryResults<Entity> queryresult = datastore.run(query);
-
-        // Iterate through the results to actually fetch them, then serialize them and return.
-        ArrayList<TagToReadingListElementEntity> map = new ArrayList<>();
-        queryresult.forEachRemaining(list -> map.add(TagToReadingListElementEntity.fromEntity(list)));
+    public static void addTagToReadingListElementMapping(Datastore datastore, long userId, long tagId, long readingListElementId) {
+        Key key = DatastoreHelpers.newTagToReadingListElementKey(userId, tagId, readingListElementId);
+        writeMapping(key, () -> datastore.put(DatastoreHelpers.tagToReadingListElementEntity(userId, tagId, readingListElementId)), true);
+        Generations.bump(userId);
+    }
 
-        for (TagToReadingListElementEntity e : map) {
-            Key key = DatastoreHelpers.newTagToReadingListElementKey(e.id);
-            datastore.delete(key);
-        }
+    public static void deleteTagToReadingListElementMapping(Datastore datastore, long userId, long tagId, long readingListElementId) {
+        Key key = DatastoreHelpers.newTagToReadingListElementKey(userId, tagId, readingListElementId);
+        writeMapping(key, () -> datastore.delete(key), false);
+        Generations.bump(userId);
     }
 
-    public static long addTagToReadingListMapping(Datastore datastore, long userId, long tagId, long readingListId) {
-        FullEntity<IncompleteKey> insertEntity = Entity.newBuilder(DatastoreHelpers.newTagToReadingListKey())
+    static Entity tagToReadingListEntity(long userId, long tagId, long readingListId) {
+        return Entity.newBuilder(DatastoreHelpers.newTagToReadingListKey(userId, tagId, readingListId))
             .set("tagId", tagId)
             .set("userId", userId)
             .set("readingListId", readingListId)
             .build();
-        Entity addedEntity = datastore.add(insertEntity);
-        return addedEntity.getKey().getId();
+    }
+
+    public static void addTagToReadingListMapping(Datastore datastore, long userId, long tagId, long readingListId) {
+        Key key = DatastoreHelpers.newTagToReadingListKey(userId, tagId, readingListId);
+        writeMapping(key, () -> datastore.put(DatastoreHelpers.tagToReadingListEntity(userId, tagId, readingListId)), true);
+        Generations.bump(userId);
     }
 
     public static void deleteTagToReadingListMapping(Datastore datastore, long userId, long tagId, long readingListId) {
-        Query<Entity> query = Query.newEntityQueryBuilder()
-            .setKind(DatastoreHelpers.tagToReadingListKind)
-            .setFilter(CompositeFilter.and(
-                PropertyFilter.eq("tagId", tagId),
-                PropertyFilter.eq("userId", userId),
-                PropertyFilter.eq("readingListId", readingListId)))
+        Key key = DatastoreHelpers.newTagToReadingListKey(userId, tagId, readingListId);
+        writeMapping(key, () -> datastore.delete(key), false);
+        Generations.bump(userId);
+    }
+
+    private static EntityQuery.Builder feedQuery(long userId) {
+        return Query.newEntityQueryBuilder()
+            .setKind(DatastoreHelpers.feedEntryKind)
+            .setFilter(PropertyFilter.eq("userId", userId));
+    }
+
+    public static Page<FeedEntryEntity> getFeed(Datastore datastore, long userId, int limit, String cursor) {
+        return runPage(datastore, feedQuery(userId), limit, cursor, FeedEntryEntity::fromEntity);
+    }
+
+    // Fans the new elements out to the feed of everyone who follows the list, a commit's worth of entries at a
+    // time, then trims some of those feeds back to maxFeedEntries. Returns how many entries were written.
+    public static int addToFeeds(Datastore datastore, long readingListId, List<Long> readingListElementIds) {
+        ReadingListEntity list = getReadingList(datastore, readingListId);
+        if (list == null || readingListElementIds.isEmpty()) {
+            return 0;
+        }
+
+        HashSet<Long> followers = new HashSet<>();
+        for (FollowedListEntity followedList : getAllFollowedListsForList(datastore, readingListId)) {
+            if (followedList.userId != list.userId) {
+                followers.add(followedList.userId);
+            }
+        }
+        if (followers.isEmpty()) {
+            return 0;
+        }
+
+        long createdAt = System.currentTimeMillis();
+        List<ReadingListElementEntity> elements = getReadingListElements(datastore, readingListElementIds);
+        ArrayList<FullEntity<?>> entries = new ArrayList<>();
+        int added = 0;
+        for (ReadingListElementEntity rle : elements) {
+            if (rle != null) {
+                added++;
+            }
+        }
+        for (long follower : followers) {
+            for (ReadingListElementEntity rle : elements) {
+                if (rle == null) {
+                    continue;
+                }
+                entries.add(Entity.newBuilder(newFeedEntryKey(feedEntryKeyName(createdAt, follower, list.id, rle.id)))
+                    .set("userId", follower)
+                    .set("ownerId", list.userId)
+                    .set("readingListId", list.id)
+                    .set("readingListName", list.name() == null ? "" : list.name())
+                    .set("readingListElementId", rle.id)
+                    .set("readingListElementName", rle.name() == null ? "" : rle.name())
+                    .set("createdAt", createdAt)
+                    .build());
+            }
+        }
+
+        try {
+            for (int start = 0; start < entries.size(); start += UnitOfWork.maxMutationsPerCommit) {
+                List<FullEntity<?>> chunk = entries.subList(start, Math.min(entries.size(), start + UnitOfWork.maxMutationsPerCommit));
+                datastore.put(chunk.toArray(new FullEntity<?>[chunk.size()]));
+            }
+            for (long follower : followers) {
+                if (shouldTrimFeed(added)) {
+                    trimFeed(datastore, follower);
+                }
+            }
+        }
+        finally {
+            followers.forEach(Generations::bump);
+        }
+        return entries.size();
+    }
+
+    // A trim still reads the key of every entry it skips, so trimming on every add would cost a feed's worth of
+    // reads for each follower each time. Trimming with a chance of added in slack does it about once per slack
+    // entries added instead, so each entry written costs a fixed share of a trim whatever the size of the feed.
+    static boolean shouldTrimFeed(int added) {
+        int slack = Math.max(1, (int) (maxFeedEntries * feedTrimSlack));
+        return ThreadLocalRandom.current().nextInt(slack) < added;
+    }
+
+    // Deletes everything past the newest maxFeedEntries. Only the keys are read.
+    private static void trimFeed(Datastore datastore, long userId) {
+        KeyQuery query = Query.newKeyQueryBuilder()
+            .setKind(DatastoreHelpers.feedEntryKind)
+            .setFilter(PropertyFilter.eq("userId", userId))
+            .setOffset(maxFeedEntries)
             .build();
-        QueryResults<Entity> queryresult = datastore.run(query);
+        ArrayList<Key> stale = new ArrayList<>();
+        datastore.run(query).forEachRemaining(stale::add);
+        for (int start = 0; start < stale.size(); start += UnitOfWork.maxMutationsPerCommit) {
+            List<Key> chunk = stale.subList(start, Math.min(stale.size(), start + UnitOfWork.maxMutationsPerCommit));
+            datastore.delete(chunk.toArray(new Key[chunk.size()]));
+        }
+    }
 
-        // Iterate through the results to actually fetch them, then serialize them and return.
-        ArrayList<TagToReadingListEntity> map = new ArrayList<>();
-        queryresult.forEachRemaining(list -> map.add(TagToReadingListEntity.fromEntity(list)));
+    private static <K extends IncompleteKey> FullEntity<K> toEntity(K key, JobEntity job) {
+        return Entity.newBuilder(key)
+            .set("type", job.type())
+            .set("targetId", job.targetId())
+            .set("status", job.status())
+            .set("phase", job.phase())
+            .set("cursor", StringValue.newBuilder(job.cursor()).setExcludeFromIndexes(true).build())
+            .set("processed", job.processed())
+            .set("error", StringValue.newBuilder(job.error()).setExcludeFromIndexes(true).build())
+            .set("createdAt", job.createdAt())
+            .set("updatedAt", job.updatedAt())
+            .set("owner", job.owner())
+            .set("leaseExpiresAt", job.leaseExpiresAt())
+            .build();
+    }
+
+    public static long createJob(Datastore datastore, JobEntity job) {
+        Entity entity = datastore.add(DatastoreHelpers.toEntity(DatastoreHelpers.newJobKey(), job));
+        return entity.getKey().getId();
+    }
+
+    public static JobEntity getJob(Datastore datastore, long jobId) {
+        Entity entity = datastore.get(DatastoreHelpers.newJobKey(jobId));
+        return entity == null ? null : JobEntity.fromEntity(entity);
+    }
+
+    // Writes the job unless someone else holds it, that is unless it is stored under another owner whose lease
+    // hasn't run out yet, or it has already finished. False, with nothing written, if it isn't ours to write.
+    public static boolean claimJob(Datastore datastore, JobEntity job, long now) {
+        Key key = DatastoreHelpers.newJobKey(job.id());
+        return writeInTransaction(datastore, transaction -> {
+            Entity current = transaction.get(key);
+            if (current != null) {
+                JobEntity stored = JobEntity.fromEntity(current);
+                if (stored.finished() || (!stored.owner.equals(job.owner) && stored.leaseExpiresAt > now)) {
+                    return false;
+                }
+            }
+            transaction.put(DatastoreHelpers.toEntity(key, job));
+            return true;
+        });
+    }
 
-        for (TagToReadingListEntity e : map) {
-            Key key = DatastoreHelpers.newTagToReadingListKey(e.id);
-            datastore.delete(key);
+    public static void releaseJob(Datastore datastore, long jobId, String owner) {
+        Key key = DatastoreHelpers.newJobKey(jobId);
+        writeInTransaction(datastore, transaction -> {
+            Entity current = transaction.get(key);
+            if (current != null && owner.equals(JobEntity.fromEntity(current).owner)) {
+                transaction.put(Entity.newBuilder(current).set("leaseExpiresAt", 0L).build());
+            }
+            return null;
+        });
+    }
+
+    // Jobs that were queued or running, oldest first.
+    public static List<JobEntity> getUnfinishedJobs(Datastore datastore) {
+        ArrayList<JobEntity> results = new ArrayList<>();
+        for (String status : new String[] { JobEntity.queuedStatus, JobEntity.runningStatus }) {
+            Query<Entity> query = Query.newEntityQueryBuilder()
+                .setKind(DatastoreHelpers.jobKind)
+                .setFilter(PropertyFilter.eq("status", status))
+                .build();
+            datastore.run(query).forEachRemaining(e -> results.add(JobEntity.fromEntity(e)));
         }
+        results.sort((a, b) -> Long.compare(a.createdAt, b.createdAt));
+        return results;
     }
 }
@@ -0,0 +1,148 @@
+package me.samng.myreads.api;
+
+import com.google.cloud.datastore.*;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.vertx.core.json.JsonObject;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Read-through cache of raw Datastore entities by key, shared by the whole process. It sits under the single
+// entity getters in DatastoreHelpers, which invalidate it from their update helpers (and so also on delete, which
+// is a soft update). Entries are weighed by an estimate of their size and evicted least recently used once the
+// cache is full, or after a TTL so that writes made by other processes are eventually picked up.
+public class EntityCache {
+    private static long defaultMaxWeightBytes = 64L * 1024 * 1024;
+    private static long defaultTtlSeconds = 300;
+    private static List<String> cacheableKinds = Arrays.asList(
+        DatastoreHelpers.userKind,
+        DatastoreHelpers.readingListKind,
+        DatastoreHelpers.readingListElementKind,
+        DatastoreHelpers.tagKind,
+        DatastoreHelpers.commentKind);
+
+    private static volatile Cache<Key, Entity> cache = newCache(defaultMaxWeightBytes, defaultTtlSeconds);
+    private static volatile Set<String> enabledKinds = new HashSet<>(cacheableKinds);
+
+    // Bumped on every invalidation. A load only fills the cache if nothing was invalidated while it was reading,
+    // so a read racing with a write can't put the old entity back after the write has cleared it.
+    private static final AtomicLong invalidations = new AtomicLong();
+
+    // Each kind can be turned off with cache.<kind>.enabled = false.
+    public static void configure(JsonObject config) {
+        Set<String> kinds = new HashSet<>();
+        for (String kind : cacheableKinds) {
+            if (config.getBoolean("cache." + kind + ".enabled", true)) {
+                kinds.add(kind);
+            }
+        }
+        enabledKinds = kinds;
+        cache = newCache(
+            config.getLong("cache.maxWeightBytes", defaultMaxWeightBytes),
+            config.getLong("cache.ttlSeconds", defaultTtlSeconds));
+    }
+
+    private static Cache<Key, Entity> newCache(long maxWeightBytes, long ttlSeconds) {
+        return CacheBuilder.newBuilder()
+            .maximumWeight(maxWeightBytes)
+            .weigher((Key key, Entity entity) -> EntityCache.estimateSize(entity))
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    }
+
+    public static Entity get(Datastore datastore, Key key) {
+        if (!enabledKinds.contains(key.getKind())) {
+            return datastore.get(key);
+        }
+
+        Entity entity = cache.getIfPresent(key);
+        if (entity != null) {
+            return entity;
+        }
+
+        long stamp = invalidations.get();
+        entity = datastore.get(key);
+        if (entity != null && invalidations.get() == stamp) {
+            cache.put(key, entity);
+        }
+        return entity;
+    }
+
+    // Same as get() for each key, but the misses go to Datastore in a single lookup. The result lines up with the
+    // keys, with null for any key that doesn't exist.
+    public static List<Entity> fetch(Datastore datastore, List<Key> keys) {
+        ArrayList<Entity> results = new ArrayList<>(keys.size());
+        ArrayList<Key> missing = new ArrayList<>();
+        for (Key key : keys) {
+            Entity entity = enabledKinds.contains(key.getKind()) ? cache.getIfPresent(key) : null;
+            results.add(entity);
+            if (entity == null) {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return results;
+        }
+
+        long stamp = invalidations.get();
+        Iterator<Entity> fetched = datastore.fetch(missing).iterator();
+        ArrayList<Entity> loaded = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                Entity entity = fetched.next();
+                results.set(i, entity);
+                if (entity != null && enabledKinds.contains(entity.getKey().getKind())) {
+                    loaded.add(entity);
+                }
+            }
+        }
+        if (invalidations.get() == stamp) {
+            loaded.forEach(entity -> cache.put(entity.getKey(), entity));
+        }
+        return results;
+    }
+
+    public static void invalidate(Key key) {
+        invalidations.incrementAndGet();
+        cache.invalidate(key);
+    }
+
+    // A rough count of the bytes an entity holds on to, so that a list with thousands of ids costs more of the
+    // cache than a tag does.
+    private static int estimateSize(Entity entity) {
+        int size = 64;
+        for (String name : entity.getNames()) {
+            size += 16 + name.length() * 2 + estimateSize(entity.getValue(name));
+        }
+        return size;
+    }
+
+    private static int estimateSize(Value<?> value) {
+        if (value instanceof StringValue) {
+            return 16 + ((StringValue) value).get().length() * 2;
+        }
+        if (value instanceof ListValue) {
+            int size = 16;
+            for (Value<?> element : ((ListValue) value).get()) {
+                size += estimateSize(element);
+            }
+            return size;
+        }
+        return 16;
+    }
+
+    public static JsonObject metrics() {
+        CacheStats stats = cache.stats();
+        return new JsonObject()
+            .put("enabledKinds", new ArrayList<>(enabledKinds))
+            .put("size", cache.size())
+            .put("hits", stats.hitCount())
+            .put("misses", stats.missCount())
+            .put("hitRate", stats.hitRate())
+            .put("evictions", stats.evictionCount());
+    }
+}
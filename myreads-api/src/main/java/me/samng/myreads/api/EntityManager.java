@@ -1,219 +1,337 @@
 package me.samng.myreads.api;
 
-import com.google.cloud.datastore.Datastore;
+import io.vertx.core.Future;
+import me.samng.myreads.api.entities.CommentEntity;
 import me.samng.myreads.api.entities.FollowedListEntity;
+import me.samng.myreads.api.entities.JobEntity;
 import me.samng.myreads.api.entities.ReadingListElementEntity;
 import me.samng.myreads.api.entities.ReadingListEntity;
+import me.samng.myreads.api.repositories.Repositories;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class EntityManager {
     public static long singletonDeletedListId = -96;
+    public static String deleteUserJobType = "deleteUser";
+    public static int deleteUserBatchSize = 100;
+    public static int fanOutParallelism = 8;
 
-    public static boolean DeleteUser(Datastore datastore, long userId) {
+    private final Repositories repositories;
+
+    public EntityManager(Repositories repositories) {
+        this.repositories = repositories;
+    }
+
+    public Future<Boolean> DeleteUserStep(JobEntity job) {
         // When we delete a user, we need to clean up all their lists, followed lists, and reading list elements.
         // We need to delete the reading list elements first, because when we delete a list, we check each element
         // in the list to ensure that we're not orphaning any RLEs - if we are, we delete those as well, so ordering
-        // matters here.
-
-        // Clean up the reading list elements.
-        List<ReadingListElementEntity> rles = DatastoreHelpers.getAllReadingListElementsForUser(datastore, userId);
-        for (ReadingListElementEntity e : rles) {
-            if (!EntityManager.DeleteReadingListElement(datastore, e.id)) {
-                return false;
-            }
+        // matters here. Each step handles one page of one kind, and the user itself goes last.
+        long userId = job.targetId;
+        String cursor = job.cursor.isEmpty() ? null : job.cursor;
+        switch (job.phase) {
+            case "":
+            case "readingListElements":
+                // The whole page goes in one unit of work, so a list holding several of these elements is read and
+                // rewritten once rather than once per element.
+                return repositories.readingListElements.getAllForUser(userId, deleteUserBatchSize, cursor)
+                    .compose(page -> DeleteReadingListElements(page.items.stream().map(e -> e.id).collect(Collectors.toList()))
+                        .map(done -> advance(job, page, "readingLists")));
+            case "readingLists":
+                // The elements are gone by now, so the lists are independent.
+                return repositories.readingLists.getAllForUser(userId, deleteUserBatchSize, cursor)
+                    .compose(page -> fanOut(page.items, e -> DeleteReadingList(e.id))
+                        .map(done -> advance(job, page, "followedLists")));
+            case "followedLists":
+                return repositories.followedLists.getAllForUser(userId, deleteUserBatchSize, cursor)
+                    .compose(page -> fanOut(page.items, e -> repositories.followedLists.delete(e.id))
+                        .map(done -> advance(job, page, "user")));
+            case "user":
+                return repositories.users.get(userId).compose(user -> {
+                    if (user == null) {
+                        return Future.succeededFuture(true);
+                    }
+                    job.processed++;
+                    return repositories.users.delete(userId).map(true);
+                });
+            default:
+                return Future.failedFuture(new IllegalStateException("Unknown phase " + job.phase));
         }
+    }
 
-        // Clean up the reading lists.
-        List<ReadingListEntity> lists = DatastoreHelpers.getAllReadingListsForUser(datastore, userId);
-        for (ReadingListEntity e : lists) {
-            if (!EntityManager.DeleteReadingList(datastore, e.id)) {
-                return false;
-            }
+    // Records a page as done, and moves on to the next phase after the last page.
+    private static boolean advance(JobEntity job, Page<?> page, String nextPhase) {
+        job.processed += page.items.size();
+        if (page.nextCursor == null) {
+            job.phase = nextPhase;
+            job.cursor = "";
         }
-
-        // Clean up the followed lists.
-        List<FollowedListEntity> followedLists = DatastoreHelpers.getAllFollowedListsForUser(datastore, userId);
-        for (FollowedListEntity e : followedLists) {
-            DatastoreHelpers.deleteFollowedList(datastore, e.id);
+        else {
+            job.cursor = page.nextCursor;
         }
+        return false;
+    }
 
-        // Finally, delete the user.
-        DatastoreHelpers.deleteUser(datastore, userId);
-        return true;
+    public Future<Boolean> DeleteReadingListElement(long readingListElementId) {
+        return repositories.inUnitOfWork(unitOfWork -> deleteReadingListElement(unitOfWork, readingListElementId));
     }
 
-    public static boolean DeleteReadingListElement(Datastore datastore, long readingListElementId) {
+    // Deletes each of the elements, skipping any that are already gone. Their lists and comments are read up
+    // front in one lookup each.
+    public Future<Void> DeleteReadingListElements(List<Long> readingListElementIds) {
+        return repositories.inUnitOfWork(unitOfWork -> {
+            ArrayList<Long> listIds = new ArrayList<>();
+            ArrayList<Long> commentIds = new ArrayList<>();
+            for (ReadingListElementEntity rle : unitOfWork.getReadingListElements(readingListElementIds)) {
+                if (rle != null) {
+                    if (rle.listIds() != null) {
+                        listIds.addAll(rle.listIds);
+                    }
+                    if (rle.commentIds() != null) {
+                        commentIds.addAll(rle.commentIds);
+                    }
+                }
+            }
+            unitOfWork.getReadingLists(listIds);
+            unitOfWork.getComments(commentIds);
+
+            readingListElementIds.forEach(id -> deleteReadingListElement(unitOfWork, id));
+            return null;
+        });
+    }
+
+    private static boolean deleteReadingListElement(UnitOfWork unitOfWork, long readingListElementId) {
         // When we delete a reading list element, we need to remove it from all the lists that it belongs to.
         // We also have to delete all comments.
-        ReadingListElementEntity rle = DatastoreHelpers.getReadingListElement(datastore, readingListElementId);
-        ReadingListEntity list;
-
-        for (long listId : rle.listIds) {
-            list = DatastoreHelpers.getReadingList(datastore, listId);
+        ReadingListElementEntity rle = unitOfWork.getReadingListElement(readingListElementId);
+        if (rle == null) {
+            return false;
+        }
 
-            assert list.readingListElementIds().contains(rle.id);
-            list.readingListElementIds().remove(rle.id);
-            if (!DatastoreHelpers.updateReadingList(datastore, list, false)) {
-                return false;
+        if (rle.listIds() != null) {
+            for (ReadingListEntity list : unitOfWork.getReadingLists(rle.listIds)) {
+                if (list != null && list.readingListElementIds() != null) {
+                    list.readingListElementIds().remove(rle.id);
+                    unitOfWork.update(list);
+                }
             }
         }
-
-        for (long commentId : rle.commentIds) {
-            DatastoreHelpers.deleteComment(datastore, commentId);
+        if (rle.commentIds() != null) {
+            for (CommentEntity comment : unitOfWork.getComments(rle.commentIds)) {
+                if (comment != null) {
+                    unitOfWork.delete(comment);
+                }
+            }
         }
-
-        for (long tagId : rle.tagIds) {
-            DatastoreHelpers.deleteTagToReadingListElementMapping(datastore, rle.userId, tagId, rle.id);
+        if (rle.tagIds() != null) {
+            for (long tagId : rle.tagIds) {
+                unitOfWork.deleteTagToReadingListElementMapping(rle.userId, tagId, rle.id);
+            }
         }
 
-        DatastoreHelpers.deleteReadingListElement(datastore, readingListElementId);
+        unitOfWork.delete(rle);
         return true;
     }
 
-    public static boolean DeleteReadingList(Datastore datastore, long readingListId) {
-        // When we delete a reading list, we just need to make sure that each RLE isn't only attached to this list.
-        // If so, delete it as well.
-        ReadingListEntity list = DatastoreHelpers.getReadingList(datastore, readingListId);
-        ReadingListElementEntity rle;
-
-        for (long rleId : list.readingListElementIds) {
-            rle = DatastoreHelpers.getReadingListElement(datastore, rleId);
-
-            assert rle.listIds.contains(readingListId);
-            rle.listIds.remove(readingListId);
-            DatastoreHelpers.updateReadingListElement(datastore, rle, false);
-
-            // If this RLE is going to be orphaned, delete it.
-            if (rle.listIds.size() == 0) {
-                EntityManager.DeleteReadingListElement(datastore, rle.id);
+    public Future<Boolean> DeleteReadingList(long readingListId) {
+        return repositories.inUnitOfWork(unitOfWork -> {
+            // When we delete a reading list, we just need to make sure that each RLE isn't only attached to this list.
+            // If so, delete it as well. Everything that points at the list is recorded before the list itself, so
+            // the list is the last thing to go.
+            ReadingListEntity list = unitOfWork.getReadingList(readingListId);
+            if (list == null) {
+                return false;
             }
-        }
 
-        for (long tagId : list.tagIds) {
-            DatastoreHelpers.deleteTagToReadingListMapping(datastore, list.userId, tagId, list.id);
-        }
-
-        DatastoreHelpers.deleteReadingList(datastore, readingListId);
+            // Work out which RLEs this orphans from the elements we already have, then read all of their comments
+            // in one lookup rather than one per element.
+            ArrayList<ReadingListElementEntity> orphans = new ArrayList<>();
+            ArrayList<Long> orphanCommentIds = new ArrayList<>();
+            if (list.readingListElementIds() != null) {
+                for (ReadingListElementEntity rle : unitOfWork.getReadingListElements(list.readingListElementIds)) {
+                    if (rle == null) {
+                        continue;
+                    }
+
+                    rle.listIds.remove(readingListId);
+                    if (rle.listIds.size() == 0) {
+                        orphans.add(rle);
+                        if (rle.commentIds() != null) {
+                            orphanCommentIds.addAll(rle.commentIds);
+                        }
+                    }
+                    else {
+                        unitOfWork.update(rle);
+                    }
+                }
+            }
+            unitOfWork.getComments(orphanCommentIds);
+            for (ReadingListElementEntity orphan : orphans) {
+                deleteReadingListElement(unitOfWork, orphan.id);
+            }
 
-        // Lastly, for each other user that was following this list, we'll need to move those
-        // followed lists to point at the singleton deleted list moniker.
-        List<FollowedListEntity> followedLists = DatastoreHelpers.getAllFollowedListsForList(datastore, readingListId);
-        for (FollowedListEntity f : followedLists) {
-            f.listId = EntityManager.singletonDeletedListId;
-            f.orphaned = true;
-            DatastoreHelpers.updateFollowedList(datastore, f, false);
-        }
-        return true;
-    }
+            if (list.tagIds() != null) {
+                for (long tagId : list.tagIds) {
+                    unitOfWork.deleteTagToReadingListMapping(list.userId, tagId, list.id);
+                }
+            }
 
-    public static ReadingListElementEntity GetReadingListElementIfUserOwnsIt(
-        Datastore datastore,
-        long userId,
-        long readingListElementId) {
+            // For each other user that was following this list, we'll need to move those
+            // followed lists to point at the singleton deleted list moniker.
+            for (FollowedListEntity f : DatastoreHelpers.getAllFollowedListsForList(unitOfWork.datastore(), readingListId)) {
+                f.listId = EntityManager.singletonDeletedListId;
+                f.orphaned = true;
+                unitOfWork.update(f);
+            }
 
-        ReadingListElementEntity rleEntity = DatastoreHelpers.getReadingListElement(datastore, readingListElementId);
-        if (rleEntity == null || rleEntity.userId != userId) {
-            return null;
-        }
-        return rleEntity;
+            unitOfWork.delete(list);
+            return true;
+        });
     }
 
-    public static List<Long> AddReadingListElementsToReadingList(
-        Datastore datastore,
+    public Future<List<Long>> AddReadingListElementsToReadingList(
         long userId,
         ReadingListEntity readingListEntity,
         Long[] readingListElementIds) {
-        // Note that we're not transactional! As a result, we'll return the list of Ids that we've successfully added,
-        // regardless of whether or not we have errors on the overall operation.
-
-        ArrayList<Long> addedIds = new ArrayList<>();
-        for (long rleId : readingListElementIds) {
-            if (readingListEntity.readingListElementIds() != null && readingListEntity.readingListElementIds().contains(rleId)) {
-                continue;
+        // Everything is written in one commit at the end, the elements before the list. A small add fits in one
+        // transaction and lands all or nothing. A bigger one may stop part way with some elements pointing at a list
+        // that doesn't have them yet, and running the same add again completes it.
+        return repositories.inUnitOfWork(unitOfWork -> {
+            // Read again through the unit of work rather than trusting the caller's copy, so that a retry after a
+            // conflict starts from what's stored now.
+            ReadingListEntity list = unitOfWork.getReadingList(readingListEntity.id);
+            if (list == null) {
+                return new ArrayList<Long>();
             }
 
-            // We need to add it to our reading list, but we also need to add it to the RLE.
-            ReadingListElementEntity rleEntity = EntityManager.GetReadingListElementIfUserOwnsIt(datastore, userId, rleId);
-            assert rleEntity != null;
-            assert rleEntity.listIds == null || !rleEntity.listIds.contains(readingListEntity.id);
-
-            if (readingListEntity.readingListElementIds() == null) {
-                readingListEntity.readingListElementIds = new ArrayList<Long>();
+            if (list.readingListElementIds() == null) {
+                list.readingListElementIds = new ArrayList<Long>();
             }
-            readingListEntity.readingListElementIds.add(rleId);
 
-            if (rleEntity.listIds() == null) {
-                rleEntity.listIds = new ArrayList<Long>();
+            HashSet<Long> existingIds = new HashSet<>(list.readingListElementIds());
+            LinkedHashSet<Long> candidates = new LinkedHashSet<>();
+            for (long rleId : readingListElementIds) {
+                if (!existingIds.contains(rleId)) {
+                    candidates.add(rleId);
+                }
+            }
+            List<Long> candidateIds = new ArrayList<>(candidates);
+
+            ArrayList<Long> addedIds = new ArrayList<>();
+            List<ReadingListElementEntity> fetched = unitOfWork.getReadingListElements(candidateIds);
+            for (int i = 0; i < candidateIds.size(); i++) {
+                ReadingListElementEntity rleEntity = fetched.get(i);
+                // Anything missing or someone else's is left out, and the rest are still added.
+                if (rleEntity == null || rleEntity.userId != userId) {
+                    continue;
+                }
+
+                // We need to add it to our reading list, but we also need to add it to the RLE.
+                list.readingListElementIds.add(rleEntity.id);
+                if (rleEntity.listIds() == null) {
+                    rleEntity.listIds = new ArrayList<Long>();
+                }
+                // An element can already point at the list if an earlier attempt got part way, and a second copy
+                // would outlive the list when it's deleted.
+                if (!rleEntity.listIds.contains(list.id)) {
+                    rleEntity.listIds.add(list.id);
+                }
+                unitOfWork.update(rleEntity);
+                addedIds.add(rleEntity.id);
             }
-            rleEntity.listIds.add(readingListEntity.id);
 
-            if (DatastoreHelpers.updateReadingList(datastore, readingListEntity, false) &&
-                DatastoreHelpers.updateReadingListElement(datastore, rleEntity, false)) {
-                addedIds.add(rleId);
-            } else {
-                // Note that we're swallowing an error here, but the user will have to retry the action anyway,
-                // so there's no harm done.
-                break;
+            if (!addedIds.isEmpty()) {
+                unitOfWork.update(list);
+            }
+            return addedIds;
+        }).compose(addedIds -> {
+            if (addedIds.isEmpty()) {
+                return Future.succeededFuture(addedIds);
             }
-        }
-        return addedIds;
-    }
 
-    public static List<Long> AddTagsToReadingList(Datastore datastore, ReadingListEntity readingListEntity, Long[] tagIds) {
-        // Note that we're not transactional! As a result, we'll return the list of Ids that we've successfully added,
-        // regardless of whether or not we have errors on the overall operation.
-        ArrayList<Long> addedIds = new ArrayList<>();
-        for (long tagId : tagIds) {
-            boolean valid = true;
+            // The elements are already in the list by now, so a feed that fails to update doesn't fail the call.
+            return repositories.feed.publish(readingListEntity.id, addedIds).recover(t -> {
+                System.out.println("Unable to update feeds for list " + readingListEntity.id + ": " + t.getMessage());
+                return Future.succeededFuture(0);
+            }).map(addedIds);
+        });
+    }
 
-            if (readingListEntity.tagIds() != null && readingListEntity.tagIds().contains(tagId)) {
-                continue;
+    public Future<List<Long>> AddTagsToReadingList(ReadingListEntity readingListEntity, Long[] tagIds) {
+        // The list is written once, along with every new mapping, whatever the number of tags.
+        return repositories.inUnitOfWork(unitOfWork -> {
+            ReadingListEntity list = unitOfWork.getReadingList(readingListEntity.id);
+            if (list == null) {
+                return new ArrayList<Long>();
             }
 
-            if (readingListEntity.tagIds() == null) {
-                readingListEntity.tagIds = new ArrayList<>();
+            if (list.tagIds() == null) {
+                list.tagIds = new ArrayList<>();
             }
-            readingListEntity.tagIds.add(tagId);
 
-            if (DatastoreHelpers.updateReadingList(datastore, readingListEntity, false)) {
+            ArrayList<Long> addedIds = new ArrayList<>();
+            for (long tagId : tagIds) {
+                if (list.tagIds().contains(tagId)) {
+                    continue;
+                }
+
+                list.tagIds.add(tagId);
+                unitOfWork.addTagToReadingListMapping(list.userId, tagId, list.id);
                 addedIds.add(tagId);
-            } else {
-                break;
             }
 
-            DatastoreHelpers.addTagToReadingListMapping(datastore, readingListEntity.userId, tagId, readingListEntity.id);
-        }
-
-        return addedIds;
+            if (!addedIds.isEmpty()) {
+                unitOfWork.update(list);
+            }
+            return addedIds;
+        });
     }
 
-    public static List<Long> AddTagsToReadingListElement(Datastore datastore, ReadingListElementEntity readingListElementEntity, Long[] tagIds) {
-        // Note that we're not transactional! As a result, we'll return the list of Ids that we've successfully added,
-        // regardless of whether or not we have errors on the overall operation.
-        ArrayList<Long> addedIds = new ArrayList<Long>();
-        for (long tagId : tagIds) {
-        boolean valid = true;
-
-            if (readingListElementEntity.tagIds() != null && readingListElementEntity.tagIds().contains(tagId)) {
-                continue;
+    public Future<List<Long>> AddTagsToReadingListElement(ReadingListElementEntity readingListElementEntity, Long[] tagIds) {
+        // The element is written once, along with every new mapping, whatever the number of tags.
+        return repositories.inUnitOfWork(unitOfWork -> {
+            ReadingListElementEntity rle = unitOfWork.getReadingListElement(readingListElementEntity.id);
+            if (rle == null) {
+                return new ArrayList<Long>();
             }
 
-            if (readingListElementEntity.tagIds() == null) {
-                readingListElementEntity.tagIds = new ArrayList<>();
+            if (rle.tagIds() == null) {
+                rle.tagIds = new ArrayList<>();
             }
-            readingListElementEntity.tagIds.add(tagId);
 
-            if (DatastoreHelpers.updateReadingListElement(datastore, readingListElementEntity, false)) {
+            ArrayList<Long> addedIds = new ArrayList<Long>();
+            for (long tagId : tagIds) {
+                if (rle.tagIds().contains(tagId)) {
+                    continue;
+                }
+
+                rle.tagIds.add(tagId);
+                unitOfWork.addTagToReadingListElementMapping(rle.userId, tagId, rle.id);
                 addedIds.add(tagId);
-            } else {
-                break;
             }
 
-            DatastoreHelpers.addTagToReadingListElementMapping(datastore, readingListElementEntity.userId, tagId, readingListElementEntity.id);
-        }
+            if (!addedIds.isEmpty()) {
+                unitOfWork.update(rle);
+            }
+            return addedIds;
+        });
+    }
 
-        return addedIds;
+    // Runs the operation over the items a few at a time. Every item is tried, and the step fails afterwards if
+    // any of them did, so that the job reports it.
+    private static <T> Future<Void> fanOut(List<T> items, Function<T, Future<?>> operation) {
+        return FanOut.run(items, fanOutParallelism, FanOut.Policy.CONTINUE, operation).compose(result -> {
+            if (result.failures.isEmpty()) {
+                return Future.succeededFuture();
+            }
+            return Future.failedFuture(new RuntimeException(
+                result.failures.size() + " of " + items.size() + " deletes failed: " + result.failures.get(0).cause.getMessage(),
+                result.failures.get(0).cause));
+        });
     }
 }
@@ -0,0 +1,108 @@
+package me.samng.myreads.api;
+
+import io.vertx.core.Future;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+// Runs an async operation over a list of items with at most `parallelism` of them in flight at once, so a cascade
+// over thousands of entities goes quickly without firing thousands of RPCs at Datastore together.
+public class FanOut<T> {
+    public enum Policy {
+        // Stop starting new items at the first failure and fail with its error, once the ones in flight finish.
+        FAIL_FAST,
+        // Run every item regardless, and report the failures in the result.
+        CONTINUE
+    }
+
+    public static class Failure<T> {
+        public final T item;
+        public final Throwable cause;
+
+        Failure(T item, Throwable cause) {
+            this.item = item;
+            this.cause = cause;
+        }
+    }
+
+    public static class Result<T> {
+        public final int succeeded;
+        public final List<Failure<T>> failures;
+
+        Result(int succeeded, List<Failure<T>> failures) {
+            this.succeeded = succeeded;
+            this.failures = failures;
+        }
+    }
+
+    private final List<T> items;
+    private final int parallelism;
+    private final Policy policy;
+    private final Function<T, Future<?>> operation;
+    private final Future<Result<T>> result = Future.future();
+    private final ArrayList<Failure<T>> failures = new ArrayList<>();
+    private int next = 0;
+    private int inFlight = 0;
+    private int succeeded = 0;
+    private boolean starting = false;
+
+    private FanOut(List<T> items, int parallelism, Policy policy, Function<T, Future<?>> operation) {
+        this.items = items;
+        this.parallelism = Math.max(1, parallelism);
+        this.policy = policy;
+        this.operation = operation;
+    }
+
+    public static <T> Future<Result<T>> run(List<T> items, int parallelism, Policy policy, Function<T, Future<?>> operation) {
+        FanOut<T> fanOut = new FanOut<>(items, parallelism, policy, operation);
+        fanOut.startMore();
+        return fanOut.result;
+    }
+
+    private synchronized void startMore() {
+        // An operation that completes straight away lands back here; the loop below picks up the freed slot
+        // instead, so a long run of those doesn't recurse once per item.
+        if (starting) {
+            return;
+        }
+
+        starting = true;
+        boolean stopping = policy == Policy.FAIL_FAST && !failures.isEmpty();
+        while (!stopping && inFlight < parallelism && next < items.size()) {
+            T item = items.get(next++);
+            inFlight++;
+
+            Future<?> fut;
+            try {
+                fut = operation.apply(item);
+            }
+            catch (Throwable t) {
+                fut = Future.failedFuture(t);
+            }
+            fut.setHandler(ar -> completed(item, ar.failed() ? ar.cause() : null));
+            stopping = policy == Policy.FAIL_FAST && !failures.isEmpty();
+        }
+        starting = false;
+
+        if (inFlight == 0 && (stopping || next == items.size()) && !result.isComplete()) {
+            if (stopping) {
+                result.fail(failures.get(0).cause);
+            }
+            else {
+                result.complete(new Result<>(succeeded, failures));
+            }
+        }
+    }
+
+    private synchronized void completed(T item, Throwable cause) {
+        inFlight--;
+        if (cause == null) {
+            succeeded++;
+        }
+        else {
+            failures.add(new Failure<>(item, cause));
+        }
+        startMore();
+    }
+}
@@ -0,0 +1,59 @@
+package me.samng.myreads.api;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.vertx.core.json.JsonObject;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A generation number per user that changes whenever anything the user owns is written, shared by the whole
+// process. Writes bump it from the same places that invalidate EntityCache, once the write is done, so anything
+// read after seeing a generation is at least that new. A user we haven't seen lately gets a fresh number, which
+// is never one handed out before, and numbers are forgotten after generations.ttlSeconds, so writes made by
+// other processes are picked up within the same bound as EntityCache. The epoch tells this process's numbers
+// apart from any earlier run's.
+public class Generations {
+    private static long defaultTtlSeconds = 300;
+
+    private static final long epoch = new SecureRandom().nextLong() & Long.MAX_VALUE;
+    private static final AtomicLong counter = new AtomicLong();
+    private static final AtomicLong bumps = new AtomicLong();
+    private static volatile Cache<Long, Long> generations = newCache(defaultTtlSeconds);
+
+    public static void configure(JsonObject config) {
+        generations = newCache(config.getLong("generations.ttlSeconds", defaultTtlSeconds));
+    }
+
+    private static Cache<Long, Long> newCache(long ttlSeconds) {
+        return CacheBuilder.newBuilder()
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+
+    public static long epoch() {
+        return epoch;
+    }
+
+    public static long get(long userId) {
+        try {
+            return generations.get(userId, counter::incrementAndGet);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void bump(long userId) {
+        bumps.incrementAndGet();
+        generations.put(userId, counter.incrementAndGet());
+    }
+
+    public static JsonObject metrics() {
+        return new JsonObject()
+            .put("users", generations.size())
+            .put("bumps", bumps.get());
+    }
+}
@@ -4,16 +4,26 @@ import io.vertx.core.AbstractVerticle;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.CorsHandler;
+import me.samng.myreads.api.entities.EntityCodecs;
+import me.samng.myreads.api.jobs.DatastoreJobStore;
+import me.samng.myreads.api.jobs.InMemoryJobStore;
+import me.samng.myreads.api.jobs.JobManager;
+import me.samng.myreads.api.jobs.JobStore;
+import me.samng.myreads.api.repositories.Repositories;
 import me.samng.myreads.api.routes.*;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 // TODO: We need to implement auth. We should ensure that every API call is auth'ed, and that we check
 // TODO: for ownership of an item only on write, but not on read.
@@ -27,19 +37,77 @@ public class MainVerticle extends AbstractVerticle {
     private ReadingListElementRoute readingListElementRoute;
     private CommentRoute commentRoute;
     private TagRoute tagRoute;
+    private JobRoute jobRoute;
+    private HomeRoute homeRoute;
+    private DatastoreClient datastoreClient;
+    private WorkerPool workerPool;
+    private JobManager jobManager;
+    private Repositories repositories;
     public static String AppId = "uplifted-road-163307";
+    private static long startupRetryMs = 30000;
+    private static long defaultResumeIntervalMs = 60000;
 
-    public MainVerticle() {
-        userRoute = new UserRoute();
-        readingListRoute = new ReadingListRoute();
-        readingListElementRoute = new ReadingListElementRoute();
-        followedListRoute = new FollowedListRoute();
-        commentRoute = new CommentRoute();
-        tagRoute = new TagRoute();
-    }
+    // There may be several instances of this verticle in the process, one per event loop. Work that has to happen
+    // once per process, like loading the tag dictionary and resuming jobs, is done by whichever instance started
+    // first. When an instance stops, it lets go of its jobs and hands that work to one of the instances still
+    // running.
+    private static final AtomicReference<MainVerticle> leader = new AtomicReference<>();
+    private static final CopyOnWriteArrayList<MainVerticle> instances = new CopyOnWriteArrayList<>();
+    private static final InMemoryJobStore memoryJobStore = new InMemoryJobStore();
 
     @Override
     public void start(Future<Void> fut) throws Exception {
+        // The Datastore client is shared by the whole process, so every route (and every verticle) reuses the
+        // same credentials and connection pool.
+        datastoreClient = DatastoreClient.acquire(config());
+
+        // Datastore calls are blocking, so the repositories run them on the worker pool and hand back futures.
+        // Route handlers themselves stay on the event loop and never block.
+        workerPool = new WorkerPool(vertx, config());
+        PageRequest.defaultLimit = config().getInteger("paging.defaultLimit", PageRequest.defaultLimit);
+        PageRequest.maxLimit = config().getInteger("paging.maxLimit", PageRequest.maxLimit);
+        Batches.maxItems = config().getInteger("batch.maxItems", Batches.maxItems);
+        DatastoreHelpers.lookupBatchSize = config().getInteger("datastore.lookupBatchSize", DatastoreHelpers.lookupBatchSize);
+        UnitOfWork.maxEntityGroupsPerTransaction = config().getInteger("datastore.maxEntityGroupsPerTransaction", UnitOfWork.maxEntityGroupsPerTransaction);
+        EntityCache.configure(config());
+        EntityCodecs.configure(config());
+        Compression.configure(config());
+        ResponseCache.configure(config());
+        TagIndex.configure(config());
+        TagQuery.maxTerms = config().getInteger("tagQuery.maxTerms", TagQuery.maxTerms);
+        Generations.configure(config());
+        repositories = new Repositories(datastoreClient, workerPool);
+        EntityManager entityManager = new EntityManager(repositories);
+        boolean isLeader = leader.compareAndSet(null, this);
+        if (isLeader) {
+            loadTagDictionary();
+        }
+
+        // Jobs are kept in Datastore so they survive a restart; "memory" keeps them in this process instead, for
+        // running without Datastore, in one store that every instance shares.
+        EntityManager.deleteUserBatchSize = config().getInteger("jobs.batchSize", EntityManager.deleteUserBatchSize);
+        EntityManager.fanOutParallelism = config().getInteger("jobs.parallelism", EntityManager.fanOutParallelism);
+        DatastoreHelpers.maxFeedEntries = config().getInteger("feed.maxEntries", DatastoreHelpers.maxFeedEntries);
+        DatastoreHelpers.feedTrimSlack = config().getDouble("feed.trimSlack", DatastoreHelpers.feedTrimSlack);
+        JobStore jobStore = "memory".equals(config().getString("jobs.store"))
+            ? memoryJobStore
+            : new DatastoreJobStore(datastoreClient);
+        jobManager = new JobManager(vertx, jobStore, workerPool, config());
+        jobManager.register(EntityManager.deleteUserJobType, entityManager::DeleteUserStep);
+        instances.add(this);
+        if (isLeader) {
+            resumeJobs();
+        }
+
+        userRoute = new UserRoute(repositories, jobManager);
+        readingListRoute = new ReadingListRoute(repositories, entityManager);
+        readingListElementRoute = new ReadingListElementRoute(repositories, entityManager);
+        followedListRoute = new FollowedListRoute(repositories);
+        commentRoute = new CommentRoute(repositories);
+        tagRoute = new TagRoute(repositories);
+        jobRoute = new JobRoute(jobManager);
+        homeRoute = new HomeRoute(repositories);
+
         Router router = Router.router(vertx);
 
         Set<String> allowedHeaders = new HashSet<>();
@@ -48,6 +116,8 @@ public class MainVerticle extends AbstractVerticle {
         allowedHeaders.add("origin");
         allowedHeaders.add("Content-Type");
         allowedHeaders.add("accept");
+        allowedHeaders.add("If-Match");
+        allowedHeaders.add("If-None-Match");
 
         Set<HttpMethod> allowedMethods = new HashSet<>();
         allowedMethods.add(HttpMethod.GET);
@@ -61,7 +131,21 @@ public class MainVerticle extends AbstractVerticle {
         allowedMethods.add(HttpMethod.PATCH);
         allowedMethods.add(HttpMethod.PUT);
 
-        router.route().handler(CorsHandler.create("*").allowedHeaders(allowedHeaders).allowedMethods(allowedMethods));
+        // Collection endpoints hand back the cursor for the next page in a header, which browsers only expose to
+        // scripts if we say so.
+        Set<String> exposedHeaders = new HashSet<>();
+        exposedHeaders.add("X-Next-Cursor");
+        exposedHeaders.add("ETag");
+
+        router.route().handler(CorsHandler.create("*").allowedHeaders(allowedHeaders).allowedMethods(allowedMethods).exposedHeaders(exposedHeaders));
+
+        // Bodies come back as JSON or CBOR, compressed or not, depending on the request headers, so caches have
+        // to keep them apart.
+        router.route().handler(routingContext -> {
+            routingContext.response().putHeader("Vary", "Accept, Accept-Encoding");
+            routingContext.next();
+        });
+        router.get("/users/*").handler(ConditionalGet::handle);
 
         // Set up all the routes.
         router.route("/").handler(routingContext -> {
@@ -70,6 +154,11 @@ public class MainVerticle extends AbstractVerticle {
                             .putHeader("content-type", "text/plain")
                             .end("myReads API service");
                 });
+        router.get("/metrics").handler(routingContext -> {
+                    routingContext.response()
+                            .putHeader("content-type", "application/json")
+                            .end(metrics().encode());
+                });
 
         router.mountSubRouter("/users", setupComments());
         router.mountSubRouter("/users", setupFollowedLists());
@@ -77,14 +166,105 @@ public class MainVerticle extends AbstractVerticle {
         router.mountSubRouter("/users", setupReadingLists());
         router.mountSubRouter("/users", setupUsers());
         router.mountSubRouter("/", setupTags());
-
-        vertx.createHttpServer().requestHandler(router::accept).listen(MainVerticle.port, result -> {
+        router.mountSubRouter("/", setupJobs());
+
+        // Every instance listens on the same port. Vert.x spreads the connections over the instances itself; with
+        // the native transport, SO_REUSEPORT lets the kernel do it instead.
+        int httpPort = config().getInteger("http.port", MainVerticle.port);
+        HttpServerOptions serverOptions = new HttpServerOptions()
+            .setReusePort(config().getBoolean("http.reusePort", vertx.isNativeTransportEnabled()));
+        vertx.createHttpServer(serverOptions).requestHandler(router::accept).listen(httpPort, result -> {
             if (result.succeeded()) {
+                System.out.println("HTTP server started on port " + httpPort);
                 fut.complete();
             } else {
                 fut.fail(result.cause());
             }});
-        System.out.println("HTTP server started on port " + MainVerticle.port);
+    }
+
+    @Override
+    public void stop(Future<Void> fut) throws Exception {
+        instances.remove(this);
+        Future<Void> released = jobManager == null ? Future.succeededFuture() : jobManager.stop();
+        released.setHandler(ar -> {
+            if (ar.failed()) {
+                System.out.println("Unable to let go of jobs, they resume once their leases run out: " + ar.cause().getMessage());
+            }
+            handOver();
+            if (workerPool != null) {
+                workerPool.close();
+                workerPool = null;
+            }
+            if (datastoreClient != null) {
+                datastoreClient.release();
+                datastoreClient = null;
+            }
+            fut.complete();
+        });
+    }
+
+    // If this was the leader, the first instance still running takes over the once-per-process work. Either way
+    // the leader resumes the jobs this instance has just let go of.
+    private void handOver() {
+        if (leader.compareAndSet(this, null)) {
+            for (MainVerticle instance : instances) {
+                if (leader.compareAndSet(null, instance)) {
+                    instance.context.runOnContext(v -> {
+                        if (!TagDictionary.shared().isLoaded()) {
+                            instance.loadTagDictionary();
+                        }
+                        instance.resumeJobs();
+                    });
+                    return;
+                }
+            }
+            return;
+        }
+
+        MainVerticle current = leader.get();
+        if (current != null) {
+            current.context.runOnContext(v -> current.jobManager.resume());
+        }
+    }
+
+    // The tag dictionary loads in the background, so a Datastore hiccup at startup doesn't stop the server from
+    // coming up. Until it has loaded, tag lookups go to Datastore and tag search is unavailable.
+    private void loadTagDictionary() {
+        repositories.tags.loadDictionary().setHandler(ar -> {
+            if (ar.failed()) {
+                System.out.println("Unable to load the tag dictionary, retrying: " + ar.cause().getMessage());
+                vertx.setTimer(startupRetryMs, id -> loadTagDictionary());
+            }
+        });
+    }
+
+    // Picks up jobs that were cut off by the last shutdown. Like the tag dictionary, this retries in the background
+    // rather than holding up startup. After that it looks again every jobs.resumeIntervalMs, for jobs whose
+    // process went away without letting go of them.
+    private void resumeJobs() {
+        jobManager.resume().setHandler(ar -> {
+            if (ar.failed()) {
+                System.out.println("Unable to resume jobs, retrying: " + ar.cause().getMessage());
+                vertx.setTimer(startupRetryMs, id -> resumeJobs());
+            }
+            else {
+                vertx.setTimer(config().getLong("jobs.resumeIntervalMs", defaultResumeIntervalMs), id -> resumeJobs());
+            }
+        });
+    }
+
+    private JsonObject metrics() {
+        return new JsonObject()
+            .put("compression", Compression.metrics())
+            .put("conditionalGet", ConditionalGet.metrics())
+            .put("datastore", datastoreClient.metrics())
+            .put("entityCache", EntityCache.metrics())
+            .put("generations", Generations.metrics())
+            .put("jobs", jobManager.metrics())
+            .put("responseCache", ResponseCache.metrics())
+            .put("tagDictionarySize", TagDictionary.shared().size())
+            .put("tagIndex", TagIndex.metrics())
+            .put("workerPool", workerPool.metrics());
     }
 
     private Router setupTags() {
@@ -92,6 +272,8 @@ public class MainVerticle extends AbstractVerticle {
 
         router.route().handler(BodyHandler.create());
 
+        // Has to come before /tags/:tagId, or "search" would be taken for a tag id.
+        router.get("/tags/search").handler(routingContext -> { tagRoute.searchTags(routingContext); });
         router.get("/tags/:tagId").handler(routingContext -> { tagRoute.getTag(routingContext); });
         router.get("/tagByName/:tagName").handler(routingContext -> { tagRoute.getTagByName(routingContext); });
 
@@ -101,6 +283,14 @@ public class MainVerticle extends AbstractVerticle {
         return router;
     }
 
+    private Router setupJobs() {
+        Router router = Router.router(vertx);
+
+        router.get("/jobs/:jobId").handler(routingContext -> { jobRoute.getJob(routingContext); });
+
+        return router;
+    }
+
     private Router setupComments() {
         Router router = Router.router(vertx);
 
@@ -121,6 +311,7 @@ public class MainVerticle extends AbstractVerticle {
 
         router.route().handler(BodyHandler.create());
 
+        router.get("/:userId/home").handler(routingContext -> { homeRoute.getHome(routingContext); });
         router.get("/:userId").handler(routingContext -> { userRoute.getUser(routingContext); });
         router.put("/:userId").handler(routingContext -> { userRoute.putUser(routingContext); });
         router.delete("/:userId").handler(routingContext -> { userRoute.deleteUser(routingContext); });
@@ -146,7 +337,15 @@ public class MainVerticle extends AbstractVerticle {
         router.put("/:userId/readingLists/:readingListId").handler(routingContext -> { readingListRoute.putReadingList(routingContext); });
         router.delete("/:userId/readingLists/:readingListId").handler(routingContext -> { readingListRoute.deleteReadingList(routingContext); });
 
-        router.get("/:userId/readingLists").handler(routingContext -> { readingListRoute.getAllReadingLists(routingContext); });
+        router.post("/:userId/readingLists/batch").handler(routingContext -> { readingListRoute.postReadingListsBatch(routingContext); });
+        router.get("/:userId/readingLists").handler(routingContext -> {
+            if (Batches.isBatchGet(routingContext)) {
+                readingListRoute.getReadingListsById(routingContext);
+            }
+            else {
+                readingListRoute.getAllReadingLists(routingContext);
+            }
+        });
         router.post("/:userId/readingLists").handler(routingContext -> { readingListRoute.postReadingList(routingContext); });
 
         router.post("/:userId/readingListsByTag").handler(routingContext -> { readingListRoute.getAllReadingListsByTag(routingContext); });
@@ -162,6 +361,7 @@ public class MainVerticle extends AbstractVerticle {
         router.delete("/:userId/followedLists/:followedListId").handler(routingContext -> { followedListRoute.deleteFollowedList(routingContext); });
 
         router.get("/:userId/followedLists").handler(routingContext -> { followedListRoute.getAllFollowedLists(routingContext); });
+        router.get("/:userId/feed").handler(routingContext -> { followedListRoute.getFeed(routingContext); });
         router.post("/:userId/followedLists").handler(routingContext -> { followedListRoute.postFollowedList(routingContext); });
 
         return router;
@@ -179,7 +379,15 @@ public class MainVerticle extends AbstractVerticle {
         router.put("/:userId/readingListElements/:readingListElementId").handler(routingContext -> { readingListElementRoute.putReadingListElement(routingContext); });
         router.delete("/:userId/readingListElements/:readingListElementId").handler(routingContext -> { readingListElementRoute.deleteReadingListElement(routingContext); });
 
-        router.get("/:userId/readingListElements").handler(routingContext -> { readingListElementRoute.getAllReadingListElements(routingContext); });
+        router.post("/:userId/readingListElements/batch").handler(routingContext -> { readingListElementRoute.postReadingListElementsBatch(routingContext); });
+        router.get("/:userId/readingListElements").handler(routingContext -> {
+            if (Batches.isBatchGet(routingContext)) {
+                readingListElementRoute.getReadingListElementsById(routingContext);
+            }
+            else {
+                readingListElementRoute.getAllReadingListElements(routingContext);
+            }
+        });
         router.post("/:userId/readingListElements").handler(routingContext -> { readingListElementRoute.postReadingListElement(routingContext); });
 
         router.post("/:userId/readingListElementsByTag").handler(routingContext -> { readingListElementRoute.getAllReadingListElementsByTag(routingContext); });
@@ -187,12 +395,21 @@ public class MainVerticle extends AbstractVerticle {
         return router;
     }
 
+    // Runs one instance per core unless -Dinstances says otherwise. -Dhttp.nativeTransport=true asks for epoll,
+    // which needs the jar from the epoll profile; without it we stay on NIO.
     public static void main(String[] args) {
-        Vertx vertx = Vertx.vertx();
-        DeploymentOptions deploymentOptions = new DeploymentOptions().setConfig(new JsonObject()
-                .put("http.port", 8081)
+        boolean nativeTransport = Boolean.getBoolean("http.nativeTransport");
+        Vertx vertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(nativeTransport));
+        if (nativeTransport && !vertx.isNativeTransportEnabled()) {
+            System.out.println("Native transport unavailable, using NIO");
+        }
+
+        DeploymentOptions deploymentOptions = new DeploymentOptions()
+            .setInstances(Integer.getInteger("instances", Runtime.getRuntime().availableProcessors()))
+            .setConfig(new JsonObject()
+                .put("http.port", Integer.getInteger("http.port", MainVerticle.port))
                 .put("myreads_host", "localhost")
-        );
+            );
         vertx.deployVerticle(MainVerticle.class.getName(), deploymentOptions);
     }
 }
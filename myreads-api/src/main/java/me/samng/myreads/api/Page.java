@@ -0,0 +1,14 @@
+package me.samng.myreads.api;
+
+import java.util.List;
+
+// One page of a collection query. nextCursor is an opaque token for the following page, or null on the last one.
+public class Page<T> {
+    public final List<T> items;
+    public final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,125 @@
+package me.samng.myreads.api;
+
+import me.samng.myreads.api.entities.TagEntity;
+
+import java.util.*;
+
+// Every tag, held in memory and indexed by normalized name, both as a hash map for exact lookups and as a prefix
+// trie for autocomplete. It is loaded once from Datastore and then kept up to date as tags are created, so tag
+// name lookups never need a query. Shared by the whole process.
+public class TagDictionary {
+    private static final TagDictionary shared = new TagDictionary();
+
+    // Children are kept in sorted arrays rather than maps, which keeps the nodes small and lets a walk of the
+    // trie come back in alphabetical order for free.
+    private static class Node {
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        TagEntity tag;
+
+        Node child(char label) {
+            int i = Arrays.binarySearch(labels, label);
+            return i < 0 ? null : children[i];
+        }
+
+        Node addChild(char label) {
+            int i = Arrays.binarySearch(labels, label);
+            if (i >= 0) {
+                return children[i];
+            }
+
+            int insertAt = -(i + 1);
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            newLabels[insertAt] = label;
+            newChildren[insertAt] = new Node();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+    }
+
+    private final HashMap<String, TagEntity> byName = new HashMap<>();
+    private final Node root = new Node();
+    private boolean loaded = false;
+
+    public static TagDictionary shared() {
+        return shared;
+    }
+
+    // Tag names match regardless of case and surrounding or repeated whitespace.
+    public static String normalize(String tagName) {
+        return tagName.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    // Adds every tag from a full scan of the kind. Anything added while the scan was running is kept. If several
+    // tags share a normalized name, the first one wins.
+    public synchronized void load(List<TagEntity> tags) {
+        for (TagEntity tag : tags) {
+            if (!tag.deleted) {
+                add(tag);
+            }
+        }
+        loaded = true;
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    // Returns false, and leaves the dictionary alone, if a tag with the same normalized name is already there.
+    public synchronized boolean add(TagEntity tag) {
+        String name = normalize(tag.tagName());
+        if (byName.containsKey(name)) {
+            return false;
+        }
+
+        byName.put(name, tag);
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.addChild(name.charAt(i));
+        }
+        node.tag = tag;
+        return true;
+    }
+
+    public synchronized TagEntity get(String tagName) {
+        return byName.get(normalize(tagName));
+    }
+
+    // Up to limit tags whose normalized name starts with the normalized prefix, in alphabetical order.
+    public synchronized List<TagEntity> search(String prefix, int limit) {
+        ArrayList<TagEntity> results = new ArrayList<>();
+
+        // Only leading whitespace is dropped, since a trailing space is a meaningful part of a prefix.
+        String name = prefix.replaceAll("^\\s+", "").replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        Node node = root;
+        for (int i = 0; i < name.length() && node != null; i++) {
+            node = node.child(name.charAt(i));
+        }
+        if (node == null) {
+            return results;
+        }
+
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty() && results.size() < limit) {
+            Node next = stack.pop();
+            if (next.tag != null) {
+                results.add(next.tag);
+            }
+            for (int i = next.children.length - 1; i >= 0; i--) {
+                stack.push(next.children[i]);
+            }
+        }
+        return results;
+    }
+
+    public synchronized int size() {
+        return byName.size();
+    }
+}
@@ -0,0 +1,207 @@
+package me.samng.myreads.api;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// For each user, which of their lists (or elements) carry each tag, held in memory as bitmaps so that a tag
+// expression is a few word-wide operations rather than an index query and a lookup per tag. Datastore ids are far
+// too sparse to index a bitmap with, so each user's ids are numbered densely as we meet them and the bitmaps are
+// over those numbers, which keeps every bitmap about as small as the user's collection. A user's index is built
+// from a scan of their mapping rows on first use and then kept up to date by the writes that add and remove
+// mappings in this process. Like EntityCache, it is dropped after tagIndex.ttlSeconds so that mappings written by
+// other processes are picked up, and a build is thrown away if a mapping was written while it ran.
+public class TagIndex {
+    private static long defaultMaxUsers = 10000;
+    private static long defaultTtlSeconds = 300;
+
+    private static final TagIndex readingLists = new TagIndex(DatastoreHelpers.tagToReadingListKind, "readingListId");
+    private static final TagIndex readingListElements = new TagIndex(DatastoreHelpers.tagToReadingListElementKind, "readingListElementId");
+
+    public static class UserIndex {
+        private final HashMap<Long, Integer> ordinals = new HashMap<>();
+        private final ArrayList<Long> ids = new ArrayList<>();
+        private final HashMap<Long, BitSet> byTag = new HashMap<>();
+
+        public synchronized void add(long tagId, long targetId) {
+            Integer ordinal = ordinals.get(targetId);
+            if (ordinal == null) {
+                ordinal = ids.size();
+                ordinals.put(targetId, ordinal);
+                ids.add(targetId);
+            }
+            byTag.computeIfAbsent(tagId, t -> new BitSet()).set(ordinal);
+        }
+
+        public synchronized void remove(long tagId, long targetId) {
+            Integer ordinal = ordinals.get(targetId);
+            BitSet tagged = byTag.get(tagId);
+            if (ordinal != null && tagged != null) {
+                tagged.clear(ordinal);
+            }
+        }
+
+        // A copy, so the caller can combine it as it likes.
+        public synchronized BitSet tagged(long tagId) {
+            BitSet tagged = byTag.get(tagId);
+            return tagged == null ? new BitSet() : (BitSet) tagged.clone();
+        }
+
+        public synchronized int count(long tagId) {
+            BitSet tagged = byTag.get(tagId);
+            return tagged == null ? 0 : tagged.cardinality();
+        }
+
+        // The ids behind the set bits, in ascending order.
+        public synchronized List<Long> ids(BitSet bits) {
+            ArrayList<Long> results = new ArrayList<>(bits.cardinality());
+            for (int ordinal = bits.nextSetBit(0); ordinal >= 0 && ordinal < ids.size(); ordinal = bits.nextSetBit(ordinal + 1)) {
+                results.add(ids.get(ordinal));
+            }
+            Collections.sort(results);
+            return results;
+        }
+    }
+
+    private final String kind;
+    private final String targetProperty;
+    private volatile Cache<Long, UserIndex> users = newCache(defaultMaxUsers, defaultTtlSeconds);
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+
+    private TagIndex(String kind, String targetProperty) {
+        this.kind = kind;
+        this.targetProperty = targetProperty;
+    }
+
+    public static TagIndex readingLists() {
+        return readingLists;
+    }
+
+    public static TagIndex readingListElements() {
+        return readingListElements;
+    }
+
+    public static void configure(JsonObject config) {
+        long maxUsers = config.getLong("tagIndex.maxUsers", defaultMaxUsers);
+        long ttlSeconds = config.getLong("tagIndex.ttlSeconds", defaultTtlSeconds);
+        readingLists.users = newCache(maxUsers, ttlSeconds);
+        readingListElements.users = newCache(maxUsers, ttlSeconds);
+    }
+
+    private static Cache<Long, UserIndex> newCache(long maxUsers, long ttlSeconds) {
+        return CacheBuilder.newBuilder()
+            .maximumSize(maxUsers)
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    }
+
+    private static TagIndex forKind(String kind) {
+        if (readingLists.kind.equals(kind)) {
+            return readingLists;
+        }
+        if (readingListElements.kind.equals(kind)) {
+            return readingListElements;
+        }
+        return null;
+    }
+
+    // Blocking, since a user we haven't seen lately costs a scan of their mappings.
+    public UserIndex forUser(Datastore datastore, long userId) {
+        UserIndex index = users.getIfPresent(userId);
+        if (index != null) {
+            return index;
+        }
+
+        long stamp = writes.get();
+        index = build(datastore, userId);
+        synchronized (this) {
+            if (writes.get() == stamp) {
+                users.put(userId, index);
+            }
+        }
+        return index;
+    }
+
+    private UserIndex build(Datastore datastore, long userId) {
+        builds.incrementAndGet();
+        Query<Entity> query = Query.newEntityQueryBuilder()
+            .setKind(kind)
+            .setFilter(PropertyFilter.eq("userId", userId))
+            .build();
+
+        UserIndex index = new UserIndex();
+        datastore.run(query).forEachRemaining(row -> index.add(row.getLong("tagId"), row.getLong(targetProperty)));
+        return index;
+    }
+
+    private synchronized void apply(long userId, long tagId, long targetId, boolean present) {
+        writes.incrementAndGet();
+        UserIndex index = users.getIfPresent(userId);
+        if (index == null) {
+            return;
+        }
+        if (present) {
+            index.add(tagId, targetId);
+        }
+        else {
+            index.remove(tagId, targetId);
+        }
+    }
+
+    private synchronized void invalidate(long userId) {
+        writes.incrementAndGet();
+        users.invalidate(userId);
+    }
+
+    // A mapping row has been written, or deleted if it isn't present any more. Anything that isn't a mapping is
+    // ignored, so callers can pass every key they wrote.
+    public static void written(Key key, boolean present) {
+        TagIndex index = forKind(key.getKind());
+        long[] mapping = index == null ? null : DatastoreHelpers.parseTagMappingKeyName(key.getName());
+        if (mapping != null) {
+            index.apply(mapping[0], mapping[1], mapping[2], present);
+        }
+    }
+
+    // A write to the mapping failed part way, so we can't tell whether it landed. The user's index is rebuilt the
+    // next time it's needed.
+    public static void unsure(Key key) {
+        TagIndex index = forKind(key.getKind());
+        long[] mapping = index == null ? null : DatastoreHelpers.parseTagMappingKeyName(key.getName());
+        if (mapping != null) {
+            index.invalidate(mapping[0]);
+        }
+    }
+
+    private JsonObject metricsForIndex() {
+        CacheStats stats = users.stats();
+        return new JsonObject()
+            .put("users", users.size())
+            .put("hits", stats.hitCount())
+            .put("misses", stats.missCount())
+            .put("builds", builds.get())
+            .put("writes", writes.get());
+    }
+
+    public static JsonObject metrics() {
+        return new JsonObject()
+            .put("readingLists", readingLists.metricsForIndex())
+            .put("readingListElements", readingListElements.metricsForIndex());
+    }
+}
@@ -0,0 +1,76 @@
+package me.samng.myreads.api;
+
+import com.google.cloud.datastore.*;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+// One-time migration of the tag mapping index kinds from allocated numeric ids to the deterministic
+// "userId:tagId:targetId" key names. Each old row is rewritten under its new key and then deleted, and duplicate
+// rows for the same mapping collapse into one. Rows that already have a name key are left alone, so it is safe to
+// run again if it gets interrupted.
+//
+// Usage: TagMappingKeyMigration [path to service account key]
+public class TagMappingKeyMigration {
+    // Each batch puts and deletes, so stay well inside the 500 mutations per commit limit.
+    private static int batchSize = 200;
+
+    public static void main(String[] args) {
+        JsonObject config = new JsonObject();
+        if (args.length > 0) {
+            config.put("datastore.keyPath", args[0]);
+        }
+
+        DatastoreClient datastoreClient = DatastoreClient.acquire(config);
+        try {
+            Datastore datastore = datastoreClient.datastore();
+            int migrated = migrateKind(datastore, DatastoreHelpers.tagToReadingListKind, "readingListId");
+            System.out.println("Migrated " + migrated + " " + DatastoreHelpers.tagToReadingListKind + " rows");
+
+            migrated = migrateKind(datastore, DatastoreHelpers.tagToReadingListElementKind, "readingListElementId");
+            System.out.println("Migrated " + migrated + " " + DatastoreHelpers.tagToReadingListElementKind + " rows");
+        }
+        finally {
+            datastoreClient.release();
+        }
+    }
+
+    private static int migrateKind(Datastore datastore, String kind, String targetProperty) {
+        Query<Entity> query = Query.newEntityQueryBuilder()
+            .setKind(kind)
+            .build();
+        QueryResults<Entity> queryresult = datastore.run(query);
+
+        // Collect the old rows first, so that we aren't writing to the kind while still paging through it.
+        ArrayList<Entity> oldRows = new ArrayList<>();
+        queryresult.forEachRemaining(row -> {
+            if (row.getKey().hasId()) {
+                oldRows.add(row);
+            }
+        });
+
+        // A commit may only touch each key once, so duplicates of a mapping are deleted without being written again.
+        HashSet<Key> written = new HashSet<>();
+        for (int start = 0; start < oldRows.size(); start += batchSize) {
+            List<Entity> chunk = oldRows.subList(start, Math.min(oldRows.size(), start + batchSize));
+
+            Batch batch = datastore.newBatch();
+            for (Entity row : chunk) {
+                long userId = row.getLong("userId");
+                long tagId = row.getLong("tagId");
+                long targetId = row.getLong(targetProperty);
+                Key newKey = Key.newBuilder(MainVerticle.AppId, kind, DatastoreHelpers.tagMappingKeyName(userId, tagId, targetId)).build();
+
+                if (written.add(newKey)) {
+                    batch.put(Entity.newBuilder(newKey, row).build());
+                }
+                batch.delete(row.getKey());
+            }
+            batch.submit();
+        }
+
+        return oldRows.size();
+    }
+}
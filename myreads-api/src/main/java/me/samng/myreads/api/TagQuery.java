@@ -0,0 +1,197 @@
+package me.samng.myreads.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// A boolean expression over tags, evaluated against a user's TagIndex: a tag id on its own, which is what the
+// ByTag bodies used to be, or {"and": [...]} or {"or": [...]}. An AND may also have {"not": ...} operands, which are
+// taken away from what its other operands match. A NOT anywhere else would mean everything the user has without
+// the tag, which the index can't answer. An AND evaluates its cheapest operand first and stops as soon as it's
+// empty.
+public abstract class TagQuery {
+    public static int maxTerms = 64;
+    public static int maxDepth = 16;
+
+    // An upper bound on how many ids match, from the bitmap sizes alone.
+    abstract int estimate(TagIndex.UserIndex index);
+
+    abstract BitSet evaluate(TagIndex.UserIndex index);
+
+    abstract int terms();
+
+    public List<Long> matches(TagIndex.UserIndex index) {
+        return index.ids(evaluate(index));
+    }
+
+    public static TagQuery tag(long tagId) {
+        return new Tag(tagId);
+    }
+
+    // Throws IllegalArgumentException for anything that isn't a query we can answer.
+    public static TagQuery parse(JsonNode node) {
+        TagQuery query = parseNode(node, 1);
+        if (query.terms() > maxTerms) {
+            throw new IllegalArgumentException("At most " + maxTerms + " tags");
+        }
+        return query;
+    }
+
+    private static TagQuery parseNode(JsonNode node, int depth) {
+        if (node == null) {
+            throw new IllegalArgumentException("Missing query");
+        }
+        if (depth > maxDepth) {
+            throw new IllegalArgumentException("Nested more than " + maxDepth + " deep");
+        }
+        if (node.isIntegralNumber()) {
+            return new Tag(node.asLong());
+        }
+
+        Map.Entry<String, JsonNode> field = operator(node);
+        switch (field.getKey()) {
+            case "and":
+                ArrayList<TagQuery> positives = new ArrayList<>();
+                ArrayList<TagQuery> negatives = new ArrayList<>();
+                for (JsonNode operand : operands(field.getValue())) {
+                    if (operand.isObject() && operand.size() == 1 && operand.has("not")) {
+                        negatives.add(parseNode(operand.get("not"), depth + 1));
+                    }
+                    else {
+                        positives.add(parseNode(operand, depth + 1));
+                    }
+                }
+                if (positives.isEmpty()) {
+                    throw new IllegalArgumentException("and needs an operand that isn't a not");
+                }
+                return new And(positives, negatives);
+            case "or":
+                ArrayList<TagQuery> alternatives = new ArrayList<>();
+                for (JsonNode operand : operands(field.getValue())) {
+                    alternatives.add(parseNode(operand, depth + 1));
+                }
+                return new Or(alternatives);
+            case "not":
+                throw new IllegalArgumentException("not is only allowed inside and");
+            default:
+                throw new IllegalArgumentException("Unknown operator " + field.getKey());
+        }
+    }
+
+    private static Map.Entry<String, JsonNode> operator(JsonNode node) {
+        if (!node.isObject() || node.size() != 1) {
+            throw new IllegalArgumentException("Expected a tag id or one of and, or");
+        }
+        return node.fields().next();
+    }
+
+    private static List<JsonNode> operands(JsonNode node) {
+        if (node == null || !node.isArray() || node.size() == 0) {
+            throw new IllegalArgumentException("Expected a non-empty array");
+        }
+        ArrayList<JsonNode> operands = new ArrayList<>(node.size());
+        for (Iterator<JsonNode> it = node.elements(); it.hasNext(); ) {
+            operands.add(it.next());
+        }
+        return operands;
+    }
+
+    private static int terms(List<TagQuery> queries) {
+        int terms = 0;
+        for (TagQuery query : queries) {
+            terms += query.terms();
+        }
+        return terms;
+    }
+
+    static class Tag extends TagQuery {
+        final long tagId;
+
+        Tag(long tagId) {
+            this.tagId = tagId;
+        }
+
+        int estimate(TagIndex.UserIndex index) {
+            return index.count(tagId);
+        }
+
+        BitSet evaluate(TagIndex.UserIndex index) {
+            return index.tagged(tagId);
+        }
+
+        int terms() {
+            return 1;
+        }
+    }
+
+    static class And extends TagQuery {
+        final List<TagQuery> positives;
+        // What the NOT operands negate, each of which is taken away from the intersection of the positives.
+        final List<TagQuery> negatives;
+
+        And(List<TagQuery> positives, List<TagQuery> negatives) {
+            this.positives = positives;
+            this.negatives = negatives;
+        }
+
+        int estimate(TagIndex.UserIndex index) {
+            int estimate = Integer.MAX_VALUE;
+            for (TagQuery operand : positives) {
+                estimate = Math.min(estimate, operand.estimate(index));
+            }
+            return estimate;
+        }
+
+        // Smallest first, so every later step only has as much left to do as the most selective tag allows.
+        BitSet evaluate(TagIndex.UserIndex index) {
+            ArrayList<TagQuery> ordered = new ArrayList<>(positives);
+            ordered.sort(Comparator.comparingInt(operand -> operand.estimate(index)));
+
+            BitSet result = ordered.get(0).evaluate(index);
+            for (int i = 1; i < ordered.size() && !result.isEmpty(); i++) {
+                result.and(ordered.get(i).evaluate(index));
+            }
+            for (int i = 0; i < negatives.size() && !result.isEmpty(); i++) {
+                result.andNot(negatives.get(i).evaluate(index));
+            }
+            return result;
+        }
+
+        int terms() {
+            return TagQuery.terms(positives) + TagQuery.terms(negatives);
+        }
+    }
+
+    static class Or extends TagQuery {
+        final List<TagQuery> operands;
+
+        Or(List<TagQuery> operands) {
+            this.operands = operands;
+        }
+
+        int estimate(TagIndex.UserIndex index) {
+            long estimate = 0;
+            for (TagQuery operand : operands) {
+                estimate += operand.estimate(index);
+            }
+            return (int) Math.min(estimate, Integer.MAX_VALUE);
+        }
+
+        BitSet evaluate(TagIndex.UserIndex index) {
+            BitSet result = new BitSet();
+            for (TagQuery operand : operands) {
+                result.or(operand.evaluate(index));
+            }
+            return result;
+        }
+
+        int terms() {
+            return TagQuery.terms(operands);
+        }
+    }
+}
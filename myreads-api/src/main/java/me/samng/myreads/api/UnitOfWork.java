@@ -0,0 +1,252 @@
+package me.samng.myreads.api;
+
+import com.google.cloud.datastore.*;
+import me.samng.myreads.api.entities.*;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Collects the reads and writes of one multi-entity operation. Every key is read at most once, and asking for it
+// again hands back the same object, so changes made through one path are seen by the next. Writes are only recorded
+// as they happen and go to Datastore together in commit(). Blocking, so it runs on the worker pool.
+public class UnitOfWork {
+    // Datastore's caps on mutations in a single commit, and on entity groups in one transaction. Every kind here
+    // is a root entity, so each key written is its own entity group.
+    public static int maxMutationsPerCommit = 500;
+    public static int maxEntityGroupsPerTransaction = 25;
+
+    private final Datastore datastore;
+    private final HashMap<Key, Object> identityMap = new HashMap<>();
+    // Writes in the order they were last recorded, with a null in place of the stored form for a hard delete.
+    private final LinkedHashMap<Key, Supplier<Entity>> mutations = new LinkedHashMap<>();
+    // For entities that carry a version, the version they were at when read. Commit checks each one is still
+    // there inside its transaction and writes the entity one version on.
+    private final HashMap<Key, Long> expectedVersions = new HashMap<>();
+    // The users who own something written, whose generations move on once it's committed.
+    private final HashSet<Long> owners = new HashSet<>();
+
+    public UnitOfWork(Datastore datastore) {
+        this.datastore = datastore;
+    }
+
+    // For queries, which aren't tracked.
+    public Datastore datastore() {
+        return datastore;
+    }
+
+    // Loads whichever of the keys haven't been seen yet in one batched lookup, then answers from the identity map.
+    // A missing or deleted entity comes back as null.
+    @SuppressWarnings("unchecked")
+    private <T> List<T> load(List<Key> keys, Function<Entity, T> convert) {
+        LinkedHashSet<Key> missingKeys = new LinkedHashSet<>();
+        for (Key key : keys) {
+            if (!identityMap.containsKey(key)) {
+                missingKeys.add(key);
+            }
+        }
+        if (!missingKeys.isEmpty()) {
+            ArrayList<Key> missing = new ArrayList<>(missingKeys);
+            List<Entity> fetched = DatastoreHelpers.fetchInBatches(datastore, missing);
+            for (int i = 0; i < missing.size(); i++) {
+                Entity entity = fetched.get(i);
+                identityMap.put(missing.get(i), entity == null ? null : convert.apply(entity));
+            }
+        }
+
+        ArrayList<T> results = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            results.add((T) identityMap.get(key));
+        }
+        return results;
+    }
+
+    private static List<Key> keys(List<Long> ids, Function<Long, Key> newKey) {
+        ArrayList<Key> keys = new ArrayList<>(ids.size());
+        ids.forEach(id -> keys.add(newKey.apply(id)));
+        return keys;
+    }
+
+    public List<ReadingListEntity> getReadingLists(List<Long> readingListIds) {
+        return load(keys(readingListIds, DatastoreHelpers::newReadingListKey), e -> {
+            ReadingListEntity readingListEntity = ReadingListEntity.fromEntity(e);
+            return readingListEntity.deleted ? null : readingListEntity;
+        });
+    }
+
+    public ReadingListEntity getReadingList(long readingListId) {
+        return getReadingLists(Collections.singletonList(readingListId)).get(0);
+    }
+
+    public List<ReadingListElementEntity> getReadingListElements(List<Long> readingListElementIds) {
+        return load(keys(readingListElementIds, DatastoreHelpers::newReadingListElementKey), e -> {
+            ReadingListElementEntity rleEntity = ReadingListElementEntity.fromEntity(e);
+            return rleEntity.deleted ? null : rleEntity;
+        });
+    }
+
+    public ReadingListElementEntity getReadingListElement(long readingListElementId) {
+        return getReadingListElements(Collections.singletonList(readingListElementId)).get(0);
+    }
+
+    public List<CommentEntity> getComments(List<Long> commentIds) {
+        return load(keys(commentIds, DatastoreHelpers::newCommentKey), e -> {
+            CommentEntity commentEntity = CommentEntity.fromEntity(e);
+            return commentEntity.deleted ? null : commentEntity;
+        });
+    }
+
+    // Recording an entity that was read elsewhere makes it the one later reads of its key return. Recording a key
+    // again moves it to the end, so that commit order follows the order the work finished with each entity.
+    private void put(Key key, long ownerId, Object entity, Supplier<Entity> stored) {
+        owners.add(ownerId);
+        identityMap.put(key, entity);
+        mutations.remove(key);
+        mutations.put(key, stored);
+    }
+
+    // Soft deletes, like the rest of the app: the entity is kept and marked deleted.
+    private void softDelete(Key key, long ownerId, Supplier<Entity> stored) {
+        put(key, ownerId, null, stored);
+    }
+
+    private void delete(Key key, long ownerId) {
+        put(key, ownerId, null, null);
+    }
+
+    // The stored form is built at commit time, so an entity can be recorded once and still changed afterwards.
+    public void update(ReadingListEntity readingListEntity) {
+        expectedVersions.putIfAbsent(DatastoreHelpers.newReadingListKey(readingListEntity.id), readingListEntity.version);
+        put(DatastoreHelpers.newReadingListKey(readingListEntity.id), readingListEntity.userId, readingListEntity, () -> DatastoreHelpers.toEntity(readingListEntity, false));
+    }
+
+    public void delete(ReadingListEntity readingListEntity) {
+        expectedVersions.putIfAbsent(DatastoreHelpers.newReadingListKey(readingListEntity.id), readingListEntity.version);
+        softDelete(DatastoreHelpers.newReadingListKey(readingListEntity.id), readingListEntity.userId, () -> DatastoreHelpers.toEntity(readingListEntity, true));
+    }
+
+    public void update(ReadingListElementEntity rleEntity) {
+        expectedVersions.putIfAbsent(DatastoreHelpers.newReadingListElementKey(rleEntity.id), rleEntity.version);
+        put(DatastoreHelpers.newReadingListElementKey(rleEntity.id), rleEntity.userId, rleEntity, () -> DatastoreHelpers.toEntity(rleEntity, false));
+    }
+
+    public void delete(ReadingListElementEntity rleEntity) {
+        expectedVersions.putIfAbsent(DatastoreHelpers.newReadingListElementKey(rleEntity.id), rleEntity.version);
+        softDelete(DatastoreHelpers.newReadingListElementKey(rleEntity.id), rleEntity.userId, () -> DatastoreHelpers.toEntity(rleEntity, true));
+    }
+
+    public void delete(CommentEntity commentEntity) {
+        softDelete(DatastoreHelpers.newCommentKey(commentEntity.id), commentEntity.userId, () -> DatastoreHelpers.toEntity(commentEntity, true));
+    }
+
+    public void update(FollowedListEntity followedListEntity) {
+        put(DatastoreHelpers.newFollowedListKey(followedListEntity.id), followedListEntity.userId, followedListEntity, () -> DatastoreHelpers.toEntity(followedListEntity, false));
+    }
+
+    public void addTagToReadingListMapping(long userId, long tagId, long readingListId) {
+        Entity entity = DatastoreHelpers.tagToReadingListEntity(userId, tagId, readingListId);
+        put(entity.getKey(), userId, null, () -> entity);
+    }
+
+    public void deleteTagToReadingListMapping(long userId, long tagId, long readingListId) {
+        delete(DatastoreHelpers.newTagToReadingListKey(userId, tagId, readingListId), userId);
+    }
+
+    public void addTagToReadingListElementMapping(long userId, long tagId, long readingListElementId) {
+        Entity entity = DatastoreHelpers.tagToReadingListElementEntity(userId, tagId, readingListElementId);
+        put(entity.getKey(), userId, null, () -> entity);
+    }
+
+    public void deleteTagToReadingListElementMapping(long userId, long tagId, long readingListElementId) {
+        delete(DatastoreHelpers.newTagToReadingListElementKey(userId, tagId, readingListElementId), userId);
+    }
+
+    public int pendingMutations() {
+        return mutations.size();
+    }
+
+    // Writes everything recorded so far, in the order it was recorded. If it all fits in one transaction it goes in
+    // one, so it either all lands or none of it does. Anything bigger goes in consecutive transactions of the
+    // maximum size, so record children before the parent that points at them: if a commit stops part way, the
+    // parent is still there and running the same operation again finishes the job. Throws ConflictException if a
+    // versioned entity was written by someone else since it was read, in which case the work should be redone.
+    public void commit() {
+        ArrayList<Key> keys = new ArrayList<>(mutations.keySet());
+        ArrayList<Supplier<Entity>> stored = new ArrayList<>(mutations.values());
+        mutations.clear();
+        ArrayList<Long> writtenOwners = new ArrayList<>(owners);
+        owners.clear();
+
+        int chunkSize = Math.min(maxMutationsPerCommit, maxEntityGroupsPerTransaction);
+        try {
+            for (int start = 0; start < keys.size(); start += chunkSize) {
+                int end = Math.min(keys.size(), start + chunkSize);
+                Transaction transaction = datastore.newTransaction();
+                boolean committed = false;
+                try {
+                    checkVersions(transaction, keys.subList(start, end));
+                    for (int i = start; i < end; i++) {
+                        if (stored.get(i) == null) {
+                            transaction.delete(keys.get(i));
+                        }
+                        else {
+                            transaction.put(nextVersion(keys.get(i), stored.get(i).get()));
+                        }
+                    }
+                    transaction.commit();
+                    committed = true;
+                    for (int i = start; i < end; i++) {
+                        TagIndex.written(keys.get(i), stored.get(i) != null);
+                    }
+                }
+                catch (DatastoreException e) {
+                    if (DatastoreHelpers.isConflict(e)) {
+                        throw new ContentionException("Another write committed first");
+                    }
+                    throw e;
+                }
+                finally {
+                    if (transaction.isActive()) {
+                        transaction.rollback();
+                    }
+                    // A failed commit may still have landed, so any tag index this chunk touched is rebuilt.
+                    if (!committed) {
+                        keys.subList(start, end).forEach(TagIndex::unsure);
+                    }
+                }
+            }
+        }
+        finally {
+            keys.forEach(EntityCache::invalidate);
+            writtenOwners.forEach(Generations::bump);
+        }
+    }
+
+    // Reading them inside the transaction also means Datastore aborts the commit if any of them changes before it
+    // lands.
+    private void checkVersions(Transaction transaction, List<Key> keys) {
+        ArrayList<Key> versioned = new ArrayList<>();
+        for (Key key : keys) {
+            if (expectedVersions.containsKey(key)) {
+                versioned.add(key);
+            }
+        }
+        if (versioned.isEmpty()) {
+            return;
+        }
+
+        List<Entity> current = transaction.fetch(versioned.toArray(new Key[0]));
+        for (int i = 0; i < versioned.size(); i++) {
+            Entity entity = current.get(i);
+            long version = entity != null && entity.contains("version") ? entity.getLong("version") : 0;
+            if (entity == null || version != expectedVersions.get(versioned.get(i))) {
+                throw new ConflictException("Entity " + versioned.get(i).getNameOrId() + " changed since it was read");
+            }
+        }
+    }
+
+    private Entity nextVersion(Key key, Entity entity) {
+        Long version = expectedVersions.get(key);
+        return version == null ? entity : Entity.newBuilder(entity).set("version", version + 1).build();
+    }
+}
@@ -0,0 +1,99 @@
+package me.samng.myreads.api;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// All Datastore calls are blocking RPCs, so they must never run on the event loop. The worker pool is a dedicated,
+// fixed-size WorkerExecutor with a cap on how much work may be waiting for it. Once the cap is hit we fail fast
+// with a 503 rather than queueing without bound behind a slow backend.
+public class WorkerPool {
+    private static String executorName = "myreads-datastore-worker";
+    private static int defaultPoolSize = 32;
+    private static int defaultMaxQueueDepth = 512;
+    private static long defaultMaxExecuteTimeMs = 60000;
+    private static int retryAfterSeconds = 1;
+
+    private final WorkerExecutor executor;
+    private final int poolSize;
+    private final int maxQueueDepth;
+
+    // Counted across the whole process, since every verticle instance shares the one executor.
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicLong completed = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+
+    public static class SaturatedException extends RuntimeException {
+        public SaturatedException() {
+            super("Worker pool is saturated");
+        }
+    }
+
+    public WorkerPool(Vertx vertx, JsonObject config) {
+        poolSize = config.getInteger("worker.poolSize", defaultPoolSize);
+        maxQueueDepth = config.getInteger("worker.maxQueueDepth", defaultMaxQueueDepth);
+        long maxExecuteTimeMs = config.getLong("worker.maxExecuteTimeMs", defaultMaxExecuteTimeMs);
+
+        // Shared executors are reference counted by name, so every verticle instance ends up on the same pool.
+        executor = vertx.createSharedWorkerExecutor(
+            executorName,
+            poolSize,
+            TimeUnit.MILLISECONDS.toNanos(maxExecuteTimeMs));
+    }
+
+    // Runs the blocking code on the pool and completes the returned future back on the caller's context.
+    // Unordered, so independent calls from the same verticle can run concurrently.
+    public <T> Future<T> submit(Callable<T> blockingCode) {
+        Future<T> result = Future.future();
+
+        if (inFlight.incrementAndGet() > poolSize + maxQueueDepth) {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            result.fail(new SaturatedException());
+            return result;
+        }
+
+        executor.<T>executeBlocking(fut -> {
+            try {
+                fut.complete(blockingCode.call());
+            }
+            catch (Throwable t) {
+                fut.fail(t);
+            }
+        }, false, ar -> {
+            inFlight.decrementAndGet();
+            completed.incrementAndGet();
+            result.handle(ar);
+        });
+        return result;
+    }
+
+    public static void respondSaturated(RoutingContext routingContext) {
+        routingContext.response()
+            .setStatusCode(HttpResponseStatus.SERVICE_UNAVAILABLE.code())
+            .putHeader("content-type", "text/plain")
+            .putHeader("retry-after", Integer.toString(retryAfterSeconds))
+            .end("Server is busy, please retry");
+    }
+
+    public void close() {
+        executor.close();
+    }
+
+    public JsonObject metrics() {
+        return new JsonObject()
+            .put("poolSize", poolSize)
+            .put("maxQueueDepth", maxQueueDepth)
+            .put("inFlight", inFlight.get())
+            .put("completed", completed.get())
+            .put("rejected", rejected.get());
+    }
+}
@@ -30,6 +30,10 @@ public class CommentEntity {
     }
 
     public static CommentEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.comment(e);
+        }
+
         CommentEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> e.getValue(k).get()), CommentEntity.class);
         entity.id = e.getKey().getId();
         return entity;
@@ -0,0 +1,200 @@
+package me.samng.myreads.api.entities;
+
+import com.google.cloud.datastore.*;
+import io.vertx.core.json.JsonObject;
+import me.samng.myreads.api.entities.indexes.TagToReadingListElementEntity;
+import me.samng.myreads.api.entities.indexes.TagToReadingListEntity;
+
+import java.util.*;
+
+// Hand-written conversions between Datastore entities and our entity classes. They copy each property straight
+// into its field, where fromEntity's original path builds a map view of the entity, copies every list and then
+// has Jackson convert the lot by reflection. A property that isn't there leaves the field at its default, as
+// before. Each kind can be switched back to the reflective path with codec.<kind> = "reflective".
+public class EntityCodecs {
+    private static volatile Set<String> reflectiveKinds = new HashSet<>();
+
+    public static void configure(JsonObject config) {
+        Set<String> kinds = new HashSet<>();
+        for (String name : config.fieldNames()) {
+            if (name.startsWith("codec.") && "reflective".equals(config.getValue(name))) {
+                kinds.add(name.substring("codec.".length()));
+            }
+        }
+        reflectiveKinds = kinds;
+    }
+
+    public static void setReflective(String kind, boolean reflective) {
+        Set<String> kinds = new HashSet<>(reflectiveKinds);
+        if (reflective) {
+            kinds.add(kind);
+        }
+        else {
+            kinds.remove(kind);
+        }
+        reflectiveKinds = kinds;
+    }
+
+    public static boolean isDirect(Entity e) {
+        return !reflectiveKinds.contains(e.getKey().getKind());
+    }
+
+    private static boolean has(Entity e, String name) {
+        return e.contains(name) && !e.isNull(name);
+    }
+
+    private static long getLong(Entity e, String name, long defaultValue) {
+        return has(e, name) ? e.getLong(name) : defaultValue;
+    }
+
+    private static boolean getBoolean(Entity e, String name, boolean defaultValue) {
+        return has(e, name) ? e.getBoolean(name) : defaultValue;
+    }
+
+    private static String getString(Entity e, String name, String defaultValue) {
+        if (!e.contains(name)) {
+            return defaultValue;
+        }
+        return e.isNull(name) ? null : e.getString(name);
+    }
+
+    private static List<Long> getLongList(Entity e, String name, List<Long> defaultValue) {
+        if (!e.contains(name)) {
+            return defaultValue;
+        }
+        if (e.isNull(name)) {
+            return null;
+        }
+
+        List<? extends Value<?>> values = e.getList(name);
+        ArrayList<Long> results = new ArrayList<>(values.size());
+        for (Value<?> value : values) {
+            results.add(((LongValue) value).get());
+        }
+        return results;
+    }
+
+    // The stored form of a list of ids.
+    public static List<LongValue> longValues(List<Long> ids) {
+        ArrayList<LongValue> values = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            values.add(LongValue.of(id));
+        }
+        return values;
+    }
+
+    static UserEntity user(Entity e) {
+        UserEntity entity = new UserEntity();
+        entity.id = e.getKey().getId();
+        entity.email = getString(e, "email", entity.email);
+        entity.name = getString(e, "name", entity.name);
+        entity.userId = getString(e, "userId", entity.userId);
+        entity.deleted = getBoolean(e, "deleted", entity.deleted);
+        return entity;
+    }
+
+    static ReadingListEntity readingList(Entity e) {
+        ReadingListEntity entity = new ReadingListEntity();
+        entity.id = e.getKey().getId();
+        entity.userId = getLong(e, "userId", entity.userId);
+        entity.name = getString(e, "name", entity.name);
+        entity.description = getString(e, "description", entity.description);
+        entity.tagIds = getLongList(e, "tagIds", entity.tagIds);
+        entity.readingListElementIds = getLongList(e, "readingListElementIds", entity.readingListElementIds);
+        entity.version = getLong(e, "version", entity.version);
+        entity.deleted = getBoolean(e, "deleted", entity.deleted);
+        return entity;
+    }
+
+    static ReadingListElementEntity readingListElement(Entity e) {
+        ReadingListElementEntity entity = new ReadingListElementEntity();
+        entity.id = e.getKey().getId();
+        entity.userId = getLong(e, "userId", entity.userId);
+        entity.listIds = getLongList(e, "listIds", entity.listIds);
+        entity.name = getString(e, "name", entity.name);
+        entity.description = getString(e, "description", entity.description);
+        entity.link = getString(e, "link", entity.link);
+        entity.tagIds = getLongList(e, "tagIds", entity.tagIds);
+        entity.commentIds = getLongList(e, "commentIds", entity.commentIds);
+        entity.version = getLong(e, "version", entity.version);
+        entity.deleted = getBoolean(e, "deleted", entity.deleted);
+        return entity;
+    }
+
+    static CommentEntity comment(Entity e) {
+        CommentEntity entity = new CommentEntity();
+        entity.id = e.getKey().getId();
+        entity.userId = getLong(e, "userId", entity.userId);
+        entity.readingListElementId = getLong(e, "readingListElementId", entity.readingListElementId);
+        entity.commentText = getString(e, "commentText", entity.commentText);
+        entity.deleted = getBoolean(e, "deleted", entity.deleted);
+        return entity;
+    }
+
+    static FollowedListEntity followedList(Entity e) {
+        FollowedListEntity entity = new FollowedListEntity();
+        entity.id = e.getKey().getId();
+        entity.ownerId = getLong(e, "ownerId", entity.ownerId);
+        entity.listId = getLong(e, "listId", entity.listId);
+        entity.userId = getLong(e, "userId", entity.userId);
+        entity.orphaned = getBoolean(e, "orphaned", entity.orphaned);
+        entity.deleted = getBoolean(e, "deleted", entity.deleted);
+        return entity;
+    }
+
+    static TagEntity tag(Entity e) {
+        TagEntity entity = new TagEntity();
+        entity.id = e.getKey().getId();
+        entity.tagName = getString(e, "tagName", entity.tagName);
+        entity.deleted = getBoolean(e, "deleted", entity.deleted);
+        return entity;
+    }
+
+    static JobEntity job(Entity e) {
+        JobEntity entity = new JobEntity();
+        entity.id = e.getKey().getId();
+        entity.type = getString(e, "type", entity.type);
+        entity.targetId = getLong(e, "targetId", entity.targetId);
+        entity.status = getString(e, "status", entity.status);
+        entity.phase = getString(e, "phase", entity.phase);
+        entity.cursor = getString(e, "cursor", entity.cursor);
+        entity.processed = getLong(e, "processed", entity.processed);
+        entity.error = getString(e, "error", entity.error);
+        entity.createdAt = getLong(e, "createdAt", entity.createdAt);
+        entity.updatedAt = getLong(e, "updatedAt", entity.updatedAt);
+        entity.owner = getString(e, "owner", entity.owner);
+        entity.leaseExpiresAt = getLong(e, "leaseExpiresAt", entity.leaseExpiresAt);
+        return entity;
+    }
+
+    static FeedEntryEntity feedEntry(Entity e) {
+        FeedEntryEntity entity = new FeedEntryEntity();
+        entity.id = e.getKey().getNameOrId().toString();
+        entity.userId = getLong(e, "userId", entity.userId);
+        entity.ownerId = getLong(e, "ownerId", entity.ownerId);
+        entity.readingListId = getLong(e, "readingListId", entity.readingListId);
+        entity.readingListName = getString(e, "readingListName", entity.readingListName);
+        entity.readingListElementId = getLong(e, "readingListElementId", entity.readingListElementId);
+        entity.readingListElementName = getString(e, "readingListElementName", entity.readingListElementName);
+        entity.createdAt = getLong(e, "createdAt", entity.createdAt);
+        return entity;
+    }
+
+    public static TagToReadingListEntity tagToReadingList(Entity e) {
+        TagToReadingListEntity entity = new TagToReadingListEntity();
+        entity.id = e.getKey().getNameOrId().toString();
+        entity.userId = getLong(e, "userId", entity.userId);
+        entity.tagId = getLong(e, "tagId", entity.tagId);
+        entity.readingListId = getLong(e, "readingListId", entity.readingListId);
+        return entity;
+    }
+
+    public static TagToReadingListElementEntity tagToReadingListElement(Entity e) {
+        TagToReadingListElementEntity entity = new TagToReadingListElementEntity();
+        entity.id = e.getKey().getNameOrId().toString();
+        entity.userId = getLong(e, "userId", entity.userId);
+        entity.tagId = getLong(e, "tagId", entity.tagId);
+        entity.readingListElementId = getLong(e, "readingListElementId", entity.readingListElementId);
+        return entity;
+    }
+}
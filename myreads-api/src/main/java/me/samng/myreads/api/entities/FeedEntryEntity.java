@@ -0,0 +1,50 @@
+package me.samng.myreads.api.entities;
+
+import com.google.cloud.datastore.Entity;
+import com.google.common.collect.Maps;
+import io.vertx.core.json.Json;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+// "An element was added to a list you follow", written to each follower's feed when it happens. The names are
+// copied in so that a page of the feed can be shown without looking anything else up.
+@Data
+@Accessors(fluent = true)
+public class FeedEntryEntity {
+    // The key name, which sorts newest first within a follower's feed; see DatastoreHelpers.feedEntryKeyName().
+    @JsonProperty("id")
+    public String id;
+
+    // The follower whose feed this is.
+    @JsonProperty("userId")
+    public long userId;
+
+    @JsonProperty("ownerId")
+    public long ownerId;
+
+    @JsonProperty("readingListId")
+    public long readingListId;
+
+    @JsonProperty("readingListName")
+    public String readingListName;
+
+    @JsonProperty("readingListElementId")
+    public long readingListElementId;
+
+    @JsonProperty("readingListElementName")
+    public String readingListElementName;
+
+    @JsonProperty("createdAt")
+    public long createdAt;
+
+    public static FeedEntryEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.feedEntry(e);
+        }
+
+        FeedEntryEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> e.getValue(k).get()), FeedEntryEntity.class);
+        entity.id = e.getKey().getNameOrId().toString();
+        return entity;
+    }
+}
@@ -34,6 +34,10 @@ public class FollowedListEntity {
     }
 
     public static FollowedListEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.followedList(e);
+        }
+
         FollowedListEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> e.getValue(k).get()), FollowedListEntity.class);
         entity.id = e.getKey().getId();
         return entity;
@@ -0,0 +1,81 @@
+package me.samng.myreads.api.entities;
+
+import com.google.cloud.datastore.Entity;
+import com.google.common.collect.Maps;
+import io.vertx.core.json.Json;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+@Data
+@Accessors(fluent = true)
+public class JobEntity {
+    public static String queuedStatus = "queued";
+    public static String runningStatus = "running";
+    public static String succeededStatus = "succeeded";
+    public static String failedStatus = "failed";
+
+    @JsonProperty("id")
+    public long id;
+
+    @JsonProperty("type")
+    public String type;
+
+    // The id of the entity the job works on, e.g. the user being deleted.
+    @JsonProperty("targetId")
+    public long targetId;
+
+    @JsonProperty("status")
+    public String status;
+
+    // Which part of the job is running, and where in it we are, so that a restarted job picks up from there.
+    @JsonProperty("phase")
+    public String phase;
+
+    @JsonProperty("cursor")
+    public String cursor;
+
+    @JsonProperty("processed")
+    public long processed;
+
+    @JsonProperty("error")
+    public String error;
+
+    @JsonProperty("createdAt")
+    public long createdAt;
+
+    @JsonProperty("updatedAt")
+    public long updatedAt;
+
+    // Which JobManager is running the job, and until when. The lease is renewed with every saved step, and
+    // another process only takes the job over once it has run out, so a job doesn't run in two places at once.
+    @JsonProperty("owner")
+    public String owner;
+
+    @JsonProperty("leaseExpiresAt")
+    public long leaseExpiresAt;
+
+    public JobEntity() {
+        status = queuedStatus;
+        phase = "";
+        cursor = "";
+        processed = 0;
+        error = "";
+        owner = "";
+        leaseExpiresAt = 0;
+    }
+
+    public boolean finished() {
+        return succeededStatus.equals(status) || failedStatus.equals(status);
+    }
+
+    public static JobEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.job(e);
+        }
+
+        JobEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> e.getValue(k).get()), JobEntity.class);
+        entity.id = e.getKey().getId();
+        return entity;
+    }
+}
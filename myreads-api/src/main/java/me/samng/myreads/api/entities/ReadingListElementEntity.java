@@ -42,6 +42,10 @@ public class ReadingListElementEntity {
     @JsonProperty("commentIds")
     public List<Long> commentIds;
 
+    // Goes up by one with every write, so a write can insist on the version it read.
+    @JsonProperty("version")
+    public long version;
+
     @JsonProperty("deleted")
     public boolean deleted;
 
@@ -53,6 +57,10 @@ public class ReadingListElementEntity {
     }
 
     public static ReadingListElementEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.readingListElement(e);
+        }
+
         ReadingListElementEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> {
             Value<?> value = e.getValue(k);
             if(value instanceof ListValue) {
@@ -35,6 +35,10 @@ public class ReadingListEntity {
     @JsonProperty("readingListElementIds")
     public List<Long> readingListElementIds;
 
+    // Goes up by one with every write, so a write can insist on the version it read.
+    @JsonProperty("version")
+    public long version;
+
     @JsonProperty("deleted")
     public boolean deleted;
 
@@ -45,6 +49,10 @@ public class ReadingListEntity {
     }
 
     public static ReadingListEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.readingList(e);
+        }
+
         ReadingListEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> {
             Value<?> value = e.getValue(k);
             if(value instanceof ListValue) {
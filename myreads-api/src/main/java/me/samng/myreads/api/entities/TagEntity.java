@@ -1,5 +1,6 @@
 package me.samng.myreads.api.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.google.cloud.datastore.Entity;
 import com.google.common.collect.Maps;
 import io.vertx.core.json.Json;
@@ -9,6 +10,8 @@ import org.codehaus.jackson.annotate.JsonProperty;
 
 @Data
 @Accessors(fluent = true)
+// normalizedName is only stored for lookups by name; see DatastoreHelpers.getTagByName.
+@JsonIgnoreProperties({ "normalizedName" })
 public class TagEntity {
     @JsonProperty("id")
     public long id;
@@ -24,6 +27,10 @@ public class TagEntity {
     }
 
     public static TagEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.tag(e);
+        }
+
         TagEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> e.getValue(k).get()), TagEntity.class);
         entity.id = e.getKey().getId();
         return entity;
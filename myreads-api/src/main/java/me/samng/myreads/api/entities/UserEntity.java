@@ -30,6 +30,10 @@ public class UserEntity {
     }
 
     public static UserEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.user(e);
+        }
+
         UserEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> e.getValue(k).get()), UserEntity.class);
         entity.id = e.getKey().getId();
         return entity;
@@ -4,14 +4,17 @@ import com.google.cloud.datastore.Entity;
 import com.google.common.collect.Maps;
 import io.vertx.core.json.Json;
 import lombok.Data;
+import me.samng.myreads.api.entities.EntityCodecs;
 import lombok.experimental.Accessors;
 import org.codehaus.jackson.annotate.JsonProperty;
 
 @Data
 @Accessors(fluent = true)
 public class TagToReadingListElementEntity {
+    // The key name, "userId:tagId:readingListElementId". Rows written before keys were derived from the mapping carry their
+    // numeric id here instead.
     @JsonProperty("id")
-    public long id;
+    public String id;
 
     @JsonProperty("userId")
     public long userId;
@@ -23,8 +26,12 @@ public class TagToReadingListElementEntity {
     public long readingListElementId;
 
     public static TagToReadingListElementEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.tagToReadingListElement(e);
+        }
+
         TagToReadingListElementEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> e.getValue(k).get()), TagToReadingListElementEntity.class);
-        entity.id = e.getKey().getId();
+        entity.id = e.getKey().getNameOrId().toString();
         return entity;
     }
 }
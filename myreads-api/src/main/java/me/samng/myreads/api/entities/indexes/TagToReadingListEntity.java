@@ -4,14 +4,17 @@ import com.google.cloud.datastore.Entity;
 import com.google.common.collect.Maps;
 import io.vertx.core.json.Json;
 import lombok.Data;
+import me.samng.myreads.api.entities.EntityCodecs;
 import lombok.experimental.Accessors;
 import org.codehaus.jackson.annotate.JsonProperty;
 
 @Data
 @Accessors(fluent = true)
 public class TagToReadingListEntity {
+    // The key name, "userId:tagId:readingListId". Rows written before keys were derived from the mapping carry their
+    // numeric id here instead.
     @JsonProperty("id")
-    public long id;
+    public String id;
 
     @JsonProperty("userId")
     public long userId;
@@ -23,8 +26,12 @@ public class TagToReadingListEntity {
     public long readingListId;
 
     public static TagToReadingListEntity fromEntity(Entity e) {
+        if (EntityCodecs.isDirect(e)) {
+            return EntityCodecs.tagToReadingList(e);
+        }
+
         TagToReadingListEntity entity = Json.mapper.convertValue(Maps.toMap(e.getNames(), k -> e.getValue(k).get()), TagToReadingListEntity.class);
-        entity.id = e.getKey().getId();
+        entity.id = e.getKey().getNameOrId().toString();
         return entity;
     }
 }
@@ -0,0 +1,40 @@
+package me.samng.myreads.api.jobs;
+
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.entities.JobEntity;
+
+import java.util.List;
+
+public class DatastoreJobStore implements JobStore {
+    private final DatastoreClient datastoreClient;
+
+    public DatastoreJobStore(DatastoreClient datastoreClient) {
+        this.datastoreClient = datastoreClient;
+    }
+
+    @Override
+    public long create(JobEntity job) {
+        return DatastoreHelpers.createJob(datastoreClient.datastore(), job);
+    }
+
+    @Override
+    public JobEntity get(long jobId) {
+        return DatastoreHelpers.getJob(datastoreClient.datastore(), jobId);
+    }
+
+    @Override
+    public boolean claim(JobEntity job, long now) {
+        return DatastoreHelpers.claimJob(datastoreClient.datastore(), job, now);
+    }
+
+    @Override
+    public void release(long jobId, String owner) {
+        DatastoreHelpers.releaseJob(datastoreClient.datastore(), jobId, owner);
+    }
+
+    @Override
+    public List<JobEntity> getUnfinished() {
+        return DatastoreHelpers.getUnfinishedJobs(datastoreClient.datastore());
+    }
+}
@@ -0,0 +1,63 @@
+package me.samng.myreads.api.jobs;
+
+import io.vertx.core.json.Json;
+import me.samng.myreads.api.entities.JobEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+// Keeps jobs in this process only, for running locally and in tests. Jobs are copied in and out, the way a real
+// store would serialize them, so callers can't change a stored job without calling update().
+public class InMemoryJobStore implements JobStore {
+    private final TreeMap<Long, JobEntity> jobs = new TreeMap<>();
+    private long nextId = 1;
+
+    @Override
+    public synchronized long create(JobEntity job) {
+        long jobId = nextId++;
+        JobEntity stored = copy(job);
+        stored.id = jobId;
+        jobs.put(jobId, stored);
+        return jobId;
+    }
+
+    @Override
+    public synchronized JobEntity get(long jobId) {
+        JobEntity job = jobs.get(jobId);
+        return job == null ? null : copy(job);
+    }
+
+    @Override
+    public synchronized boolean claim(JobEntity job, long now) {
+        JobEntity stored = jobs.get(job.id);
+        if (stored != null && (stored.finished() || (!stored.owner.equals(job.owner) && stored.leaseExpiresAt > now))) {
+            return false;
+        }
+        jobs.put(job.id, copy(job));
+        return true;
+    }
+
+    @Override
+    public synchronized void release(long jobId, String owner) {
+        JobEntity stored = jobs.get(jobId);
+        if (stored != null && stored.owner.equals(owner)) {
+            stored.leaseExpiresAt = 0;
+        }
+    }
+
+    @Override
+    public synchronized List<JobEntity> getUnfinished() {
+        ArrayList<JobEntity> results = new ArrayList<>();
+        for (JobEntity job : jobs.values()) {
+            if (!job.finished()) {
+                results.add(copy(job));
+            }
+        }
+        return results;
+    }
+
+    private static JobEntity copy(JobEntity job) {
+        return Json.decodeValue(Json.encode(job), JobEntity.class);
+    }
+}
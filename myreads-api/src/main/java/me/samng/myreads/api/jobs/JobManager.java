@@ -0,0 +1,282 @@
+package me.samng.myreads.api.jobs;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import me.samng.myreads.api.WorkerPool;
+import me.samng.myreads.api.entities.JobEntity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.UUID;
+
+// Runs long operations in the background, a batch at a time. Each job type registers a step that does one batch
+// of work on the job and records where it got to; the job is saved after every step, so progress can be polled
+// and a job interrupted by a restart carries on from its last saved step once resume() is called. A step that
+// fails is tried again from the last saved progress, a little later each time, and only after maxStepAttempts
+// failures in a row does the job fail. Every save renews the job's lease, which keeps other processes from
+// resuming it while it is still running here. At most maxConcurrent jobs run at once and the rest wait their turn.
+public class JobManager {
+    private static int defaultMaxConcurrent = 2;
+    private static int defaultMaxStepAttempts = 5;
+    private static long defaultRetryDelayMs = 1000;
+    private static long defaultLeaseMs = 60000;
+
+    // Does the next batch of work on the job, updating its phase, cursor and processed count, and completes with
+    // true once there is nothing left to do. It must be safe to repeat a step whose progress wasn't saved.
+    public interface Step {
+        Future<Boolean> run(JobEntity job);
+    }
+
+    private final Vertx vertx;
+    private final JobStore store;
+    private final WorkerPool workerPool;
+    private final int maxConcurrent;
+    private final int maxStepAttempts;
+    private final long retryDelayMs;
+    private final long leaseMs;
+    // Tells this manager's leases apart from those of every other manager, in this process or another.
+    private final String owner = UUID.randomUUID().toString();
+    private final HashMap<String, Step> steps = new HashMap<>();
+    private final ArrayDeque<JobEntity> queue = new ArrayDeque<>();
+    // The ids of the jobs that are running here.
+    private final HashSet<Long> active = new HashSet<>();
+    private boolean stopped = false;
+    private int running = 0;
+    private long succeeded = 0;
+    private long failed = 0;
+    private long retried = 0;
+    private long lost = 0;
+
+    public JobManager(Vertx vertx, JobStore store, WorkerPool workerPool, JsonObject config) {
+        this.vertx = vertx;
+        this.store = store;
+        this.workerPool = workerPool;
+        this.maxConcurrent = config.getInteger("jobs.maxConcurrent", defaultMaxConcurrent);
+        this.maxStepAttempts = config.getInteger("jobs.maxStepAttempts", defaultMaxStepAttempts);
+        this.retryDelayMs = config.getLong("jobs.retryDelayMs", defaultRetryDelayMs);
+        this.leaseMs = config.getLong("jobs.leaseMs", defaultLeaseMs);
+    }
+
+    public void register(String type, Step step) {
+        steps.put(type, step);
+    }
+
+    // Saves a new job and queues it. The returned job carries the id to poll.
+    public Future<JobEntity> submit(String type, long targetId) {
+        if (!steps.containsKey(type)) {
+            return Future.failedFuture(new IllegalArgumentException("Unknown job type " + type));
+        }
+
+        JobEntity job = new JobEntity();
+        job.type = type;
+        job.targetId = targetId;
+        job.createdAt = System.currentTimeMillis();
+        job.updatedAt = job.createdAt;
+        job.owner = owner;
+        job.leaseExpiresAt = job.createdAt + leaseMs;
+        return workerPool.submit(() -> store.create(job)).map(jobId -> {
+            job.id = jobId;
+            enqueue(job);
+            return job;
+        });
+    }
+
+    public Future<JobEntity> get(long jobId) {
+        return workerPool.submit(() -> store.get(jobId));
+    }
+
+    // Queues every unfinished job whose lease has run out or been let go: at startup, those whose process went
+    // away, and later, those of a manager that has stopped. Jobs still running elsewhere keep renewing their
+    // leases, and jobs this manager already holds are under way here, so both are left alone. Safe to call again.
+    public Future<Integer> resume() {
+        return workerPool.submit(store::getUnfinished).map(jobs -> {
+            long now = System.currentTimeMillis();
+            int resumed = 0;
+            for (JobEntity job : jobs) {
+                if (job.leaseExpiresAt <= now && !owner.equals(job.owner)) {
+                    enqueue(job);
+                    resumed++;
+                }
+            }
+            return resumed;
+        });
+    }
+
+    private synchronized void enqueue(JobEntity job) {
+        if (stopped) {
+            return;
+        }
+        queue.add(job);
+        startNext();
+    }
+
+    // Takes on no more work and lets go of every job this manager holds, so that another manager can resume them
+    // straight away rather than once their leases run out. A step already under way is left to finish, but what
+    // it did isn't saved; whoever resumes the job repeats it.
+    public Future<Void> stop() {
+        ArrayList<Long> held = new ArrayList<>();
+        synchronized (this) {
+            stopped = true;
+            queue.forEach(job -> held.add(job.id));
+            held.addAll(active);
+            queue.clear();
+        }
+        return workerPool.submit(() -> {
+            for (long jobId : held) {
+                store.release(jobId, owner);
+            }
+            return null;
+        });
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    // Each job is claimed before its first step, so that if another process took it over while it was queued
+    // here, it isn't run a second time.
+    private synchronized void startNext() {
+        while (running < maxConcurrent && !queue.isEmpty()) {
+            running++;
+            JobEntity job = queue.poll();
+            active.add(job.id);
+            job.status = JobEntity.runningStatus;
+            save(job).setHandler(ar -> {
+                if (ar.failed() || !ar.result()) {
+                    abandon(job, ar.cause());
+                }
+                else {
+                    runStep(job, 1);
+                }
+            });
+        }
+    }
+
+    private synchronized void finish(JobEntity job) {
+        running--;
+        active.remove(job.id);
+        if (JobEntity.succeededStatus.equals(job.status)) {
+            succeeded++;
+        }
+        else {
+            failed++;
+        }
+        startNext();
+    }
+
+    // The job is no longer ours to run, or we can't tell. Whoever holds it now, or resumes it once its lease runs
+    // out, carries on from its last saved step.
+    private synchronized void abandon(JobEntity job, Throwable cause) {
+        System.out.println("Leaving job " + job.id + ": "
+            + (cause == null ? "another process has taken it over" : "unable to save it, " + cause.getMessage()));
+        running--;
+        active.remove(job.id);
+        lost++;
+        startNext();
+    }
+
+    // Saves the job and renews our lease on it. Completes with false if another manager holds the job now.
+    private Future<Boolean> save(JobEntity job) {
+        long now = System.currentTimeMillis();
+        job.updatedAt = now;
+        job.owner = owner;
+        job.leaseExpiresAt = now + leaseMs;
+        return workerPool.submit(() -> store.claim(job, now));
+    }
+
+    // Doubling from retryDelayMs, but never so long that the lease could run out while we wait.
+    private long retryDelay(int attempt) {
+        return Math.max(1, Math.min(retryDelayMs << Math.min(attempt - 1, 20), leaseMs / 2));
+    }
+
+    private synchronized void countRetry() {
+        retried++;
+    }
+
+    private void runStep(JobEntity job, int attempt) {
+        Step step = steps.get(job.type);
+        String phase = job.phase;
+        String cursor = job.cursor;
+        long processed = job.processed;
+        Future<Boolean> done = step == null
+            ? Future.failedFuture(new IllegalStateException("Unknown job type " + job.type))
+            : step.run(job);
+
+        done.setHandler(stepResult -> {
+            if (isStopped()) {
+                // Already let go of, so the job is no longer ours to save.
+                synchronized (this) {
+                    running--;
+                    active.remove(job.id);
+                }
+                return;
+            }
+
+            boolean finished;
+            if (stepResult.failed()) {
+                Throwable t = stepResult.cause();
+                job.error = t.getMessage() == null ? t.getClass().getName() : t.getMessage();
+                if (step != null && attempt < maxStepAttempts) {
+                    // Usually a passing Datastore error. Go back to the last saved progress, since the step may
+                    // have moved it before failing, and try the step again in a while. The save in between keeps
+                    // the lease from running out.
+                    job.phase = phase;
+                    job.cursor = cursor;
+                    job.processed = processed;
+                    countRetry();
+                    save(job).setHandler(ar -> {
+                        if (ar.failed() || !ar.result()) {
+                            abandon(job, ar.cause());
+                        }
+                        else {
+                            vertx.setTimer(retryDelay(attempt), id -> runStep(job, attempt + 1));
+                        }
+                    });
+                    return;
+                }
+                job.status = JobEntity.failedStatus;
+                finished = true;
+            }
+            else {
+                finished = stepResult.result();
+                job.error = "";
+                if (finished && !job.finished()) {
+                    job.status = JobEntity.succeededStatus;
+                }
+            }
+
+            save(job).setHandler(ar -> {
+                if (ar.failed()) {
+                    // The store itself is failing. Leave the job as it was last saved, so that it resumes from
+                    // there once its lease runs out.
+                    System.out.println("Unable to save job " + job.id + ": " + ar.cause().getMessage());
+                    job.status = JobEntity.failedStatus;
+                    finish(job);
+                }
+                else if (!ar.result()) {
+                    abandon(job, null);
+                }
+                else if (finished) {
+                    finish(job);
+                }
+                else {
+                    runStep(job, 1);
+                }
+            });
+        });
+    }
+
+    public synchronized JsonObject metrics() {
+        return new JsonObject()
+            .put("maxConcurrent", maxConcurrent)
+            .put("running", running)
+            .put("queued", queue.size())
+            .put("succeeded", succeeded)
+            .put("failed", failed)
+            .put("retried", retried)
+            .put("lost", lost);
+    }
+}
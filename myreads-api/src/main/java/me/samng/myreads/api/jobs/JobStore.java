@@ -0,0 +1,24 @@
+package me.samng.myreads.api.jobs;
+
+import me.samng.myreads.api.entities.JobEntity;
+
+import java.util.List;
+
+// Where jobs and their progress are kept, so that they outlive the process that started them. Calls may block, so
+// JobManager only makes them from the worker pool.
+public interface JobStore {
+    long create(JobEntity job);
+
+    // Null if there is no such job.
+    JobEntity get(long jobId);
+
+    // Saves the job as long as it is still this owner's to save: see DatastoreHelpers.claimJob. False, with nothing
+    // saved, if another owner holds a lease on it that hasn't run out or it has already finished.
+    boolean claim(JobEntity job, long now);
+
+    // Ends the owner's lease on the job, if it still holds one, leaving the job's progress as it was last saved.
+    void release(long jobId, String owner);
+
+    // Jobs that were queued or running, oldest first.
+    List<JobEntity> getUnfinished();
+}
@@ -0,0 +1,43 @@
+package me.samng.myreads.api.repositories;
+
+import io.vertx.core.Future;
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.Page;
+import me.samng.myreads.api.WorkerPool;
+import me.samng.myreads.api.entities.CommentEntity;
+
+import java.util.List;
+
+public class CommentRepository extends Repository {
+    public CommentRepository(DatastoreClient datastoreClient, WorkerPool workerPool) {
+        super(datastoreClient, workerPool);
+    }
+
+    public Future<List<CommentEntity>> getAllForReadingListElement(long userId, long readingListElementId) {
+        return run(datastore -> DatastoreHelpers.getAllCommentsForReadingListElement(datastore, userId, readingListElementId));
+    }
+
+    public Future<Page<CommentEntity>> getAllForReadingListElement(long userId, long readingListElementId, int limit, String cursor) {
+        return run(datastore -> DatastoreHelpers.getAllCommentsForReadingListElement(datastore, userId, readingListElementId, limit, cursor));
+    }
+
+    public Future<CommentEntity> get(long commentId) {
+        return run(datastore -> DatastoreHelpers.getComment(datastore, commentId));
+    }
+
+    public Future<Long> create(CommentEntity commentEntity) {
+        return run(datastore -> DatastoreHelpers.createComment(datastore, commentEntity));
+    }
+
+    public Future<Boolean> update(CommentEntity commentEntity) {
+        return run(datastore -> DatastoreHelpers.updateComment(datastore, commentEntity, false));
+    }
+
+    public Future<Void> delete(long commentId) {
+        return run(datastore -> {
+            DatastoreHelpers.deleteComment(datastore, commentId);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,26 @@
+package me.samng.myreads.api.repositories;
+
+import io.vertx.core.Future;
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.Page;
+import me.samng.myreads.api.WorkerPool;
+import me.samng.myreads.api.entities.FeedEntryEntity;
+
+import java.util.List;
+
+public class FeedRepository extends Repository {
+    public FeedRepository(DatastoreClient datastoreClient, WorkerPool workerPool) {
+        super(datastoreClient, workerPool);
+    }
+
+    // Newest first.
+    public Future<Page<FeedEntryEntity>> getForUser(long userId, int limit, String cursor) {
+        return run(datastore -> DatastoreHelpers.getFeed(datastore, userId, limit, cursor));
+    }
+
+    // Resolves to how many entries were written.
+    public Future<Integer> publish(long readingListId, List<Long> readingListElementIds) {
+        return run(datastore -> DatastoreHelpers.addToFeeds(datastore, readingListId, readingListElementIds));
+    }
+}
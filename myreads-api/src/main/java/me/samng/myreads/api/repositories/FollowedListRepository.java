@@ -0,0 +1,52 @@
+package me.samng.myreads.api.repositories;
+
+import io.vertx.core.Future;
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.Page;
+import me.samng.myreads.api.WorkerPool;
+import me.samng.myreads.api.entities.FollowedListEntity;
+
+import java.util.List;
+
+public class FollowedListRepository extends Repository {
+    public FollowedListRepository(DatastoreClient datastoreClient, WorkerPool workerPool) {
+        super(datastoreClient, workerPool);
+    }
+
+    public Future<List<FollowedListEntity>> getAllForUser(long userId) {
+        return run(datastore -> DatastoreHelpers.getAllFollowedListsForUser(datastore, userId));
+    }
+
+    public Future<Page<FollowedListEntity>> getAllForUser(long userId, int limit, String cursor) {
+        return run(datastore -> DatastoreHelpers.getAllFollowedListsForUser(datastore, userId, limit, cursor));
+    }
+
+    public Future<List<FollowedListEntity>> getAllForList(long readingListId) {
+        return run(datastore -> DatastoreHelpers.getAllFollowedListsForList(datastore, readingListId));
+    }
+
+    public Future<FollowedListEntity> get(long followedListId) {
+        return run(datastore -> DatastoreHelpers.getFollowedList(datastore, followedListId));
+    }
+
+    // Resolves to null if the followed list doesn't exist or doesn't belong to the user.
+    public Future<FollowedListEntity> getIfOwnedBy(long userId, long followedListId) {
+        return get(followedListId).map(list -> list == null || list.userId != userId ? null : list);
+    }
+
+    public Future<Long> create(FollowedListEntity followedListEntity) {
+        return run(datastore -> DatastoreHelpers.createFollowedList(datastore, followedListEntity));
+    }
+
+    public Future<Boolean> update(FollowedListEntity followedListEntity) {
+        return run(datastore -> DatastoreHelpers.updateFollowedList(datastore, followedListEntity, false));
+    }
+
+    public Future<Void> delete(long followedListId) {
+        return run(datastore -> {
+            DatastoreHelpers.deleteFollowedList(datastore, followedListId);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package me.samng.myreads.api.repositories;
+
+import io.vertx.core.Future;
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.Page;
+import me.samng.myreads.api.TagQuery;
+import me.samng.myreads.api.WorkerPool;
+import me.samng.myreads.api.entities.ReadingListElementEntity;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+public class ReadingListElementRepository extends Repository {
+    public ReadingListElementRepository(DatastoreClient datastoreClient, WorkerPool workerPool) {
+        super(datastoreClient, workerPool);
+    }
+
+    public Future<List<ReadingListElementEntity>> getAllForUser(long userId) {
+        return run(datastore -> DatastoreHelpers.getAllReadingListElementsForUser(datastore, userId));
+    }
+
+    public Future<Page<ReadingListElementEntity>> getAllForUser(long userId, int limit, String cursor) {
+        return run(datastore -> DatastoreHelpers.getAllReadingListElementsForUser(datastore, userId, limit, cursor));
+    }
+
+    public Future<List<ReadingListElementEntity>> getAllForUserMatching(long userId, TagQuery query) {
+        return run(datastore -> DatastoreHelpers.getReadingListElementsForUserMatching(datastore, userId, query));
+    }
+
+    public Future<ReadingListElementEntity> get(long readingListElementId) {
+        return run(datastore -> DatastoreHelpers.getReadingListElement(datastore, readingListElementId));
+    }
+
+    // Looked up in batches. The result lines up with the ids, with null for any that are missing or deleted.
+    public Future<List<ReadingListElementEntity>> getMany(List<Long> readingListElementIds) {
+        return run(datastore -> DatastoreHelpers.getReadingListElements(datastore, readingListElementIds));
+    }
+
+    // Resolves to null if the element doesn't exist or doesn't belong to the user.
+    public Future<ReadingListElementEntity> getIfOwnedBy(long userId, long readingListElementId) {
+        return get(readingListElementId).map(rle -> rle == null || rle.userId != userId ? null : rle);
+    }
+
+    public Future<Long> create(ReadingListElementEntity readingListElementEntity) {
+        return run(datastore -> DatastoreHelpers.createReadingListElement(datastore, readingListElementEntity));
+    }
+
+    // Created together, a commit's worth at a time. The ids line up with the entities.
+    public Future<List<Long>> createMany(List<ReadingListElementEntity> readingListElementEntitys) {
+        return run(datastore -> DatastoreHelpers.createReadingListElements(datastore, readingListElementEntitys));
+    }
+
+    public Future<Boolean> update(ReadingListElementEntity readingListElementEntity) {
+        return run(datastore -> DatastoreHelpers.updateReadingListElement(datastore, readingListElementEntity, false));
+    }
+
+    // Applies the change to what's stored and writes it back, trying again from a fresh read if another write gets
+    // in first. Null if it doesn't exist.
+    public Future<ReadingListElementEntity> modify(long readingListElementId, Consumer<ReadingListElementEntity> change) {
+        return run(datastore -> DatastoreHelpers.modifyReadingListElement(datastore, readingListElementId, 0, change));
+    }
+
+    public Future<Void> delete(long readingListElementId) {
+        return run(datastore -> {
+            DatastoreHelpers.deleteReadingListElement(datastore, readingListElementId);
+            return null;
+        });
+    }
+
+    public Future<Void> addTagMapping(long userId, long tagId, long readingListElementId) {
+        return run(datastore -> {
+            DatastoreHelpers.addTagToReadingListElementMapping(datastore, userId, tagId, readingListElementId);
+            return null;
+        });
+    }
+
+    public Future<Void> removeTagMapping(long userId, long tagId, long readingListElementId) {
+        return run(datastore -> {
+            DatastoreHelpers.deleteTagToReadingListElementMapping(datastore, userId, tagId, readingListElementId);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package me.samng.myreads.api.repositories;
+
+import io.vertx.core.Future;
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.Page;
+import me.samng.myreads.api.TagQuery;
+import me.samng.myreads.api.WorkerPool;
+import me.samng.myreads.api.entities.ReadingListEntity;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+public class ReadingListRepository extends Repository {
+    public ReadingListRepository(DatastoreClient datastoreClient, WorkerPool workerPool) {
+        super(datastoreClient, workerPool);
+    }
+
+    public Future<List<ReadingListEntity>> getAllForUser(long userId) {
+        return run(datastore -> DatastoreHelpers.getAllReadingListsForUser(datastore, userId));
+    }
+
+    public Future<Page<ReadingListEntity>> getAllForUser(long userId, int limit, String cursor) {
+        return run(datastore -> DatastoreHelpers.getAllReadingListsForUser(datastore, userId, limit, cursor));
+    }
+
+    public Future<List<ReadingListEntity>> getAllForUserMatching(long userId, TagQuery query) {
+        return run(datastore -> DatastoreHelpers.getReadingListsForUserMatching(datastore, userId, query));
+    }
+
+    public Future<ReadingListEntity> get(long readingListId) {
+        return run(datastore -> DatastoreHelpers.getReadingList(datastore, readingListId));
+    }
+
+    // Looked up in batches. The result lines up with the ids, with null for any that are missing or deleted.
+    public Future<List<ReadingListEntity>> getMany(List<Long> readingListIds) {
+        return run(datastore -> DatastoreHelpers.getReadingLists(datastore, readingListIds));
+    }
+
+    // Resolves to null if the list doesn't exist or doesn't belong to the user.
+    public Future<ReadingListEntity> getIfOwnedBy(long userId, long readingListId) {
+        return get(readingListId).map(list -> list == null || list.userId != userId ? null : list);
+    }
+
+    public Future<Long> create(ReadingListEntity readingListEntity) {
+        return run(datastore -> DatastoreHelpers.createReadingList(datastore, readingListEntity));
+    }
+
+    // Created together, a commit's worth at a time. The ids line up with the entities.
+    public Future<List<Long>> createMany(List<ReadingListEntity> readingListEntitys) {
+        return run(datastore -> DatastoreHelpers.createReadingLists(datastore, readingListEntitys));
+    }
+
+    public Future<Boolean> update(ReadingListEntity readingListEntity) {
+        return run(datastore -> DatastoreHelpers.updateReadingList(datastore, readingListEntity, false));
+    }
+
+    // Applies the change to what's stored and writes it back, trying again from a fresh read if another write gets
+    // in first. Null if it doesn't exist.
+    public Future<ReadingListEntity> modify(long readingListId, Consumer<ReadingListEntity> change) {
+        return run(datastore -> DatastoreHelpers.modifyReadingList(datastore, readingListId, 0, change));
+    }
+
+    public Future<Void> delete(long readingListId) {
+        return run(datastore -> {
+            DatastoreHelpers.deleteReadingList(datastore, readingListId);
+            return null;
+        });
+    }
+
+    public Future<Void> addTagMapping(long userId, long tagId, long readingListId) {
+        return run(datastore -> {
+            DatastoreHelpers.addTagToReadingListMapping(datastore, userId, tagId, readingListId);
+            return null;
+        });
+    }
+
+    public Future<Void> removeTagMapping(long userId, long tagId, long readingListId) {
+        return run(datastore -> {
+            DatastoreHelpers.deleteTagToReadingListMapping(datastore, userId, tagId, readingListId);
+            return null;
+        });
+    }
+}
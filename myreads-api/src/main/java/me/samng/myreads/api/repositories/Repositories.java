@@ -0,0 +1,62 @@
+package me.samng.myreads.api.repositories;
+
+import io.vertx.core.Future;
+import me.samng.myreads.api.ConflictException;
+import me.samng.myreads.api.ContentionException;
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.UnitOfWork;
+import me.samng.myreads.api.WorkerPool;
+
+import java.util.function.Function;
+
+// One of each repository, sharing the same client and worker pool.
+public class Repositories {
+    public final UserRepository users;
+    public final ReadingListRepository readingLists;
+    public final ReadingListElementRepository readingListElements;
+    public final FollowedListRepository followedLists;
+    public final CommentRepository comments;
+    public final TagRepository tags;
+    public final FeedRepository feed;
+
+    private final DatastoreClient datastoreClient;
+    private final WorkerPool workerPool;
+
+    public Repositories(DatastoreClient datastoreClient, WorkerPool workerPool) {
+        this.datastoreClient = datastoreClient;
+        this.workerPool = workerPool;
+
+        users = new UserRepository(datastoreClient, workerPool);
+        readingLists = new ReadingListRepository(datastoreClient, workerPool);
+        readingListElements = new ReadingListElementRepository(datastoreClient, workerPool);
+        followedLists = new FollowedListRepository(datastoreClient, workerPool);
+        comments = new CommentRepository(datastoreClient, workerPool);
+        tags = new TagRepository(datastoreClient, workerPool);
+        feed = new FeedRepository(datastoreClient, workerPool);
+    }
+
+    // Runs the work against a fresh unit of work on the worker pool and commits whatever it recorded. Nothing is
+    // written if the work throws. If something the work read was written by someone else before the commit, the
+    // work runs again from scratch against a new unit of work, up to DatastoreHelpers.maxWriteAttempts times.
+    public <T> Future<T> inUnitOfWork(Function<UnitOfWork, T> work) {
+        return workerPool.submit(() -> {
+            for (int attempt = 1; ; attempt++) {
+                UnitOfWork unitOfWork = new UnitOfWork(datastoreClient.datastore());
+                T result = work.apply(unitOfWork);
+                try {
+                    unitOfWork.commit();
+                    return result;
+                }
+                catch (ConflictException e) {
+                    // The versions checked here are the ones the work itself read, so running out of attempts means
+                    // losing to other writers, not a stale caller.
+                    if (attempt >= DatastoreHelpers.maxWriteAttempts) {
+                        throw new ContentionException("Gave up after " + attempt + " conflicting writes");
+                    }
+                }
+                DatastoreHelpers.backOff(attempt);
+            }
+        });
+    }
+}
@@ -0,0 +1,25 @@
+package me.samng.myreads.api.repositories;
+
+import com.google.cloud.datastore.Datastore;
+import io.vertx.core.Future;
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.WorkerPool;
+
+import java.util.function.Function;
+
+// Base for the per-kind repositories. The Datastore client only offers blocking calls, so every operation is
+// shipped to the worker pool and handed back as a Future; callers on the event loop compose those futures
+// instead of waiting on them.
+abstract class Repository {
+    private final DatastoreClient datastoreClient;
+    private final WorkerPool workerPool;
+
+    Repository(DatastoreClient datastoreClient, WorkerPool workerPool) {
+        this.datastoreClient = datastoreClient;
+        this.workerPool = workerPool;
+    }
+
+    protected <T> Future<T> run(Function<Datastore, T> operation) {
+        return workerPool.submit(() -> operation.apply(datastoreClient.datastore()));
+    }
+}
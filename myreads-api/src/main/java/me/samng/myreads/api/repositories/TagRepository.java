@@ -0,0 +1,101 @@
+package me.samng.myreads.api.repositories;
+
+import com.google.common.util.concurrent.Striped;
+import io.vertx.core.Future;
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.Page;
+import me.samng.myreads.api.TagDictionary;
+import me.samng.myreads.api.WorkerPool;
+import me.samng.myreads.api.entities.TagEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+public class TagRepository extends Repository {
+    // Creates of the same name are serialized, so two racing posts can't both miss the dictionary and insert.
+    private static final Striped<Lock> createLocks = Striped.lock(64);
+
+    private final TagDictionary dictionary = TagDictionary.shared();
+
+    public TagRepository(DatastoreClient datastoreClient, WorkerPool workerPool) {
+        super(datastoreClient, workerPool);
+    }
+
+    // Fills the tag dictionary from Datastore, unless it has already been loaded.
+    public Future<Void> loadDictionary() {
+        if (dictionary.isLoaded()) {
+            return Future.succeededFuture();
+        }
+        return run(datastore -> {
+            dictionary.load(DatastoreHelpers.getAllTagsForDictionary(datastore));
+            return null;
+        });
+    }
+
+    public boolean isDictionaryLoaded() {
+        return dictionary.isLoaded();
+    }
+
+    // Answered from memory, so only meaningful once the dictionary is loaded.
+    public List<TagEntity> search(String prefix, int limit) {
+        return dictionary.search(prefix, limit);
+    }
+
+    public Future<List<TagEntity>> getAll() {
+        return run(datastore -> DatastoreHelpers.getAllTags(datastore));
+    }
+
+    public Future<Page<TagEntity>> getAll(int limit, String cursor) {
+        return run(datastore -> DatastoreHelpers.getAllTags(datastore, limit, cursor));
+    }
+
+    public Future<TagEntity> get(long tagId) {
+        return run(datastore -> DatastoreHelpers.getTag(datastore, tagId));
+    }
+
+    // Missing or deleted tags are skipped.
+    public Future<List<TagEntity>> getMany(List<Long> tagIds) {
+        return run(datastore -> {
+            ArrayList<TagEntity> results = new ArrayList<>();
+            for (TagEntity tagEntity : DatastoreHelpers.getTags(datastore, tagIds)) {
+                if (tagEntity != null) {
+                    results.add(tagEntity);
+                }
+            }
+            return results;
+        });
+    }
+
+    // Matches on the normalized name, from the dictionary once it's loaded and from Datastore until then.
+    public Future<TagEntity> getByName(String tagName) {
+        if (dictionary.isLoaded()) {
+            return Future.succeededFuture(dictionary.get(tagName));
+        }
+        return run(datastore -> DatastoreHelpers.getTagByName(datastore, tagName));
+    }
+
+    // If a tag with the same name already exists, no new tag is made and the existing id is returned instead.
+    public Future<Long> create(TagEntity tagEntity) {
+        return run(datastore -> {
+            Lock lock = createLocks.get(TagDictionary.normalize(tagEntity.tagName()));
+            lock.lock();
+            try {
+                TagEntity existing = dictionary.isLoaded()
+                    ? dictionary.get(tagEntity.tagName())
+                    : DatastoreHelpers.getTagByName(datastore, tagEntity.tagName());
+                if (existing != null) {
+                    return existing.id;
+                }
+
+                tagEntity.id = DatastoreHelpers.createTag(datastore, tagEntity);
+                dictionary.add(tagEntity);
+                return tagEntity.id;
+            }
+            finally {
+                lock.unlock();
+            }
+        });
+    }
+}
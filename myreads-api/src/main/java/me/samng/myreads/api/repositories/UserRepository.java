@@ -0,0 +1,43 @@
+package me.samng.myreads.api.repositories;
+
+import io.vertx.core.Future;
+import me.samng.myreads.api.DatastoreClient;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.Page;
+import me.samng.myreads.api.WorkerPool;
+import me.samng.myreads.api.entities.UserEntity;
+
+import java.util.List;
+
+public class UserRepository extends Repository {
+    public UserRepository(DatastoreClient datastoreClient, WorkerPool workerPool) {
+        super(datastoreClient, workerPool);
+    }
+
+    public Future<List<UserEntity>> getAll() {
+        return run(datastore -> DatastoreHelpers.getAllUsers(datastore));
+    }
+
+    public Future<Page<UserEntity>> getAll(int limit, String cursor) {
+        return run(datastore -> DatastoreHelpers.getAllUsers(datastore, limit, cursor));
+    }
+
+    public Future<UserEntity> get(long userId) {
+        return run(datastore -> DatastoreHelpers.getUser(datastore, userId));
+    }
+
+    public Future<Long> create(UserEntity userEntity) {
+        return run(datastore -> DatastoreHelpers.createUser(datastore, userEntity));
+    }
+
+    public Future<Boolean> update(UserEntity userEntity) {
+        return run(datastore -> DatastoreHelpers.updateUser(datastore, userEntity, false));
+    }
+
+    public Future<Void> delete(long userId) {
+        return run(datastore -> {
+            DatastoreHelpers.deleteUser(datastore, userId);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,120 @@
+package me.samng.myreads.api.routes;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.json.Json;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Function;
+
+// Batch reads and creates, so a screen that needs many entities makes one request instead of dozens. Each item
+// in the response carries the status it would have had as a request of its own, in the order it was asked for;
+// the batch itself answers 200 as long as the request as a whole made sense.
+public class Batches {
+    public static int maxItems = 100;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Item<T> {
+        public int status;
+        public Long id;
+        public T entity;
+        public String error;
+    }
+
+    // The ids from ?ids=1,2,3, each once, in the order given.
+    static List<Long> ids(RoutingContext routingContext) {
+        LinkedHashSet<Long> ids = new LinkedHashSet<>();
+        for (String id : routingContext.request().getParam("ids").split(",")) {
+            if (!id.trim().isEmpty()) {
+                ids.add(Long.decode(id.trim()));
+            }
+        }
+        if (ids.isEmpty() || ids.size() > maxItems) {
+            throw new IllegalArgumentException("Between 1 and " + maxItems + " ids");
+        }
+        return new ArrayList<>(ids);
+    }
+
+    public static boolean isBatchGet(RoutingContext routingContext) {
+        return routingContext.request().getParam("ids") != null;
+    }
+
+    // Lines the fetched entities up with the ids. Anything missing, deleted or owned by someone else is a 404, as
+    // it would be on its own.
+    static <T> List<Item<T>> found(List<Long> ids, List<T> entities, long userId, Function<T, Long> ownerOf) {
+        ArrayList<Item<T>> items = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            T entity = entities.get(i);
+            Item<T> item = new Item<>();
+            item.id = ids.get(i);
+            if (entity == null || ownerOf.apply(entity) != userId) {
+                item.status = HttpResponseStatus.NOT_FOUND.code();
+            }
+            else {
+                item.status = HttpResponseStatus.OK.code();
+                item.entity = entity;
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    // Reads the body as an array and decodes each entry on its own, so one bad entry only fails itself. Entries
+    // that decoded are left with status 0 until they are created.
+    static <T> List<Item<T>> decodeEach(RoutingContext routingContext, Class<T> clazz) {
+        JsonNode[] nodes = Bodies.decode(routingContext, JsonNode[].class);
+        if (nodes == null || nodes.length == 0 || nodes.length > maxItems) {
+            throw new IllegalArgumentException("Between 1 and " + maxItems + " items");
+        }
+
+        ArrayList<Item<T>> items = new ArrayList<>(nodes.length);
+        for (JsonNode node : nodes) {
+            Item<T> item = new Item<>();
+            try {
+                if (node == null || !node.isObject()) {
+                    throw new IllegalArgumentException();
+                }
+                item.entity = Json.mapper.treeToValue(node, clazz);
+            }
+            catch (Exception e) {
+                item.status = HttpResponseStatus.BAD_REQUEST.code();
+                item.error = "Invalid request parameters";
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    static <T> List<T> pending(List<Item<T>> items) {
+        ArrayList<T> entities = new ArrayList<>(items.size());
+        for (Item<T> item : items) {
+            if (item.status == 0) {
+                entities.add(item.entity);
+            }
+        }
+        return entities;
+    }
+
+    // Hands the new ids to the pending items, in order. Like a single create, only the id comes back.
+    static <T> List<Item<T>> created(List<Item<T>> items, List<Long> ids) {
+        int next = 0;
+        for (Item<T> item : items) {
+            if (item.status == 0) {
+                item.status = HttpResponseStatus.CREATED.code();
+                item.id = ids.get(next++);
+                item.entity = null;
+            }
+        }
+        return items;
+    }
+
+    static void respond(RoutingContext routingContext, List<? extends Item<?>> items) {
+        routingContext.response()
+            .putHeader("content-type", Bodies.contentType(routingContext))
+            .end(Bodies.encode(routingContext, items));
+    }
+}
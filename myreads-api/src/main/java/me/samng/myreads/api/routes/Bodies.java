@@ -0,0 +1,120 @@
+package me.samng.myreads.api.routes;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Picks the wire format for each request and response. A request body is read as CBOR when its Content-Type says
+// so, and a response is written as CBOR when the Accept header prefers it to JSON. Anything else, including no
+// header at all, stays JSON labelled text/plain, which is what the UI has always been sent. Both formats come
+// from the same entity classes and Jackson annotations.
+public class Bodies {
+    public enum Format {
+        JSON("text/plain"),
+        CBOR("application/cbor");
+
+        public final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+    }
+
+    private static String cborMediaType = "application/cbor";
+    private static String responseFormatKey = "responseFormat";
+    private static List<String> jsonMediaRanges = Arrays.asList("application/json", "text/plain", "text/*", "application/*", "*/*");
+
+    public static Format requestFormat(RoutingContext routingContext) {
+        String contentType = routingContext.request().getHeader("content-type");
+        if (contentType != null && contentType.trim().toLowerCase().startsWith(cborMediaType)) {
+            return Format.CBOR;
+        }
+        return Format.JSON;
+    }
+
+    public static Format responseFormat(RoutingContext routingContext) {
+        Format format = routingContext.get(responseFormatKey);
+        if (format == null) {
+            format = negotiate(routingContext.request().getHeader("accept"));
+            routingContext.put(responseFormatKey, format);
+        }
+        return format;
+    }
+
+    // CBOR only if it's asked for by name and nothing that JSON satisfies, wildcards included, is given a higher
+    // quality.
+    public static Format negotiate(String accept) {
+        if (accept == null) {
+            return Format.JSON;
+        }
+
+        double cborQuality = 0;
+        double jsonQuality = 0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String mediaType = parts[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    }
+                    catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+
+            if (mediaType.equals(cborMediaType)) {
+                cborQuality = Math.max(cborQuality, quality);
+            }
+            else if (jsonMediaRanges.contains(mediaType)) {
+                jsonQuality = Math.max(jsonQuality, quality);
+            }
+        }
+        return cborQuality > 0 && cborQuality >= jsonQuality ? Format.CBOR : Format.JSON;
+    }
+
+    public static <T> T decode(RoutingContext routingContext, Class<T> type) {
+        return decode(requestFormat(routingContext), routingContext.getBody(), type);
+    }
+
+    public static <T> T decode(Format format, Buffer body, Class<T> type) {
+        if (format == Format.JSON) {
+            return JsonBodies.decode(body, type);
+        }
+
+        return CborBodies.decode(body, type);
+    }
+
+    public static String contentType(RoutingContext routingContext) {
+        return responseFormat(routingContext).contentType;
+    }
+
+    // The whole body for a response, in the negotiated format and compressed if the client takes it.
+    public static Buffer encode(RoutingContext routingContext, Object value) {
+        return Compression.apply(routingContext, encode(responseFormat(routingContext), value));
+    }
+
+    public static Buffer encode(Format format, Object value) {
+        if (format == Format.JSON) {
+            return JsonBodies.encode(value);
+        }
+
+        return CborBodies.encode(value);
+    }
+
+    public static void write(Format format, ByteBuf out, Object value) {
+        if (format == Format.JSON) {
+            JsonBodies.write(new ByteBufOutputStream(out), value);
+        }
+        else {
+            CborBodies.write(new ByteBufOutputStream(out), value);
+        }
+    }
+}
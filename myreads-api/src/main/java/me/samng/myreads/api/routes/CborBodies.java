@@ -0,0 +1,64 @@
+package me.samng.myreads.api.routes;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.EncodeException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The CBOR counterpart of JsonBodies, on Jackson's CBOR backend. Readers and writers are kept per type in the same
+// way, so entities go straight between bytes and objects without a tree in between.
+public class CborBodies {
+    // The head and the break byte of an array whose length isn't given up front (RFC 7049, section 2.2.1).
+    public static int indefiniteArrayStart = 0x9f;
+    public static int indefiniteArrayEnd = 0xff;
+
+    private static final ObjectMapper mapper = new ObjectMapper(new CBORFactory());
+    private static final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private static ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, t -> mapper.readerFor(t));
+    }
+
+    private static ObjectWriter writer(Class<?> type) {
+        return writers.computeIfAbsent(type, t -> mapper.writerFor(t).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+    }
+
+    // Reading into a tree recurses once per level of nesting, so a body that is nothing but array heads can run
+    // out of stack. That's a bad request like any other.
+    public static <T> T decode(Buffer body, Class<T> type) {
+        try {
+            return reader(type).readValue((InputStream) new ByteBufInputStream(body.getByteBuf()));
+        }
+        catch (Exception | StackOverflowError e) {
+            throw new DecodeException("Failed to decode: " + e.getMessage());
+        }
+    }
+
+    public static Buffer encode(Object value) {
+        ByteBuf byteBuf = Unpooled.buffer();
+        write(new ByteBufOutputStream(byteBuf), value);
+        return Buffer.buffer(byteBuf);
+    }
+
+    public static void write(OutputStream out, Object value) {
+        try {
+            writer(value == null ? Object.class : value.getClass()).writeValue(out, value);
+        }
+        catch (Exception e) {
+            throw new EncodeException("Failed to encode as CBOR: " + e.getMessage());
+        }
+    }
+}
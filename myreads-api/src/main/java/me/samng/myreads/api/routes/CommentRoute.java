@@ -1,38 +1,44 @@
 package me.samng.myreads.api.routes;
 
 import com.google.api.client.util.Strings;
-import com.google.cloud.datastore.*;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.vertx.core.json.Json;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.ext.web.RoutingContext;
-import me.samng.myreads.api.DatastoreHelpers;
 import me.samng.myreads.api.entities.CommentEntity;
 import me.samng.myreads.api.entities.ReadingListElementEntity;
-
-import java.util.ArrayList;
+import me.samng.myreads.api.repositories.Repositories;
 
 public class CommentRoute {
-    private static CommentEntity getCommentIfOnCorrectUserAndRLE(
-        Datastore datastore,
+    private final Repositories repositories;
+
+    public CommentRoute(Repositories repositories) {
+        this.repositories = repositories;
+    }
+
+    private Future<CommentEntity> getCommentIfOnCorrectUserAndRLE(
         long userId,
         long rleId,
         long commentId) {
 
-        CommentEntity commentEntity = DatastoreHelpers.getComment(datastore, commentId);
-        if (commentEntity.readingListElementId != rleId || commentEntity.userId != userId) {
-            return null;
-        }
-        return commentEntity;
+        return repositories.comments.get(commentId).map(commentEntity -> {
+            if (commentEntity == null || commentEntity.readingListElementId != rleId || commentEntity.userId != userId) {
+                return null;
+            }
+            return commentEntity;
+        });
     }
 
     // GET /users/{userId}/readingListElements/{readingListElementId}/comments
     public void getAllComments(RoutingContext routingContext) {
         long userId;
         long rleId;
+        PageRequest pageRequest;
 
         try {
             userId = Long.decode(routingContext.request().getParam("userId"));
             rleId = Long.decode(routingContext.request().getParam("readingListElementId"));
+            pageRequest = PageRequest.fromRequest(routingContext);
         }
         catch (Exception e) {
             routingContext.response()
@@ -42,21 +48,8 @@ public class CommentRoute {
             return;
         }
 
-        Query<Entity> query = Query.newEntityQueryBuilder()
-            .setKind(DatastoreHelpers.commentKind)
-            .setFilter(StructuredQuery.PropertyFilter.eq("readingListElementId", rleId))
-            .setFilter(StructuredQuery.PropertyFilter.eq("userId", userId))
-            .build();
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        QueryResults<Entity> queryresult = datastore.run(query);
-
-        // Iterate through the results to actually fetch them, then serialize them and return.
-        ArrayList<CommentEntity> results = new ArrayList<CommentEntity>();
-        queryresult.forEachRemaining(list -> { results.add(CommentEntity.fromEntity(list)); });
-
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(results.toArray()));
+        RouteHelpers.respondWithPages(routingContext, pageRequest, (limit, cursor) ->
+            repositories.comments.getAllForReadingListElement(userId, rleId, limit, cursor));
     }
 
     // POST /users/{userId}/readingListElements/{readingListElementId}/comments
@@ -66,7 +59,7 @@ public class CommentRoute {
         long readingListElementId;
 
         try {
-            commentEntity = Json.decodeValue(routingContext.getBody(), CommentEntity.class);
+            commentEntity = Bodies.decode(routingContext, CommentEntity.class);
             userId = Long.decode(routingContext.request().getParam("userId"));
             readingListElementId = Long.decode(routingContext.request().getParam("readingListElementId"));
         }
@@ -86,28 +79,28 @@ public class CommentRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
         // First verify that we have the right reading list element in the system by getting it, then add
         // the comment, then add the newly added comment's ID to the RLE.
-        ReadingListElementEntity rleEntity = DatastoreHelpers.getReadingListElement(datastore, readingListElementId);
-        if (rleEntity == null) {
+        repositories.readingListElements.get(readingListElementId).compose(rleEntity -> {
+            if (rleEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.BAD_REQUEST, "Invalid request parameters"));
+            }
+
+            commentEntity.userId = userId;
+            commentEntity.readingListElementId = readingListElementId;
+            return repositories.comments.create(commentEntity).compose(addedId ->
+                repositories.readingListElements.modify(readingListElementId, rle -> rle.commentIds.add(addedId)).map(updated -> addedId));
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
             routingContext.response()
-                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .setStatusCode(HttpResponseStatus.CREATED.code())
                 .putHeader("content-type", "text/plain")
-                .end("Invalid request parameters");
-            return;
-        }
-
-        commentEntity.userId = userId;
-        commentEntity.readingListElementId = readingListElementId;
-        long addedId = DatastoreHelpers.createComment(datastore, commentEntity);
-        rleEntity.commentIds.add(addedId);
-        DatastoreHelpers.updateReadingListElement(datastore, rleEntity, false);
-
-        routingContext.response()
-            .setStatusCode(HttpResponseStatus.CREATED.code())
-            .putHeader("content-type", "text/plain")
-            .end(Long.toString(addedId));
+                .end(Long.toString(ar.result()));
+        });
     }
 
     // PUT /users/{userId}/readingListElements/{readingListElementId}/comments/{commentId}
@@ -116,7 +109,7 @@ public class CommentRoute {
         long userId;
         long readingListElementId;
         try {
-            commentEntity = Json.decodeValue(routingContext.getBody(), CommentEntity.class);
+            commentEntity = Bodies.decode(routingContext, CommentEntity.class);
             commentEntity.id = Long.decode(routingContext.request().getParam("commentId"));
             userId = Long.decode(routingContext.request().getParam("userId"));
             readingListElementId = Long.decode(routingContext.request().getParam("readingListElementId"));
@@ -137,23 +130,26 @@ public class CommentRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        if (getCommentIfOnCorrectUserAndRLE(datastore, userId, readingListElementId, commentEntity.id) == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-
-        if (DatastoreHelpers.updateComment(datastore, commentEntity, false)) {
-            routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
-        }
-        else {
-            routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
-        }
-
-        routingContext.response().putHeader("content-type", "text/plain").end();
+        getCommentIfOnCorrectUserAndRLE(userId, readingListElementId, commentEntity.id).compose(existing -> {
+            if (existing == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.NOT_FOUND));
+            }
+            return repositories.comments.update(commentEntity);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            if (ar.result()) {
+                routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
+            }
+            else {
+                routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
+            }
+
+            routingContext.response().putHeader("content-type", "text/plain").end();
+        });
     }
 
     // GET /users/{userId}/readingListElements/{readingListElementId}/comments/{commentId}
@@ -174,19 +170,25 @@ public class CommentRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        CommentEntity commentEntity = getCommentIfOnCorrectUserAndRLE(datastore, userId, readingListElementId, commentId);
-        if (commentEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
+        getCommentIfOnCorrectUserAndRLE(userId, readingListElementId, commentId).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(commentEntity));
+            CommentEntity commentEntity = ar.result();
+            if (commentEntity == null) {
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
+                    .putHeader("content-type", "text/plain")
+                    .end();
+                return;
+            }
+
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, commentEntity));
+        });
     }
 
     // DELETE /users/{userId}/readingListElements/{readingListElementId}/comments/{commentId}
@@ -207,30 +209,29 @@ public class CommentRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        if (getCommentIfOnCorrectUserAndRLE(datastore, userId, readingListElementId, commentId) == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
+        // The comment check and the RLE fetch don't depend on each other, so issue them together.
+        Future<CommentEntity> commentFuture = getCommentIfOnCorrectUserAndRLE(userId, readingListElementId, commentId);
+        Future<ReadingListElementEntity> rleFuture = repositories.readingListElements.get(readingListElementId);
+
+        CompositeFuture.all(commentFuture, rleFuture).compose(fetched -> {
+            ReadingListElementEntity rleEntity = rleFuture.result();
+            if (commentFuture.result() == null || rleEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.NOT_FOUND));
+            }
+
+            return CompositeFuture.all(
+                repositories.readingListElements.modify(readingListElementId, rle -> rle.commentIds.remove(commentId)),
+                repositories.comments.delete(commentId));
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        ReadingListElementEntity rleEntity = DatastoreHelpers.getReadingListElement(datastore, readingListElementId);
-        if (rleEntity == null) {
             routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
+                .setStatusCode(HttpResponseStatus.NO_CONTENT.code())
                 .putHeader("content-type", "text/plain")
                 .end();
-            return;
-        }
-        rleEntity.commentIds.remove(commentId);
-        DatastoreHelpers.updateReadingListElement(datastore, rleEntity, false);
-        DatastoreHelpers.deleteComment(datastore, commentId);
-
-        routingContext.response()
-            .setStatusCode(HttpResponseStatus.NO_CONTENT.code())
-            .putHeader("content-type", "text/plain")
-            .end();
+        });
     }
 }
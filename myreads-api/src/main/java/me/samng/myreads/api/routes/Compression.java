@@ -0,0 +1,202 @@
+package me.samng.myreads.api.routes;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Gzip or deflate for response bodies, whichever the client's Accept-Encoding prefers. A body smaller than
+// compression.minBytes goes out as it is, since compressing it costs more than it saves. Streamed collections are
+// always compressed, flushing at the end of each page so the client can read as it goes. Configured with
+// compression.enabled, compression.level (1 to 9) and compression.minBytes.
+public class Compression {
+    public static String gzip = "gzip";
+    public static String deflate = "deflate";
+
+    private static volatile boolean enabled = true;
+    private static volatile int level = 6;
+    private static volatile int minBytes = 1024;
+
+    private static final AtomicLong responses = new AtomicLong();
+    private static final AtomicLong compressedResponses = new AtomicLong();
+    private static final AtomicLong rawBytes = new AtomicLong();
+    private static final AtomicLong sentBytes = new AtomicLong();
+
+    public static void configure(JsonObject config) {
+        enabled = config.getBoolean("compression.enabled", true);
+        level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, config.getInteger("compression.level", 6)));
+        minBytes = config.getInteger("compression.minBytes", 1024);
+    }
+
+    // Gzip wins a tie, since every browser takes it. Null if neither is acceptable.
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        double gzipQuality = 0;
+        double deflateQuality = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    }
+                    catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+
+            if (name.equals(gzip) || name.equals("*")) {
+                gzipQuality = Math.max(gzipQuality, quality);
+            }
+            else if (name.equals(deflate)) {
+                deflateQuality = Math.max(deflateQuality, quality);
+            }
+        }
+
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return gzip;
+        }
+        return deflateQuality > 0 ? deflate : null;
+    }
+
+    static String encoding(RoutingContext routingContext) {
+        return enabled ? negotiate(routingContext.request().getHeader("accept-encoding")) : null;
+    }
+
+    // The body to send for a whole response, compressed and marked as such if it's worth it.
+    public static Buffer apply(RoutingContext routingContext, Buffer body) {
+        return apply(routingContext, body, encoding -> compress(encoding, body));
+    }
+
+    // Same, but with the compressed forms coming from somewhere else, e.g. a cache that keeps them.
+    static Buffer apply(RoutingContext routingContext, Buffer body, Function<String, Buffer> compressor) {
+        responses.incrementAndGet();
+        rawBytes.addAndGet(body.length());
+
+        String encoding = body.length() >= minBytes ? encoding(routingContext) : null;
+        if (encoding == null) {
+            sentBytes.addAndGet(body.length());
+            return body;
+        }
+
+        Buffer compressed = compressor.apply(encoding);
+        compressedResponses.incrementAndGet();
+        sentBytes.addAndGet(compressed.length());
+        routingContext.response().putHeader("content-encoding", encoding);
+        return compressed;
+    }
+
+    public static Buffer compress(String encoding, Buffer body) {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(Math.max(64, body.length() / 4));
+        try (DeflaterOutputStream out = open(encoding, sink, false)) {
+            out.write(body.getBytes());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Buffer.buffer(sink.toByteArray());
+    }
+
+    private static DeflaterOutputStream open(String encoding, OutputStream sink, boolean syncFlush) throws IOException {
+        if (gzip.equals(encoding)) {
+            return new GZIPOutputStream(sink, syncFlush) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        // Our own Deflater isn't released by close(), so release it there.
+        return new DeflaterOutputStream(sink, new Deflater(level), syncFlush) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    def.end();
+                }
+            }
+        };
+    }
+
+    // Compresses a response written in several chunks as one stream.
+    public static class Stream {
+        public final String encoding;
+        private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        private final DeflaterOutputStream out;
+        private boolean closed = false;
+
+        public Stream(String encoding) {
+            this.encoding = encoding;
+            try {
+                out = open(encoding, sink, true);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            responses.incrementAndGet();
+            compressedResponses.incrementAndGet();
+        }
+
+        // Everything the client needs to read this chunk; the last one also ends the stream.
+        public Buffer compress(Buffer chunk, boolean last) {
+            try {
+                out.write(chunk.getBytes());
+                if (last) {
+                    close();
+                }
+                else {
+                    out.flush();
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            Buffer compressed = Buffer.buffer(sink.toByteArray());
+            sink.reset();
+            rawBytes.addAndGet(chunk.length());
+            sentBytes.addAndGet(compressed.length());
+            return compressed;
+        }
+
+        // Frees the compressor, e.g. when the client goes away mid-stream.
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+
+    public static JsonObject metrics() {
+        long raw = rawBytes.get();
+        long sent = sentBytes.get();
+        return new JsonObject()
+            .put("enabled", enabled)
+            .put("level", level)
+            .put("minBytes", minBytes)
+            .put("responses", responses.get())
+            .put("compressedResponses", compressedResponses.get())
+            .put("rawBytes", raw)
+            .put("sentBytes", sent)
+            .put("ratio", raw == 0 ? 1.0 : (double) sent / raw);
+    }
+}
@@ -0,0 +1,105 @@
+package me.samng.myreads.api.routes;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import me.samng.myreads.api.Generations;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Strong ETags for every GET under /users/{userId}, entities and collections alike. Everything there belongs to
+// that user, so the tag is made from the user's generation, the process epoch and the format and encoding the body
+// goes out in. A request whose If-None-Match still matches gets its 304 here, before any Datastore read or query
+// runs and without building the body. Only successful responses keep the tag.
+public class ConditionalGet {
+    private static final AtomicLong checked = new AtomicLong();
+    private static final AtomicLong notModified = new AtomicLong();
+
+    public static void handle(RoutingContext routingContext) {
+        Long userId = userId(routingContext.request().path());
+        if (userId == null) {
+            routingContext.next();
+            return;
+        }
+
+        checked.incrementAndGet();
+        String etag = etag(
+            Generations.epoch(),
+            Generations.get(userId),
+            Bodies.responseFormat(routingContext),
+            Compression.encoding(routingContext));
+
+        HttpServerResponse response = routingContext.response()
+            .putHeader("etag", etag)
+            .putHeader("cache-control", "no-cache");
+        if (matches(routingContext.request().getHeader("if-none-match"), etag)) {
+            notModified.incrementAndGet();
+            response.setStatusCode(HttpResponseStatus.NOT_MODIFIED.code()).end();
+            return;
+        }
+
+        routingContext.addHeadersEndHandler(v -> {
+            if (response.getStatusCode() != HttpResponseStatus.OK.code()) {
+                response.headers().remove("etag");
+            }
+        });
+        routingContext.next();
+    }
+
+    // The id in /users/{userId}/..., or null if that isn't a number or the path is one we don't tag. The home page
+    // takes in other users' lists and the shared tags, which the user's generation doesn't cover.
+    static Long userId(String path) {
+        String prefix = "/users/";
+        if (path == null || !path.startsWith(prefix) || path.endsWith("/home")) {
+            return null;
+        }
+        int end = path.indexOf('/', prefix.length());
+        try {
+            return Long.decode(path.substring(prefix.length(), end < 0 ? path.length() : end));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static boolean covers(String path) {
+        return userId(path) != null;
+    }
+
+    public static String etag(long epoch, long generation, Bodies.Format format, String encoding) {
+        StringBuilder etag = new StringBuilder("\"")
+            .append(Long.toString(epoch, 36))
+            .append('-')
+            .append(Long.toString(generation, 36))
+            .append('-')
+            .append(format.name().toLowerCase());
+        if (encoding != null) {
+            etag.append('-').append(encoding);
+        }
+        return etag.append('"').toString();
+    }
+
+    // If-None-Match uses the weak comparison, so a W/ prefix on the client's copy doesn't matter.
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static JsonObject metrics() {
+        return new JsonObject()
+            .put("checked", checked.get())
+            .put("notModified", notModified.get());
+    }
+}
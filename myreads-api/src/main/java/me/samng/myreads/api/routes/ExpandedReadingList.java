@@ -0,0 +1,177 @@
+package me.samng.myreads.api.routes;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.vertx.ext.web.RoutingContext;
+import me.samng.myreads.api.entities.ReadingListElementEntity;
+import me.samng.myreads.api.entities.ReadingListEntity;
+import me.samng.myreads.api.entities.TagEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// A reading list together with what it refers to, so the UI can draw a list with one request instead of one per
+// element, tag and comment thread. Elements come a page at a time in list order, and the cursor is just the
+// position in the list's element ids. Whatever the size of the page, filling it in costs one batched lookup for
+// the elements and one for every tag on the list and on those elements. Comment counts come from the elements'
+// comment ids, so they cost nothing extra.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ExpandedReadingList {
+    public static String elementsExpansion = "elements";
+    public static String tagsExpansion = "tags";
+    public static String commentCountsExpansion = "commentCounts";
+    private static List<String> expansions = Arrays.asList(elementsExpansion, tagsExpansion, commentCountsExpansion);
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Element {
+        public ReadingListElementEntity element;
+        public List<TagEntity> tags;
+        public Integer commentCount;
+    }
+
+    // What ?expand=, ?limit= and ?cursor= asked for.
+    static class Request {
+        final Set<String> expand;
+        final int limit;
+        final int offset;
+
+        private Request(Set<String> expand, int limit, int offset) {
+            this.expand = expand;
+            this.limit = limit;
+            this.offset = offset;
+        }
+
+        // Null if the request doesn't ask for any expansion. Throws if it asks for one we don't have, or if the
+        // limit or cursor is malformed.
+        static Request fromRequest(RoutingContext routingContext) {
+            String expandParam = routingContext.request().getParam("expand");
+            if (expandParam == null) {
+                return null;
+            }
+
+            HashSet<String> expand = new HashSet<>();
+            for (String expansion : expandParam.split(",")) {
+                expansion = expansion.trim();
+                if (!expansions.contains(expansion)) {
+                    throw new IllegalArgumentException("Unknown expansion " + expansion);
+                }
+                expand.add(expansion);
+            }
+
+            int limit = PageRequest.defaultLimit;
+            String limitParam = routingContext.request().getParam("limit");
+            if (limitParam != null) {
+                limit = Integer.parseInt(limitParam);
+                if (limit < 1) {
+                    throw new IllegalArgumentException("limit must be positive");
+                }
+            }
+
+            int offset = 0;
+            String cursor = routingContext.request().getParam("cursor");
+            if (cursor != null && !cursor.isEmpty()) {
+                offset = Integer.parseInt(cursor);
+                if (offset < 0) {
+                    throw new IllegalArgumentException("cursor must not be negative");
+                }
+            }
+
+            return new Request(expand, Math.min(limit, PageRequest.maxLimit), offset);
+        }
+
+        boolean has(String expansion) {
+            return expand.contains(expansion);
+        }
+    }
+
+    public ReadingListEntity readingList;
+    public List<TagEntity> tags;
+    public List<Element> elements;
+    public String nextCursor;
+
+    // The ids of the elements on the requested page, or none if elements weren't asked for.
+    static List<Long> pageIds(ReadingListEntity readingList, Request request) {
+        List<Long> ids = readingList.readingListElementIds();
+        if (!request.has(elementsExpansion) || ids == null || request.offset >= ids.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(ids.subList(request.offset, Math.min(ids.size(), request.offset + request.limit)));
+    }
+
+    // Elements that have gone missing since they were added to the list are left out.
+    static ExpandedReadingList build(ReadingListEntity readingList, Request request, List<ReadingListElementEntity> page) {
+        ExpandedReadingList view = new ExpandedReadingList();
+        view.readingList = readingList;
+        if (!request.has(elementsExpansion)) {
+            return view;
+        }
+
+        view.elements = new ArrayList<>(page.size());
+        for (ReadingListElementEntity rle : page) {
+            if (rle == null) {
+                continue;
+            }
+            Element element = new Element();
+            element.element = rle;
+            if (request.has(commentCountsExpansion)) {
+                element.commentCount = rle.commentIds() == null ? 0 : rle.commentIds().size();
+            }
+            view.elements.add(element);
+        }
+
+        int end = request.offset + request.limit;
+        List<Long> ids = readingList.readingListElementIds();
+        if (ids != null && end < ids.size()) {
+            view.nextCursor = Integer.toString(end);
+        }
+        return view;
+    }
+
+    // Every tag on the list and on the elements in the page, each once.
+    List<Long> tagIds() {
+        LinkedHashSet<Long> tagIds = new LinkedHashSet<>();
+        if (readingList.tagIds() != null) {
+            tagIds.addAll(readingList.tagIds());
+        }
+        if (elements != null) {
+            for (Element element : elements) {
+                if (element.element.tagIds() != null) {
+                    tagIds.addAll(element.element.tagIds());
+                }
+            }
+        }
+        return new ArrayList<>(tagIds);
+    }
+
+    // Hands the looked-up tags out to the list and its elements. Tags that have since been deleted are left out.
+    void fillTags(List<TagEntity> found) {
+        HashMap<Long, TagEntity> byId = new HashMap<>();
+        for (TagEntity tag : found) {
+            byId.put(tag.id, tag);
+        }
+
+        tags = resolve(readingList.tagIds(), byId);
+        if (elements != null) {
+            for (Element element : elements) {
+                element.tags = resolve(element.element.tagIds(), byId);
+            }
+        }
+    }
+
+    private static List<TagEntity> resolve(List<Long> tagIds, HashMap<Long, TagEntity> byId) {
+        ArrayList<TagEntity> resolved = new ArrayList<>();
+        if (tagIds != null) {
+            for (Long tagId : tagIds) {
+                TagEntity tag = byId.get(tagId);
+                if (tag != null) {
+                    resolved.add(tag);
+                }
+            }
+        }
+        return resolved;
+    }
+}
@@ -1,33 +1,29 @@
 package me.samng.myreads.api.routes;
 
-import com.google.cloud.datastore.*;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.vertx.core.json.Json;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.ext.web.RoutingContext;
-import me.samng.myreads.api.DatastoreHelpers;
 import me.samng.myreads.api.entities.FollowedListEntity;
 import me.samng.myreads.api.entities.UserEntity;
+import me.samng.myreads.api.repositories.Repositories;
 
 import java.util.List;
 
 public class FollowedListRoute {
-    private FollowedListEntity getFollowedListIfUserOwnsIt(
-        Datastore datastore,
-        long userId,
-        long listId) {
-
-        FollowedListEntity followedListEntity = DatastoreHelpers.getFollowedList(datastore, listId);
-        if (followedListEntity == null || followedListEntity.userId != userId) {
-            return null;
-        }
-        return followedListEntity;
+    private final Repositories repositories;
+
+    public FollowedListRoute(Repositories repositories) {
+        this.repositories = repositories;
     }
 
     // Get all followed lists for a given user - /users/{userId}/followedLists
     public void getAllFollowedLists(RoutingContext routingContext) {
         long userId;
+        PageRequest pageRequest;
         try {
             userId = Long.decode(routingContext.request().getParam("userId"));
+            pageRequest = PageRequest.fromRequest(routingContext);
         }
         catch (Exception e) {
             routingContext.response()
@@ -37,19 +33,37 @@ public class FollowedListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        List<FollowedListEntity> results = DatastoreHelpers.getAllFollowedListsForUser(datastore, userId);
+        RouteHelpers.respondWithPages(routingContext, pageRequest, (limit, cursor) ->
+            repositories.followedLists.getAllForUser(userId, limit, cursor));
+    }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(results.toArray()));
+    // GET /users/{userId}/feed
+    // Elements added to lists the user follows, newest first. Entries are written when the elements are added,
+    // so a page costs one query whatever the number of lists followed.
+    public void getFeed(RoutingContext routingContext) {
+        long userId;
+        PageRequest pageRequest;
+        try {
+            userId = Long.decode(routingContext.request().getParam("userId"));
+            pageRequest = PageRequest.fromRequest(routingContext);
+        }
+        catch (Exception e) {
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .putHeader("content-type", "text/plain")
+                .end("Invalid request parameters");
+            return;
+        }
+
+        RouteHelpers.respondWithPages(routingContext, pageRequest, (limit, cursor) ->
+            repositories.feed.getForUser(userId, limit, cursor));
     }
 
     // Post a new followed list - /users/{userId}/followedLists
     public void postFollowedList(RoutingContext routingContext) {
         FollowedListEntity followedListEntity;
         try {
-            followedListEntity = Json.decodeValue(routingContext.getBody(), FollowedListEntity.class);
+            followedListEntity = Bodies.decode(routingContext, FollowedListEntity.class);
         }
         catch (Exception e) {
             routingContext.response()
@@ -69,37 +83,36 @@ public class FollowedListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        UserEntity userEntity = DatastoreHelpers.getUser(datastore, userId);
-        if (userEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
-                .putHeader("content-type", "text/plain")
-                .end("Invalid request parameters");
-            return;
-        }
+        // The user check and the lookup of what they already follow are independent, so run them together.
+        Future<UserEntity> userFuture = repositories.users.get(userId);
+        Future<List<FollowedListEntity>> followedFuture = repositories.followedLists.getAllForUser(userId);
 
-        // See if we're already following the list or not.
-        boolean isFollowed = false;
-        long addedId = -1;
-        for (FollowedListEntity fle : DatastoreHelpers.getAllFollowedListsForUser(datastore, userId)) {
-            if (fle.listId == followedListEntity.listId) {
-                // We're already following this list, just bail out.
-                isFollowed = true;
-                addedId = fle.id;
-                break;
+        CompositeFuture.all(userFuture, followedFuture).compose(fetched -> {
+            if (userFuture.result() == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.BAD_REQUEST, "Invalid request parameters"));
+            }
+
+            // See if we're already following the list or not.
+            for (FollowedListEntity fle : followedFuture.result()) {
+                if (fle.listId == followedListEntity.listId) {
+                    // We're already following this list, just bail out.
+                    return Future.succeededFuture(fle.id);
+                }
             }
-        }
 
-        if (!isFollowed) {
             followedListEntity.userId = userId;
-            addedId = DatastoreHelpers.createFollowedList(datastore, followedListEntity);
-        }
+            return repositories.followedLists.create(followedListEntity);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        routingContext.response()
-            .setStatusCode(HttpResponseStatus.CREATED.code())
-            .putHeader("content-type", "text/plain")
-            .end(Long.toString(addedId));
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.CREATED.code())
+                .putHeader("content-type", "text/plain")
+                .end(Long.toString(ar.result()));
+        });
     }
 
     // Delete a user, /users/{userId}/readingLists/{readingListId}
@@ -118,19 +131,21 @@ public class FollowedListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        if (getFollowedListIfUserOwnsIt(datastore, userId, listId) == null) {
+        repositories.followedLists.getIfOwnedBy(userId, listId).compose(followedListEntity -> {
+            if (followedListEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.NOT_FOUND));
+            }
+            return repositories.followedLists.delete(listId);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
             routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
+                .setStatusCode(HttpResponseStatus.NO_CONTENT.code())
                 .putHeader("content-type", "text/plain")
                 .end();
-            return;
-        }
-        DatastoreHelpers.deleteFollowedList(datastore, listId);
-
-        routingContext.response()
-            .setStatusCode(HttpResponseStatus.NO_CONTENT.code())
-            .putHeader("content-type", "text/plain")
-            .end();
+        });
     }
 }
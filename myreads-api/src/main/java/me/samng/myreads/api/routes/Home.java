@@ -0,0 +1,42 @@
+package me.samng.myreads.api.routes;
+
+import me.samng.myreads.api.entities.FollowedListEntity;
+import me.samng.myreads.api.entities.ReadingListEntity;
+import me.samng.myreads.api.entities.TagEntity;
+import me.samng.myreads.api.entities.UserEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Everything the UI shows when a user signs in, in one response: the user, the first page of their reading lists,
+// their followed lists with the list behind each one, and the first page of tags. Each collection carries the
+// cursor to carry on from with its own endpoint.
+public class Home {
+    public static class FollowedList {
+        public FollowedListEntity followedList;
+        public ReadingListEntity readingList;
+    }
+
+    public UserEntity user;
+    public List<ReadingListEntity> readingLists;
+    public String readingListsNextCursor;
+    public List<FollowedList> followedLists;
+    public String followedListsNextCursor;
+    public List<TagEntity> tags;
+    public String tagsNextCursor;
+
+    // Lines the lists up with the followed lists. One whose list has gone is marked orphaned and has no list.
+    static List<FollowedList> resolve(List<FollowedListEntity> followedLists, List<ReadingListEntity> readingLists) {
+        ArrayList<FollowedList> resolved = new ArrayList<>(followedLists.size());
+        for (int i = 0; i < followedLists.size(); i++) {
+            FollowedList followedList = new FollowedList();
+            followedList.followedList = followedLists.get(i);
+            followedList.readingList = readingLists.get(i);
+            if (followedList.readingList == null) {
+                followedList.followedList.orphaned = true;
+            }
+            resolved.add(followedList);
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,83 @@
+package me.samng.myreads.api.routes;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.ext.web.RoutingContext;
+import me.samng.myreads.api.Page;
+import me.samng.myreads.api.entities.FollowedListEntity;
+import me.samng.myreads.api.entities.ReadingListEntity;
+import me.samng.myreads.api.entities.TagEntity;
+import me.samng.myreads.api.entities.UserEntity;
+import me.samng.myreads.api.repositories.Repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class HomeRoute {
+    private final Repositories repositories;
+
+    public HomeRoute(Repositories repositories) {
+        this.repositories = repositories;
+    }
+
+    // GET /users/{userId}/home
+    // The four reads go out together, and the lists behind the followed lists are looked up in one batch as soon
+    // as the followed lists are in, so the response takes about as long as the slowest of them.
+    public void getHome(RoutingContext routingContext) {
+        long userId;
+        try {
+            userId = Long.decode(routingContext.request().getParam("userId"));
+        }
+        catch (Exception e) {
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .putHeader("content-type", "text/plain")
+                .end("Invalid request parameters");
+            return;
+        }
+
+        int limit = PageRequest.defaultLimit;
+        Future<UserEntity> userFut = repositories.users.get(userId);
+        Future<Page<ReadingListEntity>> readingListsFut = repositories.readingLists.getAllForUser(userId, limit, null);
+        Future<Page<TagEntity>> tagsFut = repositories.tags.getAll(limit, null);
+        Future<Page<FollowedListEntity>> followedListsFut = repositories.followedLists.getAllForUser(userId, limit, null);
+        Future<List<Home.FollowedList>> resolvedFut = followedListsFut.compose(page -> {
+            if (page.items.isEmpty()) {
+                return Future.succeededFuture(new ArrayList<>());
+            }
+
+            ArrayList<Long> listIds = new ArrayList<>(page.items.size());
+            page.items.forEach(followedList -> listIds.add(followedList.listId));
+            return repositories.readingLists.getMany(listIds).map(lists -> Home.resolve(page.items, lists));
+        });
+
+        CompositeFuture.all(userFut, readingListsFut, tagsFut, resolvedFut).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            if (userFut.result() == null) {
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
+                    .putHeader("content-type", "text/plain")
+                    .end();
+                return;
+            }
+
+            Home home = new Home();
+            home.user = userFut.result();
+            home.readingLists = readingListsFut.result().items;
+            home.readingListsNextCursor = readingListsFut.result().nextCursor;
+            home.followedLists = resolvedFut.result();
+            home.followedListsNextCursor = followedListsFut.result().nextCursor;
+            home.tags = tagsFut.result().items;
+            home.tagsNextCursor = tagsFut.result().nextCursor;
+
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, home));
+        });
+    }
+}
@@ -0,0 +1,18 @@
+package me.samng.myreads.api.routes;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+// Fails a route's future chain with a specific status, so that early exits (bad input, not found) can be
+// expressed inside a compose() chain and turned into a response in one place.
+public class HttpStatusException extends RuntimeException {
+    public final int statusCode;
+
+    public HttpStatusException(HttpResponseStatus status) {
+        this(status, null);
+    }
+
+    public HttpStatusException(HttpResponseStatus status, String message) {
+        super(message);
+        this.statusCode = status.code();
+    }
+}
@@ -0,0 +1,45 @@
+package me.samng.myreads.api.routes;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Future;
+import io.vertx.ext.web.RoutingContext;
+import me.samng.myreads.api.jobs.JobManager;
+
+public class JobRoute {
+    private final JobManager jobManager;
+
+    public JobRoute(JobManager jobManager) {
+        this.jobManager = jobManager;
+    }
+
+    // GET /jobs/{jobId}
+    public void getJob(RoutingContext routingContext) {
+        long jobId;
+        try {
+            jobId = Long.decode(routingContext.request().getParam("jobId"));
+        }
+        catch (Exception e) {
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .putHeader("content-type", "text/plain")
+                .end("Invalid request parameters");
+            return;
+        }
+
+        jobManager.get(jobId)
+            .compose(job -> job == null
+                ? Future.failedFuture(new HttpStatusException(HttpResponseStatus.NOT_FOUND))
+                : Future.succeededFuture(job))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
+
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.OK.code())
+                    .putHeader("content-type", Bodies.contentType(routingContext))
+                    .end(Bodies.encode(routingContext, ar.result()));
+            });
+    }
+}
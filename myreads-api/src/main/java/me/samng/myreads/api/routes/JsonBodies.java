@@ -0,0 +1,59 @@
+package me.samng.myreads.api.routes;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.EncodeException;
+import io.vertx.core.json.Json;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Reads request bodies and writes response bodies as JSON, with the same mapper and output as Json.decodeValue
+// and Json.encode. The reader or writer for each type is built once and kept, so its serializers are resolved on
+// first use rather than looked up on every call, and bodies go straight between bytes and objects without an
+// intermediate String.
+public class JsonBodies {
+    private static final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private static ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, t -> Json.mapper.readerFor(t));
+    }
+
+    private static ObjectWriter writer(Class<?> type) {
+        return writers.computeIfAbsent(type, t -> Json.mapper.writerFor(t).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+    }
+
+    // As with CborBodies, a body nested deeply enough to run out of stack is just a bad request.
+    public static <T> T decode(Buffer body, Class<T> type) {
+        try {
+            return reader(type).readValue((InputStream) new ByteBufInputStream(body.getByteBuf()));
+        }
+        catch (Exception | StackOverflowError e) {
+            throw new DecodeException("Failed to decode: " + e.getMessage());
+        }
+    }
+
+    public static Buffer encode(Object value) {
+        ByteBuf byteBuf = Unpooled.buffer();
+        write(new ByteBufOutputStream(byteBuf), value);
+        return Buffer.buffer(byteBuf);
+    }
+
+    public static void write(OutputStream out, Object value) {
+        try {
+            writer(value == null ? Object.class : value.getClass()).writeValue(out, value);
+        }
+        catch (Exception e) {
+            throw new EncodeException("Failed to encode as JSON: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package me.samng.myreads.api.routes;
+
+import com.google.cloud.datastore.Cursor;
+import io.vertx.ext.web.RoutingContext;
+
+// The limit, cursor and stream query parameters of a collection request. The limit is capped by the server, so a
+// single response is bounded no matter how large the collection is. With stream=true the whole collection is sent
+// as one chunked response instead, and the limit is how many rows are fetched at a time.
+public class PageRequest {
+    public static int defaultLimit = 100;
+    public static int maxLimit = 500;
+
+    final int limit;
+    final String cursor;
+    final boolean stream;
+
+    private PageRequest(int limit, String cursor, boolean stream) {
+        this.limit = limit;
+        this.cursor = cursor;
+        this.stream = stream;
+    }
+
+    // Throws if the limit or cursor is malformed.
+    static PageRequest fromRequest(RoutingContext routingContext) {
+        int limit = defaultLimit;
+        String limitParam = routingContext.request().getParam("limit");
+        if (limitParam != null) {
+            limit = Integer.parseInt(limitParam);
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+        }
+
+        String cursor = routingContext.request().getParam("cursor");
+        if (cursor != null && cursor.isEmpty()) {
+            cursor = null;
+        }
+        if (cursor != null) {
+            // Reject garbage here rather than letting it fail the query.
+            Cursor.fromUrlSafe(cursor);
+        }
+
+        boolean stream = Boolean.parseBoolean(routingContext.request().getParam("stream"));
+
+        return new PageRequest(Math.min(limit, maxLimit), cursor, stream);
+    }
+}
@@ -0,0 +1,121 @@
+package me.samng.myreads.api.routes;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.RoutingContext;
+import me.samng.myreads.api.Page;
+
+import java.io.IOException;
+
+// Writes a whole collection as one chunked array, a page at a time. The next page is only fetched once the
+// previous one has been handed to the connection and the write queue has room, so memory use stays at about one
+// page however large the collection is.
+class PageStreamer<T> {
+    interface Fetcher<T> {
+        Future<Page<T>> fetch(int limit, String cursor);
+    }
+
+    private final RoutingContext routingContext;
+    private final HttpServerResponse response;
+    private final Fetcher<T> fetcher;
+    private final int pageSize;
+    private final Bodies.Format format;
+    private final Compression.Stream compression;
+    private boolean started = false;
+    private boolean first = true;
+    private boolean closed = false;
+
+    private PageStreamer(RoutingContext routingContext, Fetcher<T> fetcher, int pageSize) {
+        this.routingContext = routingContext;
+        this.response = routingContext.response();
+        this.fetcher = fetcher;
+        this.pageSize = pageSize;
+        this.format = Bodies.responseFormat(routingContext);
+        String encoding = Compression.encoding(routingContext);
+        this.compression = encoding == null ? null : new Compression.Stream(encoding);
+    }
+
+    static <T> void stream(RoutingContext routingContext, PageRequest pageRequest, Fetcher<T> fetcher) {
+        PageStreamer<T> streamer = new PageStreamer<>(routingContext, fetcher, pageRequest.limit);
+        streamer.response.closeHandler(v -> {
+            streamer.closed = true;
+            streamer.closeCompression();
+        });
+        streamer.fetchPage(pageRequest.cursor);
+    }
+
+    private void fetchPage(String cursor) {
+        fetcher.fetch(pageSize, cursor).setHandler(ar -> {
+            if (closed) {
+                return;
+            }
+
+            if (ar.failed()) {
+                closeCompression();
+                if (!started) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                }
+                else {
+                    // The status line is long gone, so all we can do is cut the response short.
+                    routingContext.request().connection().close();
+                }
+                return;
+            }
+
+            // Hold the headers back until the first page is in, so an early failure can still get a proper status.
+            // CBOR has an array form for when the length isn't known up front, so the items go out the same way.
+            ByteBuf chunk = Unpooled.buffer();
+            if (!started) {
+                started = true;
+                response
+                    .setChunked(true)
+                    .putHeader("content-type", format.contentType);
+                if (compression != null) {
+                    response.putHeader("content-encoding", compression.encoding);
+                }
+                chunk.writeByte(format == Bodies.Format.CBOR ? CborBodies.indefiniteArrayStart : '[');
+            }
+
+            Page<T> page = ar.result();
+            for (T item : page.items) {
+                if (!first && format == Bodies.Format.JSON) {
+                    chunk.writeByte(',');
+                }
+                first = false;
+                Bodies.write(format, chunk, item);
+            }
+            if (page.nextCursor == null) {
+                chunk.writeByte(format == Bodies.Format.CBOR ? CborBodies.indefiniteArrayEnd : ']');
+            }
+            Buffer body = Buffer.buffer(chunk);
+            response.write(compression == null ? body : compression.compress(body, page.nextCursor == null));
+
+            if (page.nextCursor == null) {
+                response.end();
+            }
+            else if (response.writeQueueFull()) {
+                response.drainHandler(v -> {
+                    response.drainHandler(null);
+                    fetchPage(page.nextCursor);
+                });
+            }
+            else {
+                fetchPage(page.nextCursor);
+            }
+        });
+    }
+
+    private void closeCompression() {
+        if (compression != null) {
+            try {
+                compression.close();
+            }
+            catch (IOException e) {
+                // Nothing more is going to be written anyway.
+            }
+        }
+    }
+}
@@ -1,23 +1,44 @@
 package me.samng.myreads.api.routes;
 
-import com.google.cloud.datastore.Datastore;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.vertx.core.json.Json;
+import io.vertx.core.Future;
 import io.vertx.ext.web.RoutingContext;
-import me.samng.myreads.api.DatastoreHelpers;
 import me.samng.myreads.api.EntityManager;
+import me.samng.myreads.api.TagQuery;
 import me.samng.myreads.api.entities.ReadingListElementEntity;
-import me.samng.myreads.api.entities.TagEntity;
-import me.samng.myreads.api.entities.UserEntity;
+import me.samng.myreads.api.repositories.Repositories;
 
 import java.util.List;
 
 public class ReadingListElementRoute {
+    private final Repositories repositories;
+    private final EntityManager entityManager;
+
+    public ReadingListElementRoute(Repositories repositories, EntityManager entityManager) {
+        this.repositories = repositories;
+        this.entityManager = entityManager;
+    }
+
+    // Fails with a 404 if the RLE doesn't exist or the user doesn't own it.
+    private Future<ReadingListElementEntity> getReadingListElementIfUserOwnsIt(
+        long userId,
+        long rleId) {
+        return repositories.readingListElements.getIfOwnedBy(userId, rleId).compose(rleEntity -> {
+            if (rleEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.NOT_FOUND));
+            }
+            return Future.succeededFuture(rleEntity);
+        });
+    }
+
     // GET /users/{userId}/readingListElements
     public void getAllReadingListElements(RoutingContext routingContext) {
         long userId;
+        PageRequest pageRequest;
         try {
             userId = Long.decode(routingContext.request().getParam("userId"));
+            pageRequest = PageRequest.fromRequest(routingContext);
         }
         catch (Exception e) {
             routingContext.response()
@@ -27,21 +48,43 @@ public class ReadingListElementRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        List<ReadingListElementEntity> results = DatastoreHelpers.getAllReadingListElementsForUser(datastore, userId);
+        RouteHelpers.respondWithPages(routingContext, pageRequest, (limit, cursor) ->
+            repositories.readingListElements.getAllForUser(userId, limit, cursor));
+    }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(results.toArray()));
+    // GET /users/{userId}/readingListElements?ids=1,2,3
+    public void getReadingListElementsById(RoutingContext routingContext) {
+        long userId;
+        List<Long> ids;
+        try {
+            userId = Long.decode(routingContext.request().getParam("userId"));
+            ids = Batches.ids(routingContext);
+        }
+        catch (Exception e) {
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .putHeader("content-type", "text/plain")
+                .end("Invalid request parameters");
+            return;
+        }
+
+        repositories.readingListElements.getMany(ids).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            Batches.respond(routingContext, Batches.found(ids, ar.result(), userId, entity -> entity.userId));
+        });
     }
 
-    // POST /users/{userId}/readingListElements
-    public void postReadingListElement(RoutingContext routingContext) {
-        ReadingListElementEntity rleEntity;
+    // POST /users/{userId}/readingListElements/batch
+    public void postReadingListElementsBatch(RoutingContext routingContext) {
         long userId;
+        List<Batches.Item<ReadingListElementEntity>> items;
         try {
-            rleEntity = Json.decodeValue(routingContext.getBody(), ReadingListElementEntity.class);
             userId = Long.decode(routingContext.request().getParam("userId"));
+            items = Batches.decodeEach(routingContext, ReadingListElementEntity.class);
         }
         catch (Exception e) {
             routingContext.response()
@@ -51,9 +94,33 @@ public class ReadingListElementRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        UserEntity userEntity = DatastoreHelpers.getUser(datastore, userId);
-        if (userEntity == null) {
+        repositories.users.get(userId).compose(userEntity -> {
+            if (userEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.BAD_REQUEST, "Invalid request parameters"));
+            }
+
+            List<ReadingListElementEntity> entities = Batches.pending(items);
+            entities.forEach(entity -> entity.userId = userId);
+            return repositories.readingListElements.createMany(entities);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            Batches.respond(routingContext, Batches.created(items, ar.result()));
+        });
+    }
+
+    // POST /users/{userId}/readingListElements
+    public void postReadingListElement(RoutingContext routingContext) {
+        ReadingListElementEntity rleEntity;
+        long userId;
+        try {
+            rleEntity = Bodies.decode(routingContext, ReadingListElementEntity.class);
+            userId = Long.decode(routingContext.request().getParam("userId"));
+        }
+        catch (Exception e) {
             routingContext.response()
                 .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
                 .putHeader("content-type", "text/plain")
@@ -61,13 +128,24 @@ public class ReadingListElementRoute {
             return;
         }
 
-        rleEntity.userId = userId;
-        long addedId = DatastoreHelpers.createReadingListElement(datastore, rleEntity);
+        repositories.users.get(userId).compose(userEntity -> {
+            if (userEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.BAD_REQUEST, "Invalid request parameters"));
+            }
 
-        routingContext.response()
-            .setStatusCode(HttpResponseStatus.CREATED.code())
-            .putHeader("content-type", "text/plain")
-            .end(Long.toString(addedId));
+            rleEntity.userId = userId;
+            return repositories.readingListElements.create(rleEntity);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.CREATED.code())
+                .putHeader("content-type", "text/plain")
+                .end(Long.toString(ar.result()));
+        });
     }
 
     // GET /users/{userId}/readingListElements/{readingListElementId}
@@ -86,29 +164,28 @@ public class ReadingListElementRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListElementEntity rleEntity = EntityManager.GetReadingListElementIfUserOwnsIt(datastore, userId, rleId);
-        if (rleEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
+        getReadingListElementIfUserOwnsIt(userId, rleId).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(rleEntity));
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, ar.result()));
+        });
     }
 
     // PUT /users/{userId}/readingListElements/{readingListElementId}
+    // Only the name, description and link change, and only at the given version if there is one, as for lists.
     public void putReadingListElement(RoutingContext routingContext) {
         ReadingListElementEntity rleEntity;
         long userId;
         try {
-            rleEntity = Json.decodeValue(routingContext.getBody(), ReadingListElementEntity.class);
+            rleEntity = Bodies.decode(routingContext, ReadingListElementEntity.class);
             rleEntity.id = Long.decode(routingContext.request().getParam("readingListElementId"));
             userId = Long.decode(routingContext.request().getParam("userId"));
+            rleEntity.version = RouteHelpers.expectedVersion(routingContext, rleEntity.version);
         }
         catch (Exception e) {
             routingContext.response()
@@ -118,23 +195,23 @@ public class ReadingListElementRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        if (EntityManager.GetReadingListElementIfUserOwnsIt(datastore, userId, rleEntity.id) == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-
-        if (DatastoreHelpers.updateReadingListElement(datastore, rleEntity, false)) {
-            routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
-        }
-        else {
-            routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
-        }
-
-        routingContext.response().putHeader("content-type", "text/plain").end();
+        getReadingListElementIfUserOwnsIt(userId, rleEntity.id)
+            .compose(existing -> repositories.readingListElements.update(rleEntity))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
+
+                if (ar.result()) {
+                    routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
+                }
+                else {
+                    routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
+                }
+
+                routingContext.response().putHeader("content-type", "text/plain").end();
+            });
     }
 
     // DELETE /users/{userId}/readingListElements/{readingListElementId}
@@ -153,20 +230,19 @@ public class ReadingListElementRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        if (EntityManager.GetReadingListElementIfUserOwnsIt(datastore, userId, rleId) == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-        EntityManager.DeleteReadingListElement(datastore, rleId);
-
-        routingContext.response()
-            .setStatusCode(HttpResponseStatus.NO_CONTENT.code())
-            .putHeader("content-type", "text/plain")
-            .end();
+        getReadingListElementIfUserOwnsIt(userId, rleId)
+            .compose(existing -> entityManager.DeleteReadingListElement(rleId))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
+
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.NO_CONTENT.code())
+                    .putHeader("content-type", "text/plain")
+                    .end();
+            });
     }
 
     // POST /users/{userId}/readlingListElements/{readingListElementId}/addTags
@@ -177,7 +253,7 @@ public class ReadingListElementRoute {
         try {
             rleId = Long.decode(routingContext.request().getParam("readingListElementId"));
             userId = Long.decode(routingContext.request().getParam("userId"));
-            tagIds = Json.decodeValue(routingContext.getBody(), Long[].class);
+            tagIds = Bodies.decode(routingContext, Long[].class);
         }
         catch (Exception e) {
             routingContext.response()
@@ -187,22 +263,19 @@ public class ReadingListElementRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListElementEntity readingListElementEntity = EntityManager.GetReadingListElementIfUserOwnsIt(datastore, userId, rleId);
-        if (readingListElementEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-
-        routingContext.response().setStatusCode(HttpResponseStatus.OK.code());
-        List<Long> addedIds = EntityManager.AddTagsToReadingListElement(datastore, readingListElementEntity, tagIds);
-
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(addedIds.toArray()));
+        getReadingListElementIfUserOwnsIt(userId, rleId)
+            .compose(rleEntity -> entityManager.AddTagsToReadingListElement(rleEntity, tagIds))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
+
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.OK.code())
+                    .putHeader("content-type", Bodies.contentType(routingContext))
+                    .end(Bodies.encode(routingContext, ar.result()));
+            });
     }
 
     // GET /users/{userId}/readlingListElements/{readingListElementId}/tags
@@ -221,21 +294,18 @@ public class ReadingListElementRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListElementEntity readingListElementEntity = EntityManager.GetReadingListElementIfUserOwnsIt(datastore, userId, rleId);
-        if (readingListElementEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-
-        List<TagEntity> tags = TagRoute.getTagEntities(datastore, readingListElementEntity.tagIds());
-
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(tags.toArray()));
+        getReadingListElementIfUserOwnsIt(userId, rleId)
+            .compose(rleEntity -> repositories.tags.getMany(rleEntity.tagIds()))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
+
+                routingContext.response()
+                    .putHeader("content-type", Bodies.contentType(routingContext))
+                    .end(Bodies.encode(routingContext, ar.result()));
+            });
     }
 
     // DELETE /users/{userId}/readlingListElements/{readingListElementId}/tags/{tagId}
@@ -256,47 +326,40 @@ public class ReadingListElementRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListElementEntity readingListElementEntity = EntityManager.GetReadingListElementIfUserOwnsIt(datastore, userId, rleId);
-        if (readingListElementEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
+        getReadingListElementIfUserOwnsIt(userId, rleId).compose(rleEntity -> {
+            if (rleEntity.tagIds() == null || !rleEntity.tagIds().contains(tagId)) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.NOT_FOUND, "Tag not found"));
+            }
+
+            return repositories.readingListElements.removeTagMapping(userId, tagId, rleId)
+                .compose(removed -> repositories.readingListElements.modify(rleId, rle -> rle.tagIds.remove(tagId)))
+                .map(updated -> updated != null);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            if (ar.result()) {
+                routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
+            } else {
+                routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
+            }
 
-        if (readingListElementEntity.tagIds() == null || !readingListElementEntity.tagIds().contains(tagId)) {
             routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
                 .putHeader("content-type", "text/plain")
-                .end("Tag not found");
-            return;
-        }
-
-        DatastoreHelpers.deleteTagToReadingListElementMapping(datastore, userId, tagId, rleId);
-
-        readingListElementEntity.tagIds().remove(tagId);
-        if (DatastoreHelpers.updateReadingListElement(datastore, readingListElementEntity, false)) {
-            routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
-        } else {
-            routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
-        }
-
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end();
+                .end();
+        });
     }
 
     // POST /users/{userId}/readingListElementsByTag
     public void getAllReadingListElementsByTag(RoutingContext routingContext) {
-        // For now, we assume the body contains a single tag, but we can add
-        // more extensibility to this later.
+        // The body is a tag id, or an and/or/not expression over tag ids; see TagQuery.
         long userId;
-        long tagId;
+        TagQuery query;
         try {
             userId = Long.decode(routingContext.request().getParam("userId"));
-            tagId = Long.decode(routingContext.getBodyAsString());
+            query = TagQuery.parse(Bodies.decode(routingContext, JsonNode.class));
         }
         catch (Exception e) {
             routingContext.response()
@@ -306,11 +369,15 @@ public class ReadingListElementRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        List<ReadingListElementEntity> rles = DatastoreHelpers.getAllReadingListElementsForUserWithTag(datastore, userId, tagId);
+        repositories.readingListElements.getAllForUserMatching(userId, query).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(rles.toArray()));
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, ar.result()));
+        });
     }
 }
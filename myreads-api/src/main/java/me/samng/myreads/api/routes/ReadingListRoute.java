@@ -1,36 +1,49 @@
 package me.samng.myreads.api.routes;
 
-import com.google.cloud.datastore.Datastore;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.vertx.core.json.Json;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.ext.web.RoutingContext;
-import me.samng.myreads.api.DatastoreHelpers;
 import me.samng.myreads.api.EntityManager;
+import me.samng.myreads.api.TagQuery;
 import me.samng.myreads.api.entities.ReadingListElementEntity;
 import me.samng.myreads.api.entities.ReadingListEntity;
 import me.samng.myreads.api.entities.TagEntity;
-import me.samng.myreads.api.entities.UserEntity;
+import me.samng.myreads.api.repositories.Repositories;
 
+import java.util.ArrayList;
 import java.util.List;
 
 // TODO: Do we want to make it so that gets for everything never check for ownership, but we only check for updates?
 public class ReadingListRoute {
-    private ReadingListEntity getListIfUserOwnsIt(
-        Datastore datastore,
+    private final Repositories repositories;
+    private final EntityManager entityManager;
+
+    public ReadingListRoute(Repositories repositories, EntityManager entityManager) {
+        this.repositories = repositories;
+        this.entityManager = entityManager;
+    }
+
+    // Fails with a 404 if the list doesn't exist or the user doesn't own it.
+    private Future<ReadingListEntity> getListIfUserOwnsIt(
         long userId,
         long listId) {
-        ReadingListEntity readingListEntity = DatastoreHelpers.getReadingList(datastore, listId);
-        if (readingListEntity == null || readingListEntity.userId != userId) {
-            return null;
-        }
-        return readingListEntity;
+        return repositories.readingLists.getIfOwnedBy(userId, listId).compose(readingListEntity -> {
+            if (readingListEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.NOT_FOUND));
+            }
+            return Future.succeededFuture(readingListEntity);
+        });
     }
 
     // Get all lists for a given user - /users/{userId}/readinglists
     public void getAllReadingLists(RoutingContext routingContext) {
         long userId;
+        PageRequest pageRequest;
         try {
             userId = Long.decode(routingContext.request().getParam("userId"));
+            pageRequest = PageRequest.fromRequest(routingContext);
         }
         catch (Exception e) {
             routingContext.response()
@@ -40,21 +53,43 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        List<ReadingListEntity> results = DatastoreHelpers.getAllReadingListsForUser(datastore, userId);
+        RouteHelpers.respondWithPages(routingContext, pageRequest, (limit, cursor) ->
+            repositories.readingLists.getAllForUser(userId, limit, cursor));
+    }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(results.toArray()));
+    // GET /users/{userId}/readingLists?ids=1,2,3
+    public void getReadingListsById(RoutingContext routingContext) {
+        long userId;
+        List<Long> ids;
+        try {
+            userId = Long.decode(routingContext.request().getParam("userId"));
+            ids = Batches.ids(routingContext);
+        }
+        catch (Exception e) {
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .putHeader("content-type", "text/plain")
+                .end("Invalid request parameters");
+            return;
+        }
+
+        repositories.readingLists.getMany(ids).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            Batches.respond(routingContext, Batches.found(ids, ar.result(), userId, entity -> entity.userId));
+        });
     }
 
-    // Post a new reading list - /users/{userId}/readingLists
-    public void postReadingList(RoutingContext routingContext) {
-        ReadingListEntity readingListEntity;
+    // POST /users/{userId}/readingLists/batch
+    public void postReadingListsBatch(RoutingContext routingContext) {
         long userId;
+        List<Batches.Item<ReadingListEntity>> items;
         try {
-            readingListEntity = Json.decodeValue(routingContext.getBody(), ReadingListEntity.class);
             userId = Long.decode(routingContext.request().getParam("userId"));
+            items = Batches.decodeEach(routingContext, ReadingListEntity.class);
         }
         catch (Exception e) {
             routingContext.response()
@@ -64,9 +99,33 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        UserEntity userEntity = DatastoreHelpers.getUser(datastore, userId);
-        if (userEntity == null) {
+        repositories.users.get(userId).compose(userEntity -> {
+            if (userEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.BAD_REQUEST, "Invalid request parameters"));
+            }
+
+            List<ReadingListEntity> entities = Batches.pending(items);
+            entities.forEach(entity -> entity.userId = userId);
+            return repositories.readingLists.createMany(entities);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            Batches.respond(routingContext, Batches.created(items, ar.result()));
+        });
+    }
+
+    // Post a new reading list - /users/{userId}/readingLists
+    public void postReadingList(RoutingContext routingContext) {
+        ReadingListEntity readingListEntity;
+        long userId;
+        try {
+            readingListEntity = Bodies.decode(routingContext, ReadingListEntity.class);
+            userId = Long.decode(routingContext.request().getParam("userId"));
+        }
+        catch (Exception e) {
             routingContext.response()
                 .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
                 .putHeader("content-type", "text/plain")
@@ -74,22 +133,37 @@ public class ReadingListRoute {
             return;
         }
 
-        readingListEntity.userId = userId;
-        long addedId = DatastoreHelpers.createReadingList(datastore, readingListEntity);
+        repositories.users.get(userId).compose(userEntity -> {
+            if (userEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.BAD_REQUEST, "Invalid request parameters"));
+            }
+
+            readingListEntity.userId = userId;
+            return repositories.readingLists.create(readingListEntity);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        routingContext.response()
-            .setStatusCode(HttpResponseStatus.CREATED.code())
-            .putHeader("content-type", "text/plain")
-            .end(Long.toString(addedId));
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.CREATED.code())
+                .putHeader("content-type", "text/plain")
+                .end(Long.toString(ar.result()));
+        });
     }
 
     // Get a specific reading list, /users/{userId}/readingLists/{readingListId}
+    // With ?expand=elements,tags,commentCounts the list comes back with a page of its elements, their tags and
+    // comment counts filled in, as an ExpandedReadingList.
     public void getReadingList(RoutingContext routingContext) {
         long listId;
         long userId;
+        ExpandedReadingList.Request expandRequest;
         try {
             listId = Long.decode(routingContext.request().getParam("readingListId"));
             userId = Long.decode(routingContext.request().getParam("userId"));
+            expandRequest = ExpandedReadingList.Request.fromRequest(routingContext);
         }
         catch (Exception e) {
             routingContext.response()
@@ -99,29 +173,72 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListEntity readingListEntity = getListIfUserOwnsIt(datastore, userId, listId);
-        if (readingListEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
+        if (expandRequest != null) {
+            getExpandedReadingList(routingContext, userId, listId, expandRequest);
             return;
         }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(readingListEntity));
+        getListIfUserOwnsIt(userId, listId).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, ar.result()));
+        });
+    }
+
+    private void getExpandedReadingList(
+        RoutingContext routingContext,
+        long userId,
+        long listId,
+        ExpandedReadingList.Request expandRequest) {
+        getListIfUserOwnsIt(userId, listId).compose(readingListEntity -> {
+            List<Long> pageIds = ExpandedReadingList.pageIds(readingListEntity, expandRequest);
+            Future<List<ReadingListElementEntity>> pageFut = pageIds.isEmpty()
+                ? Future.succeededFuture(new ArrayList<>())
+                : repositories.readingListElements.getMany(pageIds);
+            return pageFut.map(page -> ExpandedReadingList.build(readingListEntity, expandRequest, page));
+        }).compose(view -> {
+            if (!expandRequest.has(ExpandedReadingList.tagsExpansion)) {
+                return Future.succeededFuture(view);
+            }
+
+            List<Long> tagIds = view.tagIds();
+            Future<List<TagEntity>> tagsFut = tagIds.isEmpty()
+                ? Future.succeededFuture(new ArrayList<>())
+                : repositories.tags.getMany(tagIds);
+            return tagsFut.map(tags -> {
+                view.fillTags(tags);
+                return view;
+            });
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            if (ar.result().nextCursor != null) {
+                routingContext.response().putHeader(RouteHelpers.nextCursorHeader, ar.result().nextCursor);
+            }
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, ar.result()));
+        });
     }
 
-    // Update a list, /users/{userId}/readingLists/{readingListId}
+    // Update a list, /users/{userId}/readingLists/{readingListId}. Only the name and description change. With a
+    // version, in If-Match or the body, it only goes through if the list is still at that version.
     public void putReadingList(RoutingContext routingContext) {
         ReadingListEntity readingListEntity;
         long userId;
         try {
-            readingListEntity = Json.decodeValue(routingContext.getBody(), ReadingListEntity.class);
+            readingListEntity = Bodies.decode(routingContext, ReadingListEntity.class);
             readingListEntity.id = Long.decode(routingContext.request().getParam("readingListId"));
             userId = Long.decode(routingContext.request().getParam("userId"));
+            readingListEntity.version = RouteHelpers.expectedVersion(routingContext, readingListEntity.version);
         }
         catch (Exception e) {
             routingContext.response()
@@ -131,23 +248,23 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        if (getListIfUserOwnsIt(datastore, userId, readingListEntity.id) == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
+        getListIfUserOwnsIt(userId, readingListEntity.id)
+            .compose(existing -> repositories.readingLists.update(readingListEntity))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
 
-        if (DatastoreHelpers.updateReadingList(datastore, readingListEntity, false)) {
-            routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
-        }
-        else {
-            routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
-        }
+                if (ar.result()) {
+                    routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
+                }
+                else {
+                    routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
+                }
 
-        routingContext.response().putHeader("content-type", "text/plain").end();
+                routingContext.response().putHeader("content-type", "text/plain").end();
+            });
     }
 
     // Delete a reading list, /users/{userId}/readingLists/{readingListId}
@@ -166,20 +283,19 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        if (getListIfUserOwnsIt(datastore, userId, listId) == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-        EntityManager.DeleteReadingList(datastore, listId);
+        getListIfUserOwnsIt(userId, listId)
+            .compose(existing -> entityManager.DeleteReadingList(listId))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
 
-        routingContext.response()
-            .setStatusCode(HttpResponseStatus.NO_CONTENT.code())
-            .putHeader("content-type", "text/plain")
-            .end();
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.NO_CONTENT.code())
+                    .putHeader("content-type", "text/plain")
+                    .end();
+            });
     }
 
     // Remove an RLE from this list, /users/{userId}/readingLists/{readingListId}/readingListElements/{readingListElementId}
@@ -200,37 +316,41 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListEntity readingListEntity = getListIfUserOwnsIt(datastore, userId, listId);
-        if (readingListEntity == null ||
-            readingListEntity.readingListElementIds() == null ||
-            !readingListEntity.readingListElementIds().contains(rleId)) {
+        // We need to remove it from our reading list, but we also need to remove it from the RLE. Both
+        // fetches are independent, so issue them together.
+        Future<ReadingListEntity> listFuture = repositories.readingLists.getIfOwnedBy(userId, listId);
+        Future<ReadingListElementEntity> rleFuture = repositories.readingListElements.getIfOwnedBy(userId, rleId);
+
+        CompositeFuture.all(listFuture, rleFuture).compose(fetched -> {
+            ReadingListEntity readingListEntity = listFuture.result();
+            ReadingListElementEntity rleEntity = rleFuture.result();
+            if (readingListEntity == null ||
+                readingListEntity.readingListElementIds() == null ||
+                !readingListEntity.readingListElementIds().contains(rleId) ||
+                rleEntity == null) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.NOT_FOUND));
+            }
+
+            Future<ReadingListEntity> listUpdated = repositories.readingLists.modify(listId, list -> list.readingListElementIds.remove(rleId));
+            Future<ReadingListElementEntity> rleUpdated = repositories.readingListElements.modify(rleId, rle -> rle.listIds.remove(listId));
+            return CompositeFuture.all(listUpdated, rleUpdated).map(done -> listUpdated.result() != null && rleUpdated.result() != null);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            if (ar.result()) {
+                routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
+            }
+            else {
+                routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
+            }
+
             routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
                 .putHeader("content-type", "text/plain")
                 .end();
-            return;
-        }
-
-        // We need to remove it from our reading list, but we also need to remove it from the RLE.
-        ReadingListElementEntity rleEntity = EntityManager.GetReadingListElementIfUserOwnsIt(datastore, userId, rleId);
-        assert rleEntity != null;
-        assert rleEntity.listIds.contains(listId);
-
-        readingListEntity.readingListElementIds.remove(rleId);
-        rleEntity.listIds.remove(listId);
-
-        if (DatastoreHelpers.updateReadingList(datastore, readingListEntity, false) &&
-            DatastoreHelpers.updateReadingListElement(datastore, rleEntity, false)) {
-            routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
-        }
-        else {
-            routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
-        }
-
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end();
+        });
     }
 
     // Add an RLE to this list, /users/{userId}/readingLists/{readingListId}/addReadingListElement
@@ -242,7 +362,7 @@ public class ReadingListRoute {
         try {
             listId = Long.decode(routingContext.request().getParam("readingListId"));
             userId = Long.decode(routingContext.request().getParam("userId"));
-            rleIds = Json.decodeValue(routingContext.getBody(), Long[].class);
+            rleIds = Bodies.decode(routingContext, Long[].class);
         }
         catch (Exception e) {
             routingContext.response()
@@ -252,22 +372,19 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListEntity readingListEntity = getListIfUserOwnsIt(datastore, userId, listId);
-        if (readingListEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-
-        routingContext.response().setStatusCode(HttpResponseStatus.OK.code());
-        List<Long> addedIds = EntityManager.AddReadingListElementsToReadingList(datastore, userId, readingListEntity, rleIds);
+        getListIfUserOwnsIt(userId, listId)
+            .compose(readingListEntity -> entityManager.AddReadingListElementsToReadingList(userId, readingListEntity, rleIds))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(addedIds.toArray()));
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.OK.code())
+                    .putHeader("content-type", Bodies.contentType(routingContext))
+                    .end(Bodies.encode(routingContext, ar.result()));
+            });
     }
 
     // POST /users/{userId}/readingLists/{readingListId}/addTags
@@ -278,7 +395,7 @@ public class ReadingListRoute {
         try {
             listId = Long.decode(routingContext.request().getParam("readingListId"));
             userId = Long.decode(routingContext.request().getParam("userId"));
-            tagIds = Json.decodeValue(routingContext.getBody(), Long[].class);
+            tagIds = Bodies.decode(routingContext, Long[].class);
         }
         catch (Exception e) {
             routingContext.response()
@@ -288,22 +405,19 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListEntity readingListEntity = getListIfUserOwnsIt(datastore, userId, listId);
-        if (readingListEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-
-        routingContext.response().setStatusCode(HttpResponseStatus.OK.code());
-        List<Long> addedIds = EntityManager.AddTagsToReadingList(datastore, readingListEntity, tagIds);
+        getListIfUserOwnsIt(userId, listId)
+            .compose(readingListEntity -> entityManager.AddTagsToReadingList(readingListEntity, tagIds))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(addedIds.toArray()));
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.OK.code())
+                    .putHeader("content-type", Bodies.contentType(routingContext))
+                    .end(Bodies.encode(routingContext, ar.result()));
+            });
     }
 
     // GET /users/{userId}/readingLists/{readingListId}/tags
@@ -322,21 +436,18 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListEntity readingListEntity = getListIfUserOwnsIt(datastore, userId, listId);
-        if (readingListEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-
-        List<TagEntity> tags = TagRoute.getTagEntities(datastore, readingListEntity.tagIds());
+        getListIfUserOwnsIt(userId, listId)
+            .compose(readingListEntity -> repositories.tags.getMany(readingListEntity.tagIds()))
+            .setHandler(ar -> {
+                if (ar.failed()) {
+                    RouteHelpers.fail(routingContext, ar.cause());
+                    return;
+                }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(tags.toArray()));
+                routingContext.response()
+                    .putHeader("content-type", Bodies.contentType(routingContext))
+                    .end(Bodies.encode(routingContext, ar.result()));
+            });
     }
 
     // DELETE /users/{userId}/readingLists/{readingListId}/tags/{tagId}
@@ -357,47 +468,40 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        ReadingListEntity readingListEntity = getListIfUserOwnsIt(datastore, userId, listId);
-        if (readingListEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
-
-        if (readingListEntity.tagIds() == null || !readingListEntity.tagIds().contains(tagId)) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end("Tag not found");
-            return;
-        }
+        getListIfUserOwnsIt(userId, listId).compose(readingListEntity -> {
+            if (readingListEntity.tagIds() == null || !readingListEntity.tagIds().contains(tagId)) {
+                return Future.failedFuture(new HttpStatusException(HttpResponseStatus.NOT_FOUND, "Tag not found"));
+            }
 
-        DatastoreHelpers.deleteTagToReadingListMapping(datastore, userId, tagId, listId);
+            return repositories.readingLists.removeTagMapping(userId, tagId, listId)
+                .compose(removed -> repositories.readingLists.modify(listId, list -> list.tagIds.remove(tagId)))
+                .map(updated -> updated != null);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        readingListEntity.tagIds().remove(tagId);
-        if (DatastoreHelpers.updateReadingList(datastore, readingListEntity, false)) {
-            routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
-        } else {
-            routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
-        }
+            if (ar.result()) {
+                routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
+            } else {
+                routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
+            }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end();
+            routingContext.response()
+                .putHeader("content-type", "text/plain")
+                .end();
+        });
     }
 
     // POST /users/{userId}/readingListsByTag
     public void getAllReadingListsByTag(RoutingContext routingContext) {
-        // For now, we assume the body contains a single tag, but we can add
-        // more extensibility to this later.
+        // The body is a tag id, or an and/or/not expression over tag ids; see TagQuery.
         long userId;
-        long tagId;
+        TagQuery query;
         try {
             userId = Long.decode(routingContext.request().getParam("userId"));
-            tagId = Long.decode(routingContext.getBodyAsString());
+            query = TagQuery.parse(Bodies.decode(routingContext, JsonNode.class));
         }
         catch (Exception e) {
             routingContext.response()
@@ -407,11 +511,15 @@ public class ReadingListRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        List<ReadingListEntity> rls = DatastoreHelpers.getAllReadingListsForUserWithTag(datastore, userId, tagId);
+        repositories.readingLists.getAllForUserMatching(userId, query).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(rls.toArray()));
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, ar.result()));
+        });
     }
 }
@@ -0,0 +1,112 @@
+package me.samng.myreads.api.routes;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Finished response bodies, shared by the whole process, for the few collections that every client asks for and
+// that rarely change. Each entry keeps its encoded body and, once a client has asked for one, its gzip or deflate
+// form, so a hit is served without encoding or compressing anything. Like EntityCache, entries go after a TTL so
+// that writes made by other processes are eventually picked up, and a fill is dropped if the cache was
+// invalidated while it was being built.
+public class ResponseCache {
+    private static long defaultMaxWeightBytes = 16L * 1024 * 1024;
+    private static long defaultTtlSeconds = 300;
+
+    static class Entry {
+        final String contentType;
+        final String nextCursor;
+        final Buffer body;
+        private final ConcurrentHashMap<String, Buffer> compressed = new ConcurrentHashMap<>();
+
+        Entry(String contentType, String nextCursor, Buffer body) {
+            this.contentType = contentType;
+            this.nextCursor = nextCursor;
+            this.body = body;
+        }
+
+        int weight() {
+            int weight = body.length();
+            for (Buffer buffer : compressed.values()) {
+                weight += buffer.length();
+            }
+            return weight;
+        }
+    }
+
+    private static volatile Cache<String, Entry> cache = newCache(defaultMaxWeightBytes, defaultTtlSeconds);
+    private static final AtomicLong invalidations = new AtomicLong();
+
+    public static void configure(JsonObject config) {
+        cache = newCache(
+            config.getLong("responseCache.maxWeightBytes", defaultMaxWeightBytes),
+            config.getLong("responseCache.ttlSeconds", defaultTtlSeconds));
+    }
+
+    // Weighed when they go in, which is before any compressed form is added, so allow for one of those too.
+    private static Cache<String, Entry> newCache(long maxWeightBytes, long ttlSeconds) {
+        return CacheBuilder.newBuilder()
+            .maximumWeight(maxWeightBytes)
+            .weigher((String key, Entry entry) -> entry.weight() * 2)
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+    }
+
+    // The key covers everything the body depends on, including the negotiated format.
+    static String key(RoutingContext routingContext, String route) {
+        return route + "|" + Bodies.responseFormat(routingContext) + "|" + routingContext.request().query();
+    }
+
+    static Entry get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    static long stamp() {
+        return invalidations.get();
+    }
+
+    static void put(String key, Entry entry, long stamp) {
+        if (invalidations.get() == stamp) {
+            cache.put(key, entry);
+        }
+    }
+
+    // Drops every entry for a route, e.g. after a write that changes it.
+    static void invalidate(String route) {
+        invalidations.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.startsWith(route + "|"));
+    }
+
+    public static void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    static void respond(RoutingContext routingContext, Entry entry) {
+        if (entry.nextCursor != null) {
+            routingContext.response().putHeader(RouteHelpers.nextCursorHeader, entry.nextCursor);
+        }
+        routingContext.response()
+            .putHeader("content-type", entry.contentType)
+            .end(Compression.apply(routingContext, entry.body, encoding ->
+                entry.compressed.computeIfAbsent(encoding, e -> Compression.compress(e, entry.body))));
+    }
+
+    public static JsonObject metrics() {
+        CacheStats stats = cache.stats();
+        return new JsonObject()
+            .put("size", cache.size())
+            .put("hits", stats.hitCount())
+            .put("misses", stats.missCount())
+            .put("hitRate", stats.hitRate())
+            .put("evictions", stats.evictionCount());
+    }
+}
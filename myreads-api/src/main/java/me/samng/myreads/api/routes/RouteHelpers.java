@@ -0,0 +1,133 @@
+package me.samng.myreads.api.routes;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.ext.web.RoutingContext;
+import me.samng.myreads.api.ConflictException;
+import me.samng.myreads.api.ContentionException;
+import me.samng.myreads.api.Page;
+import me.samng.myreads.api.WorkerPool;
+
+class RouteHelpers {
+    static String nextCursorHeader = "X-Next-Cursor";
+
+    // Answers a collection request with either a single page or, if asked for, the whole collection streamed.
+    static <T> void respondWithPages(RoutingContext routingContext, PageRequest pageRequest, PageStreamer.Fetcher<T> fetcher) {
+        if (pageRequest.stream) {
+            PageStreamer.stream(routingContext, pageRequest, fetcher);
+            return;
+        }
+
+        fetcher.fetch(pageRequest.limit, pageRequest.cursor).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            RouteHelpers.respondWithPage(routingContext, ar.result());
+        });
+    }
+
+    // Same, but single pages are kept in the response cache under the given route name.
+    static <T> void respondWithCachedPages(RoutingContext routingContext, PageRequest pageRequest, String route, PageStreamer.Fetcher<T> fetcher) {
+        if (pageRequest.stream) {
+            PageStreamer.stream(routingContext, pageRequest, fetcher);
+            return;
+        }
+
+        String key = ResponseCache.key(routingContext, route);
+        ResponseCache.Entry cached = ResponseCache.get(key);
+        if (cached != null) {
+            ResponseCache.respond(routingContext, cached);
+            return;
+        }
+
+        long stamp = ResponseCache.stamp();
+        fetcher.fetch(pageRequest.limit, pageRequest.cursor).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            Page<T> page = ar.result();
+            Bodies.Format format = Bodies.responseFormat(routingContext);
+            ResponseCache.Entry entry = new ResponseCache.Entry(format.contentType, page.nextCursor, Bodies.encode(format, page.items));
+            ResponseCache.put(key, entry, stamp);
+            ResponseCache.respond(routingContext, entry);
+        });
+    }
+
+    // The body stays a plain JSON array, as it was before paging, and the cursor for the next page (if there is
+    // one) goes in a header.
+    private static <T> void respondWithPage(RoutingContext routingContext, Page<T> page) {
+        if (page.nextCursor != null) {
+            routingContext.response().putHeader(nextCursorHeader, page.nextCursor);
+        }
+        routingContext.response()
+            .putHeader("content-type", Bodies.contentType(routingContext))
+            .end(Bodies.encode(routingContext, page.items));
+    }
+
+    // The version a write has to find: If-Match if the client sent it, otherwise the version in the body, where 0
+    // (or If-Match: *) means any. If-Match takes the version on its own, quoted or not.
+    static long expectedVersion(RoutingContext routingContext, long bodyVersion) {
+        String ifMatch = routingContext.request().getHeader("if-match");
+        if (ifMatch == null) {
+            return bodyVersion;
+        }
+
+        String version = ifMatch.trim();
+        if (version.equals("*")) {
+            return 0;
+        }
+        if (version.startsWith("W/")) {
+            version = version.substring(2);
+        }
+        if (version.length() >= 2 && version.startsWith("\"") && version.endsWith("\"")) {
+            version = version.substring(1, version.length() - 1);
+        }
+        long expected = Long.parseLong(version);
+        if (expected < 1) {
+            throw new IllegalArgumentException("If-Match must be a version");
+        }
+        return expected;
+    }
+
+    // Turns a failed repository or EntityManager future into a response.
+    static void fail(RoutingContext routingContext, Throwable cause) {
+        if (cause instanceof WorkerPool.SaturatedException) {
+            WorkerPool.respondSaturated(routingContext);
+        }
+        else if (cause instanceof ContentionException) {
+            // The caller's precondition, if it gave one, still held, so this isn't a 412 whatever If-Match says.
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.SERVICE_UNAVAILABLE.code())
+                .putHeader("content-type", "text/plain")
+                .putHeader("retry-after", "1")
+                .end(cause.getMessage());
+        }
+        else if (cause instanceof ConflictException) {
+            HttpResponseStatus status = routingContext.request().getHeader("if-match") != null
+                ? HttpResponseStatus.PRECONDITION_FAILED
+                : HttpResponseStatus.CONFLICT;
+            routingContext.response()
+                .setStatusCode(status.code())
+                .putHeader("content-type", "text/plain")
+                .end(cause.getMessage());
+        }
+        else if (cause instanceof HttpStatusException) {
+            HttpStatusException statusException = (HttpStatusException) cause;
+            routingContext.response()
+                .setStatusCode(statusException.statusCode)
+                .putHeader("content-type", "text/plain");
+            if (statusException.getMessage() == null) {
+                routingContext.response().end();
+            }
+            else {
+                routingContext.response().end(statusException.getMessage());
+            }
+        }
+        else {
+            routingContext.fail(cause);
+        }
+    }
+}
@@ -1,41 +1,40 @@
 package me.samng.myreads.api.routes;
 
-import com.google.cloud.datastore.Datastore;
 import com.google.common.base.Strings;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.vertx.core.json.Json;
 import io.vertx.ext.web.RoutingContext;
-import me.samng.myreads.api.DatastoreHelpers;
 import me.samng.myreads.api.entities.TagEntity;
+import me.samng.myreads.api.repositories.Repositories;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class TagRoute {
-    // TODO: At some point, do we want to add the ability for users to get all the tags that they've used?
+    private static String allTagsRoute = "tags";
 
-    public static List<TagEntity> getTagEntities(
-        Datastore datastore,
-        List<Long> tagIds) {
-        ArrayList<TagEntity> results = new ArrayList<>();
+    private final Repositories repositories;
 
-        for (long tagId : tagIds) {
-            TagEntity tagEntity = DatastoreHelpers.getTag(datastore, tagId);
-            if (tagEntity != null) {
-                results.add(tagEntity);
-            }
-        }
-        return results;
+    public TagRoute(Repositories repositories) {
+        this.repositories = repositories;
     }
 
+    // TODO: At some point, do we want to add the ability for users to get all the tags that they've used?
+
     // GET /tags
     public void getAllTags(RoutingContext routingContext) {
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        List<TagEntity> results = DatastoreHelpers.getAllTags(datastore);
+        PageRequest pageRequest;
+        try {
+            pageRequest = PageRequest.fromRequest(routingContext);
+        }
+        catch (Exception e) {
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .putHeader("content-type", "text/plain")
+                .end("Invalid request parameters");
+            return;
+        }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(results.toArray()));
+        RouteHelpers.respondWithCachedPages(routingContext, pageRequest, allTagsRoute, (limit, cursor) ->
+            repositories.tags.getAll(limit, cursor));
     }
 
     // POST /tags
@@ -43,7 +42,7 @@ public class TagRoute {
         TagEntity tagEntity;
 
         try {
-            tagEntity = Json.decodeValue(routingContext.getBody(), TagEntity.class);
+            tagEntity = Bodies.decode(routingContext, TagEntity.class);
         }
         catch (Exception e) {
             routingContext.response()
@@ -61,13 +60,18 @@ public class TagRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        long addedId = DatastoreHelpers.createTag(datastore, tagEntity);
+        repositories.tags.create(tagEntity).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        routingContext.response()
-            .setStatusCode(HttpResponseStatus.CREATED.code())
-            .putHeader("content-type", "text/plain")
-            .end(Long.toString(addedId));
+            ResponseCache.invalidate(allTagsRoute);
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.CREATED.code())
+                .putHeader("content-type", "text/plain")
+                .end(Long.toString(ar.result()));
+        });
     }
 
     // GET /tags/{tagId}
@@ -83,19 +87,66 @@ public class TagRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        TagEntity tagEntity = DatastoreHelpers.getTag(datastore, tagId);
-        if (tagEntity == null) {
+        repositories.tags.get(tagId).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            TagEntity tagEntity = ar.result();
+            if (tagEntity == null) {
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
+                    .putHeader("content-type", "text/plain")
+                    .end();
+                return;
+            }
+
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, tagEntity));
+        });
+    }
+
+    // GET /tags/search?prefix={prefix}&limit={limit}
+    public void searchTags(RoutingContext routingContext) {
+        String prefix;
+        int limit = PageRequest.defaultLimit;
+        try {
+            prefix = routingContext.request().getParam("prefix");
+            if (prefix == null) {
+                prefix = "";
+            }
+            String limitParam = routingContext.request().getParam("limit");
+            if (limitParam != null) {
+                limit = Integer.parseInt(limitParam);
+            }
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+        } catch (Exception e) {
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .putHeader("content-type", "text/plain")
+                .end("Invalid request parameters");
+            return;
+        }
+
+        // The search is only ever answered from memory, so it can't be served until the dictionary has loaded.
+        if (!repositories.tags.isDictionaryLoaded()) {
             routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
+                .setStatusCode(HttpResponseStatus.SERVICE_UNAVAILABLE.code())
                 .putHeader("content-type", "text/plain")
-                .end();
+                .putHeader("retry-after", "1")
+                .end("Tags are still loading, please retry");
             return;
         }
 
+        List<TagEntity> tags = repositories.tags.search(prefix, Math.min(limit, PageRequest.maxLimit));
+
         routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(tagEntity));
+            .putHeader("content-type", Bodies.contentType(routingContext))
+            .end(Bodies.encode(routingContext, tags));
     }
 
     // GET /tagByName/{tagName}
@@ -111,18 +162,24 @@ public class TagRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        TagEntity tagEntity = DatastoreHelpers.getTagByName(datastore, tagName);
-        if (tagEntity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
+        repositories.tags.getByName(tagName).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        routingContext.response()
-            .putHeader("content-type", "text/plain")
-            .end(Json.encode(tagEntity));
+            TagEntity tagEntity = ar.result();
+            if (tagEntity == null) {
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
+                    .putHeader("content-type", "text/plain")
+                    .end();
+                return;
+            }
+
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, tagEntity));
+        });
     }
 }
@@ -1,32 +1,46 @@
 package me.samng.myreads.api.routes;
 
-import com.google.cloud.datastore.Datastore;
-import com.google.cloud.datastore.Key;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.vertx.core.json.Json;
+import io.vertx.core.Future;
 import io.vertx.ext.web.RoutingContext;
-import me.samng.myreads.api.DatastoreHelpers;
 import me.samng.myreads.api.EntityManager;
+import me.samng.myreads.api.entities.JobEntity;
 import me.samng.myreads.api.entities.UserEntity;
-
-import java.util.List;
+import me.samng.myreads.api.jobs.JobManager;
+import me.samng.myreads.api.repositories.Repositories;
 
 public class UserRoute {
+    private final Repositories repositories;
+    private final JobManager jobManager;
+
+    public UserRoute(Repositories repositories, JobManager jobManager) {
+        this.repositories = repositories;
+        this.jobManager = jobManager;
+    }
+
     // Get all users
     public void getAllUsers(RoutingContext routingContext) {
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        List<UserEntity> results = DatastoreHelpers.getAllUsers(datastore);
-
-        routingContext.response()
+        PageRequest pageRequest;
+        try {
+            pageRequest = PageRequest.fromRequest(routingContext);
+        }
+        catch (Exception e) {
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.BAD_REQUEST.code())
                 .putHeader("content-type", "text/plain")
-                .end(Json.encode(results.toArray()));
+                .end("Invalid request parameters");
+            return;
+        }
+
+        RouteHelpers.respondWithPages(routingContext, pageRequest, (limit, cursor) ->
+            repositories.users.getAll(limit, cursor));
     }
 
     // Post a new user
     public void postUser(RoutingContext routingContext) {
         UserEntity userEntity;
         try {
-            userEntity = Json.decodeValue(routingContext.getBody(), UserEntity.class);
+            userEntity = Bodies.decode(routingContext, UserEntity.class);
         }
         catch (Exception e) {
             routingContext.response()
@@ -35,19 +49,23 @@ public class UserRoute {
                 .end("Invalid request body");
             return;
         }
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        long addedId = DatastoreHelpers.createUser(datastore, userEntity);
 
-        routingContext.response()
+        repositories.users.create(userEntity).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            routingContext.response()
                 .setStatusCode(HttpResponseStatus.CREATED.code())
                 .putHeader("content-type", "text/plain")
-                .end(Long.toString(addedId));
+                .end(Long.toString(ar.result()));
+        });
     }
 
     // TODO: We need to figure out how to auth everything that isn't just a GET.
     // Get a specific user, /users/{userId}
     public void getUser(RoutingContext routingContext) {
-        Key key;
         long userId = -1;
         try {
             userId = Long.decode(routingContext.request().getParam("userId"));
@@ -59,27 +77,33 @@ public class UserRoute {
                 .end("Invalid request parameters");
             return;
         }
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        UserEntity entity = DatastoreHelpers.getUser(datastore, userId);
 
-        if (entity == null) {
-            routingContext.response()
-                .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
-                .putHeader("content-type", "text/plain")
-                .end();
-            return;
-        }
+        repositories.users.get(userId).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
 
-        routingContext.response()
-                .putHeader("content-type", "text/plain")
-                .end(Json.encode(entity));
+            UserEntity entity = ar.result();
+            if (entity == null) {
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
+                    .putHeader("content-type", "text/plain")
+                    .end();
+                return;
+            }
+
+            routingContext.response()
+                .putHeader("content-type", Bodies.contentType(routingContext))
+                .end(Bodies.encode(routingContext, entity));
+        });
     }
 
     // Update a user, /users/{userId}
     public void putUser(RoutingContext routingContext) {
         UserEntity userEntity;
         try {
-            userEntity = Json.decodeValue(routingContext.getBody(), UserEntity.class);
+            userEntity = Bodies.decode(routingContext, UserEntity.class);
             userEntity.id = Long.decode(routingContext.request().getParam("userId"));
         }
         catch (Exception e) {
@@ -90,15 +114,21 @@ public class UserRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        if (DatastoreHelpers.updateUser(datastore, userEntity, false)) {
-            routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
-        }
-        else {
-            routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
-        }
+        repositories.users.update(userEntity).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            if (ar.result()) {
+                routingContext.response().setStatusCode(HttpResponseStatus.NO_CONTENT.code());
+            }
+            else {
+                routingContext.response().setStatusCode(HttpResponseStatus.NOT_FOUND.code());
+            }
 
-        routingContext.response().putHeader("content-type", "text/plain").end();
+            routingContext.response().putHeader("content-type", "text/plain").end();
+        });
     }
 
     // Delete a user, /users/{userId}
@@ -115,15 +145,32 @@ public class UserRoute {
             return;
         }
 
-        Datastore datastore = DatastoreHelpers.getDatastore();
-        int statusCode = HttpResponseStatus.NO_CONTENT.code();
-        if (!EntityManager.DeleteUser(datastore, userId)) {
-            statusCode = HttpResponseStatus.BAD_REQUEST.code();
-        }
+        // Deleting everything a user owns can take a while, so it runs as a background job. The response carries
+        // the job id, which can be polled at /jobs/{jobId}. A user that doesn't exist gets no job.
+        repositories.users.get(userId).compose(entity -> {
+            if (entity == null) {
+                return Future.<JobEntity>succeededFuture(null);
+            }
+            return jobManager.submit(EntityManager.deleteUserJobType, entity.id);
+        }).setHandler(ar -> {
+            if (ar.failed()) {
+                RouteHelpers.fail(routingContext, ar.cause());
+                return;
+            }
+
+            if (ar.result() == null) {
+                routingContext.response()
+                    .setStatusCode(HttpResponseStatus.NOT_FOUND.code())
+                    .putHeader("content-type", "text/plain")
+                    .end();
+                return;
+            }
 
-        routingContext.response()
-                .setStatusCode(statusCode)
+            routingContext.response()
+                .setStatusCode(HttpResponseStatus.ACCEPTED.code())
                 .putHeader("content-type", "text/plain")
-                .end();
+                .putHeader("location", "/jobs/" + ar.result().id)
+                .end(Long.toString(ar.result().id));
+        });
     }
 }
@@ -0,0 +1,94 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import me.samng.myreads.api.entities.ReadingListEntity;
+import me.samng.myreads.api.routes.Bodies;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BodiesTest {
+    private static ReadingListEntity readingList() {
+        ReadingListEntity entity = new ReadingListEntity();
+        entity.id = 12;
+        entity.userId = 3;
+        entity.name = "list";
+        entity.description = "a list with a long enough description to need a one-byte length";
+        entity.tagIds = new ArrayList<>(Arrays.asList(1L, 2L));
+        return entity;
+    }
+
+    private static String hex(Object value) {
+        return ByteBufUtil.hexDump(Bodies.encode(Bodies.Format.CBOR, value).getByteBuf());
+    }
+
+    @Test
+    public void encodesCborExamples() {
+        // From the examples in RFC 7049, appendix A.
+        assertEquals("1864", hex(100));
+        assertEquals("3903e7", hex(-1000));
+        assertEquals("1b000000e8d4a51000", hex(1000000000000L));
+        assertEquals("6161", hex("a"));
+        assertEquals("83010203", hex(Arrays.asList(1, 2, 3)));
+        assertEquals("f5", hex(true));
+        assertEquals("f6", hex(null));
+        assertEquals("fb3ff199999999999a", hex(1.1));
+    }
+
+    private static JsonNode tree(String hex) {
+        Buffer body = Buffer.buffer(Unpooled.wrappedBuffer(ByteBufUtil.decodeHexDump(hex)));
+        return Bodies.decode(Bodies.Format.CBOR, body, JsonNode.class);
+    }
+
+    @Test
+    public void decodesIndefiniteLengthsAndHalfFloats() {
+        assertEquals("{\"a\":1,\"b\":[2,3]}", tree("bf61610161629f0203ffff").toString());
+        assertEquals(1.5, tree("f93e00").doubleValue(), 0);
+    }
+
+    @Test
+    public void roundTripsEntities() {
+        Buffer body = Bodies.encode(Bodies.Format.CBOR, readingList());
+        assertEquals(readingList(), Bodies.decode(Bodies.Format.CBOR, body, ReadingListEntity.class));
+
+        Buffer ids = Bodies.encode(Bodies.Format.CBOR, new Long[] { 4L, 5L });
+        assertArrayEquals(new Long[] { 4L, 5L }, Bodies.decode(Bodies.Format.CBOR, ids, Long[].class));
+
+        // The same tree as the JSON, just smaller.
+        assertEquals(Json.encode(readingList()), Json.encode(Bodies.decode(Bodies.Format.CBOR, body, JsonNode.class)));
+        assertEquals(true, body.length() < Json.encode(readingList()).length());
+    }
+
+    @Test(expected = DecodeException.class)
+    public void truncatedBodyThrows() {
+        Buffer body = Bodies.encode(Bodies.Format.CBOR, readingList());
+        Bodies.decode(Bodies.Format.CBOR, body.getBuffer(0, body.length() - 1), ReadingListEntity.class);
+    }
+
+    @Test(expected = DecodeException.class)
+    public void deepNestingThrows() {
+        byte[] nested = new byte[500000];
+        Arrays.fill(nested, (byte) 0x81);
+        Bodies.decode(Bodies.Format.CBOR, Buffer.buffer(nested), JsonNode.class);
+    }
+
+    @Test
+    public void negotiatesJsonUnlessCborIsPreferred() {
+        assertEquals(Bodies.Format.JSON, Bodies.negotiate(null));
+        assertEquals(Bodies.Format.JSON, Bodies.negotiate("application/json, text/plain, */*"));
+        assertEquals(Bodies.Format.CBOR, Bodies.negotiate("application/cbor"));
+        assertEquals(Bodies.Format.CBOR, Bodies.negotiate("application/cbor, application/json;q=0.5"));
+        assertEquals(Bodies.Format.JSON, Bodies.negotiate("application/cbor;q=0.2, application/json"));
+        assertEquals(Bodies.Format.JSON, Bodies.negotiate("application/cbor;q=0"));
+        assertEquals(Bodies.Format.JSON, Bodies.negotiate("application/cbor;q=0.5, */*"));
+        assertEquals(Bodies.Format.JSON, Bodies.negotiate("application/cbor;q=0.5, application/*"));
+        assertEquals(Bodies.Format.CBOR, Bodies.negotiate("application/cbor, */*;q=0.8"));
+    }
+}
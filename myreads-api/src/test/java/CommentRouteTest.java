@@ -65,7 +65,7 @@ public class CommentRouteTest {
             return TestHelper.deleteReadingListElement(context, client, this.userId, this.rleId, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteRLEFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -124,7 +124,7 @@ public class CommentRouteTest {
             return TestHelper.deleteReadingListElement(context, client, this.userId, this.rleId, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteRLEFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -192,7 +192,7 @@ public class CommentRouteTest {
             return TestHelper.deleteReadingListElement(context, client, this.userId, this.rleId, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteRLEFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
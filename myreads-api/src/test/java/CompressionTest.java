@@ -0,0 +1,67 @@
+import io.vertx.core.buffer.Buffer;
+import me.samng.myreads.api.routes.Compression;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionTest {
+    private static String body(int items) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < items; i++) {
+            builder.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"tagName\":\"tag ").append(i).append("\"}");
+        }
+        return builder.append("]").toString();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = new byte[4096];
+        int read;
+        while ((read = in.read(bytes)) > 0) {
+            out.write(bytes, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void negotiatesEncoding() {
+        assertNull(Compression.negotiate(null));
+        assertNull(Compression.negotiate("identity"));
+        assertEquals("gzip", Compression.negotiate("gzip, deflate, br"));
+        assertEquals("gzip", Compression.negotiate("*"));
+        assertEquals("deflate", Compression.negotiate("gzip;q=0.5, deflate"));
+        assertNull(Compression.negotiate("gzip;q=0"));
+    }
+
+    @Test
+    public void compressesWholeBodies() throws IOException {
+        Buffer raw = Buffer.buffer(body(200));
+
+        Buffer gzipped = Compression.compress("gzip", raw);
+        assertTrue(gzipped.length() < raw.length() / 4);
+        assertEquals(raw.toString(), read(new GZIPInputStream(new ByteArrayInputStream(gzipped.getBytes()))));
+
+        Buffer deflated = Compression.compress("deflate", raw);
+        assertEquals(raw.toString(), read(new InflaterInputStream(new ByteArrayInputStream(deflated.getBytes()))));
+    }
+
+    @Test
+    public void streamsChunksThatDecodeAsOneBody() throws IOException {
+        Compression.Stream stream = new Compression.Stream("gzip");
+        Buffer compressed = Buffer.buffer();
+        compressed.appendBuffer(stream.compress(Buffer.buffer("[1,2"), false));
+        compressed.appendBuffer(stream.compress(Buffer.buffer(",3,4"), false));
+        compressed.appendBuffer(stream.compress(Buffer.buffer("]"), true));
+
+        assertEquals("[1,2,3,4]", read(new GZIPInputStream(new ByteArrayInputStream(compressed.getBytes()))));
+    }
+}
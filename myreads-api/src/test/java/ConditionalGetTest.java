@@ -0,0 +1,48 @@
+import me.samng.myreads.api.Generations;
+import me.samng.myreads.api.routes.Bodies;
+import me.samng.myreads.api.routes.ConditionalGet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConditionalGetTest {
+    @Test
+    public void generationsMoveOnWithWrites() {
+        long before = Generations.get(41);
+        assertEquals(before, Generations.get(41));
+        assertNotEquals(before, Generations.get(42));
+
+        Generations.bump(41);
+        assertNotEquals(before, Generations.get(41));
+    }
+
+    @Test
+    public void etagsDifferByFormatAndEncoding() {
+        String json = ConditionalGet.etag(7, 3, Bodies.Format.JSON, null);
+        assertEquals("\"7-3-json\"", json);
+        assertNotEquals(json, ConditionalGet.etag(7, 3, Bodies.Format.CBOR, null));
+        assertNotEquals(json, ConditionalGet.etag(7, 3, Bodies.Format.JSON, "gzip"));
+        assertNotEquals(json, ConditionalGet.etag(8, 3, Bodies.Format.JSON, null));
+    }
+
+    @Test
+    public void matchesIfNoneMatch() {
+        String etag = ConditionalGet.etag(7, 3, Bodies.Format.JSON, null);
+        assertTrue(ConditionalGet.matches(etag, etag));
+        assertTrue(ConditionalGet.matches("\"other\", W/" + etag, etag));
+        assertFalse(ConditionalGet.matches(null, etag));
+        assertFalse(ConditionalGet.matches("\"7-2-json\"", etag));
+    }
+
+    @Test
+    public void coversWhatBelongsToOneUser() {
+        assertTrue(ConditionalGet.covers("/users/12"));
+        assertTrue(ConditionalGet.covers("/users/12/readingLists/3"));
+        assertFalse(ConditionalGet.covers("/users/12/home"));
+        assertFalse(ConditionalGet.covers("/users/me/readingLists"));
+        assertFalse(ConditionalGet.covers("/tags"));
+    }
+}
@@ -0,0 +1,48 @@
+import com.google.cloud.datastore.Entity;
+import me.samng.myreads.api.entities.EntityCodecs;
+import me.samng.myreads.api.entities.ReadingListElementEntity;
+import me.samng.myreads.api.entities.ReadingListEntity;
+
+import java.util.function.Function;
+
+// Compares the direct codecs against the reflective path they replace. Not part of the test run; run it with
+//   mvn test-compile exec:java -Dexec.mainClass=EntityCodecBenchmark -Dexec.classpathScope=test
+public class EntityCodecBenchmark {
+    private static int warmupIterations = 200000;
+    private static int iterations = 1000000;
+
+    private static long time(Entity e, Function<Entity, ?> fromEntity, int count) {
+        long start = System.nanoTime();
+        Object last = null;
+        for (int i = 0; i < count; i++) {
+            last = fromEntity.apply(e);
+        }
+        if (last == null) {
+            throw new IllegalStateException();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void compare(String name, Entity e, Function<Entity, ?> fromEntity) {
+        String kind = e.getKey().getKind();
+
+        EntityCodecs.setReflective(kind, true);
+        time(e, fromEntity, warmupIterations);
+        long reflective = time(e, fromEntity, iterations);
+
+        EntityCodecs.setReflective(kind, false);
+        time(e, fromEntity, warmupIterations);
+        long direct = time(e, fromEntity, iterations);
+
+        System.out.println(String.format("%-20s reflective %6.0f ns/op, direct %6.0f ns/op, %.1fx",
+            name,
+            (double) reflective / iterations,
+            (double) direct / iterations,
+            (double) reflective / direct));
+    }
+
+    public static void main(String[] args) {
+        compare("readingList", EntityCodecsTest.readingList(), ReadingListEntity::fromEntity);
+        compare("readingListElement", EntityCodecsTest.readingListElement(), ReadingListElementEntity::fromEntity);
+    }
+}
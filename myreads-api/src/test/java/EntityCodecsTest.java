@@ -0,0 +1,149 @@
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.NullValue;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.entities.*;
+import me.samng.myreads.api.entities.indexes.TagToReadingListEntity;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// The direct codecs have to produce exactly what the reflective path does.
+public class EntityCodecsTest {
+    private static String app = "test-app";
+
+    static Entity readingList() {
+        return Entity.newBuilder(Key.newBuilder(app, "readingList", 12L).build())
+            .set("name", "list")
+            .set("description", "a list")
+            .set("userId", 3L)
+            .set("tagIds", EntityCodecs.longValues(Arrays.asList(1L, 2L)))
+            .set("readingListElementIds", EntityCodecs.longValues(Arrays.asList(5L, 6L, 7L)))
+            .set("version", 4L)
+            .set("deleted", false)
+            .build();
+    }
+
+    static Entity readingListElement() {
+        return Entity.newBuilder(Key.newBuilder(app, "readingListElement", 13L).build())
+            .set("name", "element")
+            .set("description", "an element")
+            .set("userId", 3L)
+            .set("link", "http://example.com")
+            .set("tagIds", EntityCodecs.longValues(Arrays.asList(1L)))
+            .set("listIds", EntityCodecs.longValues(Arrays.asList(12L)))
+            .set("version", 2L)
+            .set("deleted", true)
+            .build();
+    }
+
+    private static <T> void assertSameBothWays(Entity e, Function<Entity, T> fromEntity) {
+        String kind = e.getKey().getKind();
+        T direct = fromEntity.apply(e);
+        EntityCodecs.setReflective(kind, true);
+        T reflective = fromEntity.apply(e);
+        EntityCodecs.setReflective(kind, false);
+        assertEquals(reflective, direct);
+    }
+
+    @After
+    public void tearDown() {
+        for (String kind : new String[] { "user", "readingList", "readingListElement", "comment", "followedList", "tag", "job", "tagToReadingList", "feedEntry" }) {
+            EntityCodecs.setReflective(kind, false);
+        }
+    }
+
+    @Test
+    public void readingListsMatch() {
+        assertSameBothWays(readingList(), ReadingListEntity::fromEntity);
+    }
+
+    @Test
+    public void readingListElementsMatch() {
+        // commentIds is missing, so it keeps its default.
+        assertSameBothWays(readingListElement(), ReadingListElementEntity::fromEntity);
+    }
+
+    @Test
+    public void otherKindsMatch() {
+        assertSameBothWays(Entity.newBuilder(Key.newBuilder(app, "user", 1L).build())
+            .set("name", "name")
+            .set("email", "a@b.com")
+            .set("userId", "external")
+            .set("deleted", false)
+            .build(), UserEntity::fromEntity);
+        assertSameBothWays(Entity.newBuilder(Key.newBuilder(app, "comment", 2L).build())
+            .set("commentText", "nice")
+            .set("userId", 3L)
+            .set("readingListElementId", 13L)
+            .set("deleted", false)
+            .build(), CommentEntity::fromEntity);
+        assertSameBothWays(Entity.newBuilder(Key.newBuilder(app, "followedList", 4L).build())
+            .set("userId", 3L)
+            .set("listId", 12L)
+            .set("ownerId", 5L)
+            .set("orphaned", true)
+            .set("deleted", false)
+            .build(), FollowedListEntity::fromEntity);
+        assertSameBothWays(Entity.newBuilder(Key.newBuilder(app, "tag", 6L).build())
+            .set("tagName", "Fiction")
+            .set("normalizedName", "fiction")
+            .set("deleted", false)
+            .build(), TagEntity::fromEntity);
+        assertSameBothWays(Entity.newBuilder(Key.newBuilder(app, "job", 7L).build())
+            .set("type", "deleteUser")
+            .set("targetId", 3L)
+            .set("status", "running")
+            .set("phase", "readingLists")
+            .set("cursor", "abc")
+            .set("processed", 40L)
+            .set("error", "")
+            .set("createdAt", 100L)
+            .set("updatedAt", 200L)
+            .set("owner", "a1b2")
+            .set("leaseExpiresAt", 300L)
+            .build(), JobEntity::fromEntity);
+        assertSameBothWays(Entity.newBuilder(Key.newBuilder(app, "tagToReadingList", "3:1:12").build())
+            .set("userId", 3L)
+            .set("tagId", 1L)
+            .set("readingListId", 12L)
+            .build(), TagToReadingListEntity::fromEntity);
+        assertSameBothWays(Entity.newBuilder(Key.newBuilder(app, "feedEntry", DatastoreHelpers.feedEntryKeyName(100L, 4L, 12L, 13L)).build())
+            .set("userId", 4L)
+            .set("ownerId", 3L)
+            .set("readingListId", 12L)
+            .set("readingListName", "list")
+            .set("readingListElementId", 13L)
+            .set("readingListElementName", "element")
+            .set("createdAt", 100L)
+            .build(), FeedEntryEntity::fromEntity);
+    }
+
+    // The reflective path can't read a null property at all.
+    @Test
+    public void nullPropertiesDecode() {
+        Entity e = Entity.newBuilder(Key.newBuilder(app, "readingList", 12L).build())
+            .set("name", NullValue.of())
+            .set("tagIds", NullValue.of())
+            .set("userId", 3L)
+            .build();
+        ReadingListEntity entity = ReadingListEntity.fromEntity(e);
+        assertNull(entity.name);
+        assertNull(entity.tagIds);
+        assertEquals(3L, entity.userId);
+    }
+
+    // Within one feed, keys sort newest first.
+    @Test
+    public void feedKeysSortNewestFirst() {
+        String older = DatastoreHelpers.feedEntryKeyName(1000L, 4L, 12L, 99L);
+        String newer = DatastoreHelpers.feedEntryKeyName(2000L, 4L, 12L, 13L);
+        assertTrue(newer.compareTo(older) < 0);
+    }
+}
@@ -0,0 +1,98 @@
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import me.samng.myreads.api.FanOut;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(VertxUnitRunner.class)
+public class FanOutTest {
+    private Vertx vertx;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    private static List<Integer> items(int count) {
+        ArrayList<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    @Test
+    public void runsEveryItemWithinParallelism(TestContext context) {
+        final Async async = context.async();
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        vertx.runOnContext(v -> FanOut.run(items(20), 3, FanOut.Policy.CONTINUE, item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Future<Void> fut = Future.future();
+            vertx.setTimer(5, id -> {
+                running.decrementAndGet();
+                fut.complete();
+            });
+            return fut;
+        }).setHandler(context.asyncAssertSuccess(result -> {
+            context.assertEquals(result.succeeded, 20);
+            context.assertTrue(result.failures.isEmpty());
+            context.assertEquals(maxRunning.get(), 3);
+            async.complete();
+        })));
+    }
+
+    @Test
+    public void continueCollectsFailures(TestContext context) {
+        final Async async = context.async();
+
+        vertx.runOnContext(v -> FanOut.run(items(10), 4, FanOut.Policy.CONTINUE, item ->
+            item % 3 == 0 ? Future.failedFuture(new RuntimeException("item " + item)) : Future.succeededFuture()
+        ).setHandler(context.asyncAssertSuccess(result -> {
+            context.assertEquals(result.succeeded, 6);
+            context.assertEquals(result.failures.size(), 4);
+            context.assertEquals(result.failures.get(0).item, 0);
+            async.complete();
+        })));
+    }
+
+    @Test
+    public void failFastStopsStartingItems(TestContext context) {
+        final Async async = context.async();
+
+        AtomicInteger started = new AtomicInteger();
+        vertx.runOnContext(v -> FanOut.run(items(100), 2, FanOut.Policy.FAIL_FAST, item -> {
+            started.incrementAndGet();
+            return item == 5 ? Future.failedFuture(new RuntimeException("broken")) : Future.succeededFuture();
+        }).setHandler(context.asyncAssertFailure(cause -> {
+            context.assertEquals(cause.getMessage(), "broken");
+            context.assertEquals(started.get(), 6);
+            async.complete();
+        })));
+    }
+
+    @Test
+    public void emptyAndSynchronousItemsComplete(TestContext context) {
+        FanOut.run(new ArrayList<Integer>(), 4, FanOut.Policy.FAIL_FAST, item -> Future.succeededFuture())
+            .setHandler(context.asyncAssertSuccess(result -> context.assertEquals(result.succeeded, 0)));
+
+        // Items that complete straight away mustn't recurse once per item.
+        FanOut.run(items(100000), 4, FanOut.Policy.CONTINUE, item -> Future.succeededFuture())
+            .setHandler(context.asyncAssertSuccess(result -> context.assertEquals(result.succeeded, 100000)));
+    }
+}
@@ -1,12 +1,14 @@
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import io.vertx.ext.web.client.WebClient;
 import me.samng.myreads.api.MainVerticle;
 import me.samng.myreads.api.entities.FollowedListEntity;
+import me.samng.myreads.api.entities.ReadingListElementEntity;
 import me.samng.myreads.api.entities.ReadingListEntity;
 import me.samng.myreads.api.entities.UserEntity;
 import org.junit.After;
@@ -51,7 +53,7 @@ public class FollowedListRouteTest {
                 return TestHelper.getFollowedLists(context, client, userId, HttpResponseStatus.OK.code());
             });
         getFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -110,10 +112,76 @@ public class FollowedListRouteTest {
             return TestHelper.deleteFollowedList(context, client, this.userId, e[0].id(), HttpResponseStatus.NO_CONTENT.code());
         });
         Future<Void> deleteUserFut = deleteListFollowedFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         });
         deleteUserFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.ownerId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.ownerId, HttpResponseStatus.ACCEPTED.code());
+        })
+            .setHandler(x -> { async.complete(); });
+    }
+
+    @Test
+    public void feed(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "feedTest@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        Future<Long> postFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<Long> postOwnerFut = postFut.compose(userId -> {
+                this.userId = userId;
+
+                return TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+            });
+        Future<Long> postListFut = postOwnerFut.compose(ownerId -> {
+            ReadingListEntity listEntity = new ReadingListEntity();
+            listEntity.description = "feedDescription";
+            listEntity.name = "feedTestList";
+
+            this.ownerId = ownerId;
+
+            return TestHelper.postReadingList(context, client, listEntity, ownerId, HttpResponseStatus.CREATED.code()); });
+        Future<Long> postFollowedListFut = postListFut.compose(listId -> {
+            FollowedListEntity followedListEntity = new FollowedListEntity();
+            followedListEntity.listId = listId;
+            followedListEntity.ownerId = this.ownerId;
+
+            this.listId = listId;
+
+            return TestHelper.postFollowedList(context, client, followedListEntity, userId, HttpResponseStatus.CREATED.code());
+        });
+        Future<Long> postRLEFut = postFollowedListFut.compose(x -> {
+            ReadingListElementEntity rle = new ReadingListElementEntity();
+            rle.name = "feedElement";
+            rle.link = "some amazon link";
+
+            return TestHelper.postReadingListElement(context, client, rle, this.ownerId, HttpResponseStatus.CREATED.code());
+        });
+        Future<Void> addToListFut = postRLEFut.compose(rleId -> {
+            long[] rleIds = { rleId };
+            return TestHelper.addRLEToReadingList(context, client, this.ownerId, this.listId, rleIds, HttpResponseStatus.OK.code());
+        });
+        Future<JsonArray> followerFeedFut = addToListFut.compose(x -> {
+            return TestHelper.getFeed(context, client, this.userId, HttpResponseStatus.OK.code());
+        });
+        Future<JsonArray> ownerFeedFut = followerFeedFut.compose(feed -> {
+            context.assertEquals(1, feed.size());
+            context.assertEquals(this.listId, feed.getJsonObject(0).getLong("readingListId"));
+            context.assertEquals("feedElement", feed.getJsonObject(0).getString("readingListElementName"));
+
+            return TestHelper.getFeed(context, client, this.ownerId, HttpResponseStatus.OK.code());
+        });
+        Future<Void> deleteUserFut = ownerFeedFut.compose(feed -> {
+            context.assertEquals(0, feed.size());
+
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
+        });
+        deleteUserFut.compose(x -> {
+            return TestHelper.deleteUser(context, client, this.ownerId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -0,0 +1,259 @@
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import me.samng.myreads.api.WorkerPool;
+import me.samng.myreads.api.entities.JobEntity;
+import me.samng.myreads.api.jobs.InMemoryJobStore;
+import me.samng.myreads.api.jobs.JobManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs against the in-memory job store, so it doesn't need Datastore.
+@RunWith(VertxUnitRunner.class)
+public class JobManagerTest {
+    private Vertx vertx;
+    private WorkerPool workerPool;
+    private InMemoryJobStore store;
+
+    @Before
+    public void setUp(TestContext context) {
+        vertx = Vertx.vertx();
+        workerPool = new WorkerPool(vertx, new JsonObject());
+        store = new InMemoryJobStore();
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        workerPool.close();
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    // A step that does three batches of ten, finishing on the third.
+    private Future<Boolean> countingStep(JobEntity job) {
+        Future<Boolean> fut = Future.future();
+        vertx.setTimer(5, id -> {
+            job.processed += 10;
+            job.cursor = Long.toString(job.processed);
+            fut.complete(job.processed >= 30);
+        });
+        return fut;
+    }
+
+    private Future<JobEntity> waitForJob(JobManager jobManager, long jobId) {
+        return jobManager.get(jobId).compose(job -> {
+            if (job.finished()) {
+                return Future.succeededFuture(job);
+            }
+
+            Future<JobEntity> fut = Future.future();
+            vertx.setTimer(10, id -> waitForJob(jobManager, jobId).setHandler(fut));
+            return fut;
+        });
+    }
+
+    @Test
+    public void submittedJobRunsToCompletion(TestContext context) {
+        final Async async = context.async();
+
+        JobManager jobManager = new JobManager(vertx, store, workerPool, new JsonObject());
+        jobManager.register("count", this::countingStep);
+
+        vertx.runOnContext(v -> jobManager.submit("count", 42)
+            .compose(job -> {
+                context.assertTrue(job.id > 0);
+                return waitForJob(jobManager, job.id);
+            })
+            .setHandler(context.asyncAssertSuccess(job -> {
+                context.assertEquals(job.status, JobEntity.succeededStatus);
+                context.assertEquals(job.targetId, 42L);
+                context.assertEquals(job.processed, 30L);
+                async.complete();
+            })));
+    }
+
+    @Test
+    public void failedStepFailsJob(TestContext context) {
+        final Async async = context.async();
+
+        AtomicInteger attempts = new AtomicInteger();
+        JobManager jobManager = new JobManager(vertx, store, workerPool, new JsonObject()
+            .put("jobs.maxStepAttempts", 3)
+            .put("jobs.retryDelayMs", 1));
+        jobManager.register("fail", job -> {
+            attempts.incrementAndGet();
+            return Future.failedFuture(new RuntimeException("broken"));
+        });
+
+        vertx.runOnContext(v -> jobManager.submit("fail", 1)
+            .compose(job -> waitForJob(jobManager, job.id))
+            .setHandler(context.asyncAssertSuccess(job -> {
+                context.assertEquals(job.status, JobEntity.failedStatus);
+                context.assertEquals(job.error, "broken");
+                context.assertEquals(attempts.get(), 3);
+                async.complete();
+            })));
+    }
+
+    @Test
+    public void failedStepIsRetriedFromSavedProgress(TestContext context) {
+        final Async async = context.async();
+
+        // Fails every other step, after moving the cursor, which mustn't stick.
+        AtomicInteger calls = new AtomicInteger();
+        JobManager jobManager = new JobManager(vertx, store, workerPool, new JsonObject().put("jobs.retryDelayMs", 1));
+        jobManager.register("flaky", job -> {
+            if (calls.incrementAndGet() % 2 == 1) {
+                job.processed += 1000;
+                return Future.failedFuture(new RuntimeException("hiccup"));
+            }
+            return countingStep(job);
+        });
+
+        vertx.runOnContext(v -> jobManager.submit("flaky", 1)
+            .compose(job -> waitForJob(jobManager, job.id))
+            .setHandler(context.asyncAssertSuccess(job -> {
+                context.assertEquals(job.status, JobEntity.succeededStatus);
+                context.assertEquals(job.processed, 30L);
+                context.assertEquals(job.error, "");
+                context.assertEquals(calls.get(), 6);
+                async.complete();
+            })));
+    }
+
+    @Test
+    public void resumeLeavesJobsLeasedElsewhere(TestContext context) {
+        // Still running in another process, which renewed its lease a moment ago.
+        JobEntity elsewhere = new JobEntity();
+        elsewhere.type = "count";
+        elsewhere.status = JobEntity.runningStatus;
+        elsewhere.owner = "another process";
+        elsewhere.leaseExpiresAt = System.currentTimeMillis() + 60000;
+        long jobId = store.create(elsewhere);
+
+        JobManager jobManager = new JobManager(vertx, store, workerPool, new JsonObject());
+        jobManager.register("count", this::countingStep);
+
+        vertx.runOnContext(v -> jobManager.resume().setHandler(context.asyncAssertSuccess(resumed -> {
+            context.assertEquals(resumed, 0);
+            context.assertEquals(store.get(jobId).owner, "another process");
+        })));
+    }
+
+    @Test
+    public void unknownJobTypeIsRejected(TestContext context) {
+        JobManager jobManager = new JobManager(vertx, store, workerPool, new JsonObject());
+
+        vertx.runOnContext(v -> jobManager.submit("nothing", 1).setHandler(context.asyncAssertFailure()));
+    }
+
+    @Test
+    public void resumeContinuesFromSavedProgress(TestContext context) {
+        final Async async = context.async();
+
+        // A job that was part way through when the process went away.
+        JobEntity interrupted = new JobEntity();
+        interrupted.type = "count";
+        interrupted.status = JobEntity.runningStatus;
+        interrupted.processed = 20;
+        interrupted.cursor = "20";
+        long jobId = store.create(interrupted);
+
+        JobEntity done = new JobEntity();
+        done.type = "count";
+        done.status = JobEntity.succeededStatus;
+        store.create(done);
+
+        ArrayList<String> cursorsSeen = new ArrayList<>();
+        JobManager jobManager = new JobManager(vertx, store, workerPool, new JsonObject());
+        jobManager.register("count", job -> {
+            cursorsSeen.add(job.cursor);
+            return countingStep(job);
+        });
+
+        vertx.runOnContext(v -> jobManager.resume()
+            .compose(resumed -> {
+                context.assertEquals(resumed, 1);
+                return waitForJob(jobManager, jobId);
+            })
+            .setHandler(context.asyncAssertSuccess(job -> {
+                context.assertEquals(job.status, JobEntity.succeededStatus);
+                context.assertEquals(job.processed, 30L);
+                context.assertEquals(cursorsSeen.size(), 1);
+                context.assertEquals(cursorsSeen.get(0), "20");
+                async.complete();
+            })));
+    }
+
+    @Test
+    public void stoppedManagerHandsJobsOn(TestContext context) {
+        final Async async = context.async();
+
+        // The first manager never gets past its first step before it's stopped.
+        Future<Boolean> stuck = Future.future();
+        JobManager first = new JobManager(vertx, store, workerPool, new JsonObject());
+        first.register("count", job -> stuck);
+        JobManager second = new JobManager(vertx, store, workerPool, new JsonObject());
+        second.register("count", this::countingStep);
+
+        vertx.runOnContext(v -> first.submit("count", 1)
+            .compose(job -> {
+                Future<Void> started = Future.future();
+                vertx.setTimer(50, id -> started.complete());
+                return started.compose(x -> first.stop()).map(job);
+            })
+            .compose(job -> {
+                stuck.complete(true);
+                return second.resume().compose(resumed -> {
+                    context.assertEquals(resumed, 1);
+                    return waitForJob(second, job.id);
+                });
+            })
+            .setHandler(context.asyncAssertSuccess(job -> {
+                context.assertEquals(job.status, JobEntity.succeededStatus);
+                context.assertEquals(job.processed, 30L);
+                async.complete();
+            })));
+    }
+
+    @Test
+    public void concurrentJobsAreBounded(TestContext context) {
+        final Async async = context.async();
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        JobManager jobManager = new JobManager(vertx, store, workerPool, new JsonObject().put("jobs.maxConcurrent", 2));
+        jobManager.register("slow", job -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Future<Boolean> fut = Future.future();
+            vertx.setTimer(20, id -> {
+                running.decrementAndGet();
+                fut.complete(true);
+            });
+            return fut;
+        });
+
+        vertx.runOnContext(v -> {
+            ArrayList<Future> jobs = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                jobs.add(jobManager.submit("slow", i).compose(job -> waitForJob(jobManager, job.id)));
+            }
+
+            CompositeFuture.all(jobs).setHandler(context.asyncAssertSuccess(all -> {
+                context.assertTrue(maxRunning.get() <= 2);
+                for (Future f : jobs) {
+                    context.assertEquals(((JobEntity) f.result()).status, JobEntity.succeededStatus);
+                }
+                async.complete();
+            }));
+        });
+    }
+}
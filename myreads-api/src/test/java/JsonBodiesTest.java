@@ -0,0 +1,44 @@
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import me.samng.myreads.api.entities.ReadingListEntity;
+import me.samng.myreads.api.routes.JsonBodies;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+// Bodies have to come out exactly as they did through Json.encode and Json.decodeValue.
+public class JsonBodiesTest {
+    private static ReadingListEntity readingList() {
+        ReadingListEntity entity = new ReadingListEntity();
+        entity.id = 12;
+        entity.userId = 3;
+        entity.name = "list";
+        entity.tagIds = new ArrayList<>(Arrays.asList(1L, 2L));
+        return entity;
+    }
+
+    @Test
+    public void encodesLikeJson() {
+        assertEquals(Json.encode(readingList()), JsonBodies.encode(readingList()).toString());
+
+        ArrayList<ReadingListEntity> lists = new ArrayList<>(Arrays.asList(readingList(), readingList()));
+        assertEquals(Json.encode(lists.toArray()), JsonBodies.encode(lists).toString());
+    }
+
+    @Test
+    public void decodesLikeJson() {
+        Buffer body = Buffer.buffer(Json.encode(readingList()));
+        assertEquals(Json.decodeValue(body, ReadingListEntity.class), JsonBodies.decode(body, ReadingListEntity.class));
+        assertArrayEquals(new Long[] { 4L, 5L }, JsonBodies.decode(Buffer.buffer("[4,5]"), Long[].class));
+    }
+
+    @Test(expected = DecodeException.class)
+    public void badBodyThrows() {
+        JsonBodies.decode(Buffer.buffer("{not json"), ReadingListEntity.class);
+    }
+}
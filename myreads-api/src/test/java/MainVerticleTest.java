@@ -1,6 +1,10 @@
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
@@ -12,6 +16,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RunWith(VertxUnitRunner.class)
 public class MainVerticleTest {
     private Vertx vertx;
@@ -43,4 +50,30 @@ public class MainVerticleTest {
                     async.complete();
                 });
     }
+
+    @Test
+    public void severalInstancesShareThePort(TestContext context) {
+        final Async async = context.async();
+        int port = MainVerticle.port + 1;
+
+        DeploymentOptions options = new DeploymentOptions()
+            .setInstances(3)
+            .setConfig(new JsonObject().put("http.port", port).put("jobs.store", "memory"));
+        vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess(deploymentId -> {
+            WebClient client = WebClient.create(vertx);
+            List<Future> responses = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Future<HttpResponse<Buffer>> response = Future.future();
+                client.get(port, "localhost", "/").send(response);
+                responses.add(response);
+            }
+            CompositeFuture.all(responses).setHandler(context.asyncAssertSuccess(all -> {
+                for (int i = 0; i < all.size(); i++) {
+                    HttpResponse<Buffer> response = all.resultAt(i);
+                    context.assertEquals(response.statusCode(), HttpResponseStatus.OK.code());
+                }
+                async.complete();
+            }));
+        }));
+    }
 }
@@ -1,6 +1,8 @@
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
@@ -49,7 +51,7 @@ public class ReadingListElementRouteTest {
                 return TestHelper.getAllReadingListElements(context, client, userId, HttpResponseStatus.OK.code()).map(userId);
             });
         getAllFut.compose(userId -> {
-            return TestHelper.deleteUser(context, client, userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -91,7 +93,49 @@ public class ReadingListElementRouteTest {
             return TestHelper.getReadingListElement(context, client, this.userId, listId, HttpResponseStatus.NOT_FOUND.code());
         });
         failGetFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
+        })
+            .setHandler(x -> { async.complete(); });
+    }
+
+    @Test
+    public void batchRLEs(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "batchRLETest@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        Future<Long> postFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<JsonArray> postBatchFut = postFut.compose(userId -> {
+            this.userId = userId;
+
+            // The middle entry isn't an element, so it fails on its own and the others are still created.
+            JsonArray entities = new JsonArray()
+                .add(new JsonObject().put("name", "first").put("link", "link one"))
+                .add("not an element")
+                .add(new JsonObject().put("name", "second").put("link", "link two"));
+            return TestHelper.postReadingListElementsBatch(context, client, entities, userId, HttpResponseStatus.OK.code());
+        });
+        Future<JsonArray> getBatchFut = postBatchFut.compose(created -> {
+            context.assertEquals(3, created.size());
+            context.assertEquals(HttpResponseStatus.CREATED.code(), created.getJsonObject(0).getInteger("status"));
+            context.assertEquals(HttpResponseStatus.BAD_REQUEST.code(), created.getJsonObject(1).getInteger("status"));
+            context.assertEquals(HttpResponseStatus.CREATED.code(), created.getJsonObject(2).getInteger("status"));
+
+            String ids = created.getJsonObject(0).getLong("id") + ",-1," + created.getJsonObject(2).getLong("id");
+            return TestHelper.getReadingListElementsById(context, client, this.userId, ids, HttpResponseStatus.OK.code());
+        });
+        getBatchFut.compose(found -> {
+            context.assertEquals(3, found.size());
+            context.assertEquals("first", found.getJsonObject(0).getJsonObject("entity").getString("name"));
+            context.assertEquals(HttpResponseStatus.NOT_FOUND.code(), found.getJsonObject(1).getInteger("status"));
+            context.assertEquals("link two", found.getJsonObject(2).getJsonObject("entity").getString("link"));
+
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -137,7 +181,7 @@ public class ReadingListElementRouteTest {
             return TestHelper.deleteReadingListElement(context, client, this.userId, e.id, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -198,7 +242,7 @@ public class ReadingListElementRouteTest {
             return TestHelper.deleteReadingListElement(context, client, this.userId, this.rleId, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteListFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -250,7 +294,7 @@ public class ReadingListElementRouteTest {
             return TestHelper.deleteReadingListElement(context, client, this.userId, this.rleId, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteListFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
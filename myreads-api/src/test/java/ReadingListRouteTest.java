@@ -1,6 +1,8 @@
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
@@ -15,6 +17,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+
 @RunWith(VertxUnitRunner.class)
 public class ReadingListRouteTest {
     private Vertx vertx;
@@ -51,7 +55,7 @@ public class ReadingListRouteTest {
             return TestHelper.getAllReadingLists(context, client, userId, HttpResponseStatus.OK.code()).map(userId);
         });
         getAllFut.compose(userId -> {
-            return TestHelper.deleteUser(context, client, userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -91,7 +95,102 @@ public class ReadingListRouteTest {
             return TestHelper.getReadingList(context, client, this.userId, listId, HttpResponseStatus.NOT_FOUND.code());
         });
         failGetFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
+        })
+            .setHandler(x -> { async.complete(); });
+    }
+
+    @Test
+    public void conditionalGetList(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "conditionalGetTest@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        Future<Long> postFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<Long> postListFut = postFut.compose(userId -> {
+            ReadingListEntity listEntity = new ReadingListEntity();
+            listEntity.userId = userId;
+            listEntity.description = "description";
+            listEntity.name = "listName";
+
+            this.userId = userId;
+
+            return TestHelper.postReadingList(context, client, listEntity, userId, HttpResponseStatus.CREATED.code()); });
+        Future<Long> unchangedFut = postListFut.compose(listId -> {
+            return TestHelper.getReadingListConditionally(context, client, this.userId, listId, null, HttpResponseStatus.OK.code())
+                .compose(etag -> {
+                    context.assertNotNull(etag);
+                    return TestHelper.getReadingListConditionally(context, client, this.userId, listId, etag, HttpResponseStatus.NOT_MODIFIED.code());
+                })
+                .map(listId);
+        });
+        Future<Long> changedFut = unchangedFut.compose(listId -> {
+            ReadingListEntity putEntity = new ReadingListEntity();
+            putEntity.id = listId;
+            putEntity.userId = this.userId;
+            putEntity.description = "newdescription";
+            putEntity.name = "newlistName";
+
+            // The old tag no longer matches once the list has changed.
+            return TestHelper.getReadingListConditionally(context, client, this.userId, listId, null, HttpResponseStatus.OK.code())
+                .compose(etag -> TestHelper.putReadingList(context, client, putEntity, this.userId, HttpResponseStatus.NO_CONTENT.code())
+                    .compose(v -> TestHelper.getReadingListConditionally(context, client, this.userId, listId, etag, HttpResponseStatus.OK.code())))
+                .map(listId);
+        });
+        changedFut.compose(listId -> {
+            return TestHelper.deleteReadingList(context, client, this.userId, listId, HttpResponseStatus.NO_CONTENT.code());
+        }).compose(x -> {
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
+        })
+            .setHandler(x -> { async.complete(); });
+    }
+
+    @Test
+    public void putListWithStaleVersion(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "putStaleListTest@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        Future<Long> postFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<Long> postListFut = postFut.compose(userId -> {
+            ReadingListEntity listEntity = new ReadingListEntity();
+            listEntity.userId = userId;
+            listEntity.description = "description";
+            listEntity.name = "listName";
+
+            this.userId = userId;
+
+            return TestHelper.postReadingList(context, client, listEntity, userId, HttpResponseStatus.CREATED.code()); });
+        Future<Long> putFut = postListFut.compose(listId -> {
+            ReadingListEntity putEntity = new ReadingListEntity();
+            putEntity.id = listId;
+            putEntity.userId = this.userId;
+            putEntity.description = "newdescription";
+            putEntity.name = "newlistName";
+
+            // The first write takes the list from version 1 to 2, so the same If-Match loses the second time.
+            return TestHelper.putReadingListIfMatch(context, client, putEntity, this.userId, 1L, HttpResponseStatus.NO_CONTENT.code())
+                .compose(v -> TestHelper.putReadingListIfMatch(context, client, putEntity, this.userId, 1L, HttpResponseStatus.PRECONDITION_FAILED.code()))
+                .compose(v -> TestHelper.getReadingList(context, client, this.userId, listId, HttpResponseStatus.OK.code()))
+                .map(list -> {
+                    context.assertEquals(2L, list.version);
+                    return listId;
+                });
+        });
+        putFut.compose(listId -> {
+            return TestHelper.deleteReadingList(context, client, this.userId, listId, HttpResponseStatus.NO_CONTENT.code());
+        }).compose(x -> {
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -134,7 +233,7 @@ public class ReadingListRouteTest {
             return TestHelper.deleteReadingList(context, client, this.userId, e.id, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -194,7 +293,130 @@ public class ReadingListRouteTest {
             return TestHelper.deleteReadingList(context, client, this.userId, this.listId, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
+        })
+            .setHandler(x -> { async.complete(); });
+    }
+
+    // More elements than fit in one transaction alongside the list.
+    @Test
+    public void addManyElementsToList(TestContext context) {
+        final Async async = context.async();
+        final int count = 30;
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "addManyElements@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        long[] rleIds = new long[count];
+        Future<Long> postFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<Long> postListFut = postFut.compose(userId -> {
+            ReadingListEntity listEntity = new ReadingListEntity();
+            listEntity.userId = userId;
+            listEntity.description = "description";
+            listEntity.name = "listName";
+
+            this.userId = userId;
+
+            return TestHelper.postReadingList(context, client, listEntity, userId, HttpResponseStatus.CREATED.code()); });
+        Future<CompositeFuture> postRLEsFut = postListFut.compose(listId -> {
+            this.listId = listId;
+
+            ArrayList<Future> posts = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                ReadingListElementEntity rle = new ReadingListElementEntity();
+                rle.userId = userId;
+                rle.description = "description";
+                rle.name = "rleName " + i + " For addManyElementsToList";
+                rle.link = "some amazon link";
+
+                final int index = i;
+                posts.add(TestHelper.postReadingListElement(context, client, rle, userId, HttpResponseStatus.CREATED.code())
+                    .map(rleId -> rleIds[index] = rleId));
+            }
+            return CompositeFuture.all(posts);
+        });
+        Future<Void> addToListFut = postRLEsFut.compose(x -> {
+            return TestHelper.addRLEToReadingList(context, client, this.userId, this.listId, rleIds, HttpResponseStatus.OK.code());
+        });
+        Future<ReadingListEntity> getFut = addToListFut.compose(x -> { return TestHelper.getReadingList(context, client, this.userId, this.listId, HttpResponseStatus.OK.code()); });
+        Future<Void> deleteFut = getFut.compose(e -> {
+            context.assertEquals(e.readingListElementIds.size(), count);
+            for (long rleId : rleIds) {
+                context.assertTrue(e.readingListElementIds.contains(rleId));
+            }
+
+            return TestHelper.deleteReadingList(context, client, this.userId, this.listId, HttpResponseStatus.NO_CONTENT.code());
+        });
+        deleteFut.compose(x -> {
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
+        })
+            .setHandler(x -> { async.complete(); });
+    }
+
+    @Test
+    public void expandList(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "expandListTest@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        Future<Long> postFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<Long> postListFut = postFut.compose(userId -> {
+            ReadingListEntity listEntity = new ReadingListEntity();
+            listEntity.userId = userId;
+            listEntity.description = "description";
+            listEntity.name = "listName";
+
+            this.userId = userId;
+
+            return TestHelper.postReadingList(context, client, listEntity, userId, HttpResponseStatus.CREATED.code()); });
+        Future<Long> postRLEFut = postListFut.compose(listId -> {
+            ReadingListElementEntity rle = new ReadingListElementEntity();
+            rle.userId = userId;
+            rle.description = "description";
+            rle.name = "rleName For expandList";
+            rle.link = "some amazon link";
+
+            this.listId = listId;
+
+            return TestHelper.postReadingListElement(context, client, rle, userId, HttpResponseStatus.CREATED.code());
+        });
+        Future<Void> addToListFut = postRLEFut.compose(rleId -> {
+            this.rleId = rleId;
+
+            long[] rleIds = { rleId };
+            return TestHelper.addRLEToReadingList(context, client, this.userId, this.listId, rleIds, HttpResponseStatus.OK.code());
+        });
+        Future<JsonObject> badExpandFut = addToListFut.compose(x -> {
+            return TestHelper.getExpandedReadingList(context, client, this.userId, this.listId, "everything", HttpResponseStatus.BAD_REQUEST.code());
+        });
+        Future<JsonObject> expandFut = badExpandFut.compose(x -> {
+            return TestHelper.getExpandedReadingList(context, client, this.userId, this.listId, "elements,tags,commentCounts", HttpResponseStatus.OK.code());
+        });
+        Future<Void> deleteRleFut = expandFut.compose(view -> {
+            context.assertEquals("listName", view.getJsonObject("readingList").getString("name"));
+            context.assertEquals(0, view.getJsonArray("tags").size());
+            context.assertEquals(1, view.getJsonArray("elements").size());
+            JsonObject element = view.getJsonArray("elements").getJsonObject(0);
+            context.assertEquals("rleName For expandList", element.getJsonObject("element").getString("name"));
+            context.assertEquals(0, element.getInteger("commentCount"));
+            context.assertNull(view.getString("nextCursor"));
+
+            return TestHelper.deleteReadingListElement(context, client, this.userId, this.rleId, HttpResponseStatus.NO_CONTENT.code());
+        });
+        Future<Void> deleteFut = deleteRleFut.compose(e -> {
+            return TestHelper.deleteReadingList(context, client, this.userId, this.listId, HttpResponseStatus.NO_CONTENT.code());
+        });
+        deleteFut.compose(x -> {
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -254,7 +476,7 @@ public class ReadingListRouteTest {
             return TestHelper.deleteReadingList(context, client, this.userId, this.listId, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteListFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -305,7 +527,7 @@ public class ReadingListRouteTest {
             return TestHelper.deleteReadingList(context, client, this.userId, this.listId, HttpResponseStatus.NO_CONTENT.code());
         });
         deleteListFut.compose(x -> {
-            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, this.userId, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -0,0 +1,100 @@
+import io.vertx.core.json.Json;
+import me.samng.myreads.api.DatastoreHelpers;
+import me.samng.myreads.api.TagIndex;
+import me.samng.myreads.api.TagQuery;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TagQueryTest {
+    private TagIndex.UserIndex index;
+
+    // Tag 1 on lists 100-104, tag 2 on 103-105, tag 3 on 104 only.
+    @Before
+    public void setUp() {
+        index = new TagIndex.UserIndex();
+        for (long id = 100; id <= 104; id++) {
+            index.add(1, id);
+        }
+        for (long id = 103; id <= 105; id++) {
+            index.add(2, id);
+        }
+        index.add(3, 104);
+    }
+
+    private List<Long> matches(String query) throws Exception {
+        return TagQuery.parse(Json.mapper.readTree(query)).matches(index);
+    }
+
+    @Test
+    public void singleTagKeepsTheOldBody() throws Exception {
+        assertEquals(Arrays.asList(103L, 104L, 105L), matches("2"));
+        assertEquals(Collections.emptyList(), matches("9"));
+    }
+
+    @Test
+    public void evaluatesAndOrNot() throws Exception {
+        assertEquals(Arrays.asList(103L, 104L), matches("{\"and\": [1, 2]}"));
+        assertEquals(Arrays.asList(100L, 101L, 102L, 103L, 104L, 105L), matches("{\"or\": [1, 2]}"));
+        assertEquals(Arrays.asList(100L, 101L, 102L), matches("{\"and\": [1, {\"not\": 2}]}"));
+        assertEquals(Arrays.asList(103L, 105L), matches("{\"and\": [{\"or\": [2, 3]}, {\"not\": 3}]}"));
+        assertEquals(Collections.emptyList(), matches("{\"and\": [1, 9, 2]}"));
+    }
+
+    @Test
+    public void followsRemovals() throws Exception {
+        index.remove(2, 104);
+        assertEquals(Arrays.asList(103L), matches("{\"and\": [1, 2]}"));
+        index.add(2, 104);
+        assertEquals(Arrays.asList(103L, 104L), matches("{\"and\": [1, 2]}"));
+    }
+
+    @Test
+    public void rejectsWhatItCantAnswer() {
+        for (String query : Arrays.asList("{\"not\": 1}", "{\"and\": [{\"not\": 1}]}", "{\"or\": [1, {\"not\": 2}]}",
+            "{\"and\": []}", "{\"xor\": [1, 2]}", "\"1\"", "{\"and\": [1], \"or\": [2]}",
+            "{\"and\": [1, {\"not\": {\"not\": 2}}]}", nested(TagQuery.maxDepth + 1))) {
+            try {
+                matches(query);
+                fail("Accepted " + query);
+            }
+            catch (IllegalArgumentException e) {
+                // Expected.
+            }
+            catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    // {"or": [{"or": [... 1 ...]}]}, so many levels deep.
+    private static String nested(int depth) {
+        StringBuilder query = new StringBuilder("1");
+        for (int i = 1; i < depth; i++) {
+            query.insert(0, "{\"or\": [").append("]}");
+        }
+        return query.toString();
+    }
+
+    @Test
+    public void acceptsNestingUpToTheLimit() throws Exception {
+        assertEquals(Arrays.asList(100L, 101L, 102L, 103L, 104L), matches(nested(TagQuery.maxDepth)));
+    }
+
+    @Test
+    public void parsesMappingKeyNames() {
+        long[] mapping = DatastoreHelpers.parseTagMappingKeyName(DatastoreHelpers.tagMappingKeyName(5, 6, 7));
+        assertArrayEquals(new long[] { 5, 6, 7 }, mapping);
+        assertNull(DatastoreHelpers.parseTagMappingKeyName(null));
+        assertNull(DatastoreHelpers.parseTagMappingKeyName("5:6"));
+        assertNull(DatastoreHelpers.parseTagMappingKeyName("a:b:c"));
+    }
+}
@@ -51,4 +51,42 @@ public class TagRouteTest {
             return TestHelper.getTag(context, client, tagId, HttpResponseStatus.OK.code());
         }).setHandler(x -> { async.complete(); });
     }
+
+    @Test
+    public void postDuplicateTag(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        TagEntity entity = new TagEntity();
+        entity.tagName = "duplicateTestTag";
+
+        Future<Long> firstFut = TestHelper.postTag(context, client, entity, HttpResponseStatus.CREATED.code());
+        firstFut.compose(firstId -> TestHelper.postTag(context, client, entity, HttpResponseStatus.CREATED.code()))
+            .compose(secondId -> {
+                context.assertEquals(firstFut.result(), secondId);
+                return Future.succeededFuture();
+            }).setHandler(x -> { async.complete(); });
+    }
+
+    @Test
+    public void searchTags(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        TagEntity entity = new TagEntity();
+        entity.tagName = "searchTestTag";
+
+        Future<Long> postFut = TestHelper.postTag(context, client, entity, HttpResponseStatus.CREATED.code());
+        postFut.compose(tagId -> TestHelper.searchTags(context, client, "SEARCHtest", HttpResponseStatus.OK.code()))
+            .compose(tags -> {
+                boolean found = false;
+                for (TagEntity tag : tags) {
+                    found = found || tag.id == postFut.result();
+                }
+                context.assertTrue(found);
+                return Future.succeededFuture();
+            }).setHandler(x -> { async.complete(); });
+    }
 }
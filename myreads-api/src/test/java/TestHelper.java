@@ -1,8 +1,12 @@
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.HttpResponse;
 import io.vertx.ext.web.client.WebClient;
 import me.samng.myreads.api.MainVerticle;
@@ -27,24 +31,110 @@ public class TestHelper {
         return fut;
     }
 
+    // Returns the next page cursor, or null if there wasn't one.
+    public static Future<String> getUsersPage(
+        TestContext context,
+        WebClient client,
+        String limit,
+        String cursor,
+        int expectedStatusCode) {
+        Future<String> fut = Future.future();
+
+        HttpRequest<Buffer> request = client.get(port, "localhost", "/users").addQueryParam("limit", limit);
+        if (cursor != null) {
+            request.addQueryParam("cursor", cursor);
+        }
+        request.send(ar -> {
+                HttpResponse<Buffer> response = ar.result();
+
+                context.assertEquals(response.statusCode(), expectedStatusCode);
+                if (response.statusCode() == HttpResponseStatus.OK.code()) {
+                    UserEntity[] users = Json.decodeValue(response.bodyAsString(), UserEntity[].class);
+                    context.assertTrue(users.length <= Integer.parseInt(limit));
+                }
+                fut.complete(response.getHeader("X-Next-Cursor"));
+            });
+        return fut;
+    }
+
+    public static Future<UserEntity[]> getAllUsersStreamed(
+        TestContext context,
+        WebClient client,
+        int expectedStatusCode) {
+        Future<UserEntity[]> fut = Future.future();
+
+        client.get(port, "localhost", "/users")
+            .addQueryParam("stream", "true")
+            .addQueryParam("limit", "1")
+            .send(ar -> {
+                HttpResponse<Buffer> response = ar.result();
+
+                context.assertEquals(response.statusCode(), expectedStatusCode);
+                context.assertNull(response.getHeader("X-Next-Cursor"));
+                fut.complete(Json.decodeValue(response.bodyAsString(), UserEntity[].class));
+            });
+        return fut;
+    }
+
+    // Deleting a user runs as a job, so this waits for the job to finish before completing.
     public static Future<Void> deleteUser(
         TestContext context,
         WebClient client,
         long userId,
         int expectedStatusCode) {
-        Future fut = Future.future();
+        Future<Long> fut = Future.future();
 
         client.delete(port, "localhost", "/users/" + Long.toString(userId))
             .send(ar -> {
                 HttpResponse<Buffer> r = ar.result();
 
                 context.assertEquals(r.statusCode(), expectedStatusCode);
-                fut.complete();
+                fut.complete(r.statusCode() == HttpResponseStatus.ACCEPTED.code() ? Long.decode(r.bodyAsString()) : null);
+            });
+
+        return fut.compose(jobId -> jobId == null ? Future.succeededFuture() : waitForJob(context, client, jobId))
+            .map(job -> {
+                if (job != null) {
+                    context.assertEquals(job.status, JobEntity.succeededStatus);
+                }
+                return null;
+            });
+    }
+
+    public static Future<JobEntity> getJob(
+        TestContext context,
+        WebClient client,
+        long jobId,
+        int expectedStatusCode) {
+        Future<JobEntity> fut = Future.future();
+
+        client.get(port, "localhost", "/jobs/" + Long.toString(jobId))
+            .send(ar -> {
+                HttpResponse<Buffer> r = ar.result();
+
+                context.assertEquals(r.statusCode(), expectedStatusCode);
+                fut.complete(r.statusCode() == HttpResponseStatus.OK.code() ? Json.decodeValue(r.bodyAsString(), JobEntity.class) : null);
             });
 
         return fut;
     }
 
+    // Polls the job until it has finished.
+    public static Future<JobEntity> waitForJob(
+        TestContext context,
+        WebClient client,
+        long jobId) {
+        return getJob(context, client, jobId, HttpResponseStatus.OK.code()).compose(job -> {
+            if (job.finished()) {
+                return Future.succeededFuture(job);
+            }
+
+            Future<JobEntity> fut = Future.future();
+            Vertx.currentContext().owner().setTimer(200, id -> waitForJob(context, client, jobId).setHandler(fut));
+            return fut;
+        });
+    }
+
     public static Future<Long> postUser(
         TestContext context,
         WebClient client,
@@ -105,6 +195,23 @@ public class TestHelper {
         return fut;
     }
 
+    public static Future<JsonObject> getHome(
+        TestContext context,
+        WebClient client,
+        long userId,
+        int expectedStatusCode) {
+        Future<JsonObject> fut = Future.future();
+
+        client.get(port, "localhost", "/users/" + userId + "/home")
+            .send(ar -> {
+                HttpResponse<Buffer> response = ar.result();
+
+                context.assertEquals(response.statusCode(), expectedStatusCode);
+                fut.complete(expectedStatusCode == HttpResponseStatus.OK.code() ? response.bodyAsJsonObject() : null);
+            });
+        return fut;
+    }
+
     public static Future<Void> getAllReadingLists(
         TestContext context,
         WebClient client,
@@ -180,6 +287,27 @@ public class TestHelper {
         return fut;
     }
 
+    public static Future<Void> putReadingListIfMatch(
+        TestContext context,
+        WebClient client,
+        ReadingListEntity entity,
+        long userId,
+        long version,
+        int expectedStatusCode) {
+        Future fut = Future.future();
+
+        client.put(port, "localhost", "/users/" + Long.toString(userId) + "/readingLists/" + entity.id)
+            .putHeader("If-Match", "\"" + version + "\"")
+            .sendJson(entity,
+                ar -> {
+                    HttpResponse<Buffer> response = ar.result();
+
+                    context.assertEquals(response.statusCode(), expectedStatusCode);
+                    fut.complete();
+                });
+        return fut;
+    }
+
     public static Future<ReadingListEntity> getReadingList(
         TestContext context,
         WebClient client,
@@ -205,6 +333,65 @@ public class TestHelper {
         return fut;
     }
 
+    public static Future<JsonObject> getExpandedReadingList(
+        TestContext context,
+        WebClient client,
+        long userId,
+        long listId,
+        String expand,
+        int expectedStatusCode) {
+        Future<JsonObject> fut = Future.future();
+
+        client.get(port, "localhost", "/users/" + userId + "/readingLists/" + listId + "?expand=" + expand)
+            .send(ar -> {
+                HttpResponse<Buffer> response = ar.result();
+
+                context.assertEquals(response.statusCode(), expectedStatusCode);
+                fut.complete(expectedStatusCode == HttpResponseStatus.OK.code() ? response.bodyAsJsonObject() : null);
+            });
+        return fut;
+    }
+
+    // Returns the ETag the response came back with.
+    public static Future<String> getReadingListConditionally(
+        TestContext context,
+        WebClient client,
+        long userId,
+        long listId,
+        String ifNoneMatch,
+        int expectedStatusCode) {
+        Future<String> fut = Future.future();
+
+        HttpRequest<Buffer> request = client.get(port, "localhost", "/users/" + userId + "/readingLists/" + listId);
+        if (ifNoneMatch != null) {
+            request.putHeader("If-None-Match", ifNoneMatch);
+        }
+        request.send(ar -> {
+                HttpResponse<Buffer> response = ar.result();
+
+                context.assertEquals(response.statusCode(), expectedStatusCode);
+                fut.complete(response.getHeader("ETag"));
+            });
+        return fut;
+    }
+
+    public static Future<JsonArray> getFeed(
+        TestContext context,
+        WebClient client,
+        long userId,
+        int expectedStatusCode) {
+        Future<JsonArray> fut = Future.future();
+
+        client.get(port, "localhost", "/users/" + userId + "/feed")
+            .send(ar -> {
+                HttpResponse<Buffer> response = ar.result();
+
+                context.assertEquals(response.statusCode(), expectedStatusCode);
+                fut.complete(expectedStatusCode == HttpResponseStatus.OK.code() ? response.bodyAsJsonArray() : null);
+            });
+        return fut;
+    }
+
     public static Future<Long> postFollowedList(
         TestContext context,
         WebClient client,
@@ -318,6 +505,44 @@ public class TestHelper {
         return fut;
     }
 
+    // The body is an array of per-item results.
+    public static Future<JsonArray> postReadingListElementsBatch(
+        TestContext context,
+        WebClient client,
+        JsonArray entities,
+        long userId,
+        int expectedStatusCode) {
+        Future<JsonArray> fut = Future.future();
+
+        client.post(port, "localhost", "/users/" + Long.toString(userId) + "/readingListElements/batch")
+            .sendBuffer(entities.toBuffer(),
+                ar -> {
+                    HttpResponse<Buffer> response = ar.result();
+
+                    context.assertEquals(response.statusCode(), expectedStatusCode);
+                    fut.complete(response.bodyAsJsonArray());
+                });
+        return fut;
+    }
+
+    public static Future<JsonArray> getReadingListElementsById(
+        TestContext context,
+        WebClient client,
+        long userId,
+        String ids,
+        int expectedStatusCode) {
+        Future<JsonArray> fut = Future.future();
+
+        client.get(port, "localhost", "/users/" + userId + "/readingListElements?ids=" + ids)
+            .send(ar -> {
+                HttpResponse<Buffer> response = ar.result();
+
+                context.assertEquals(response.statusCode(), expectedStatusCode);
+                fut.complete(response.bodyAsJsonArray());
+            });
+        return fut;
+    }
+
     public static Future<Void> putReadingListElement(
         TestContext context,
         WebClient client,
@@ -564,6 +789,30 @@ public class TestHelper {
             return fut;
     }
 
+    public static Future<TagEntity[]> searchTags(
+        TestContext context,
+        WebClient client,
+        String prefix,
+        int expectedStatusCode) {
+            Future<TagEntity[]> fut = Future.future();
+
+            client.get(port, "localhost", "/tags/search")
+                .addQueryParam("prefix", prefix)
+                .send(ar -> {
+                    HttpResponse<Buffer> response = ar.result();
+
+                    context.assertEquals(response.statusCode(), expectedStatusCode);
+
+                    if (expectedStatusCode == HttpResponseStatus.OK.code()) {
+                        fut.complete(Json.decodeValue(response.body(), TagEntity[].class));
+                    }
+                    else {
+                        fut.complete(null);
+                    }
+                });
+            return fut;
+    }
+
     public static Future<Void> addTagToReadingList(
         TestContext context,
         WebClient client,
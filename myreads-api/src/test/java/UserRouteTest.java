@@ -1,11 +1,13 @@
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import io.vertx.ext.web.client.WebClient;
 import me.samng.myreads.api.MainVerticle;
+import me.samng.myreads.api.entities.ReadingListEntity;
 import me.samng.myreads.api.entities.UserEntity;
 import org.junit.After;
 import org.junit.Before;
@@ -37,6 +39,64 @@ public class UserRouteTest {
         TestHelper.getAllUsers(context, client, HttpResponseStatus.OK.code()).setHandler(x -> { async.complete(); });
     }
 
+    @Test
+    public void getAllUsersPaged(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "PagedUserTest@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        // Two users guarantee that a page of one has a next page.
+        Future<Long> firstFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<Long> secondFut = firstFut.compose(x -> TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code()));
+        secondFut.compose(x -> TestHelper.getUsersPage(context, client, "1", null, HttpResponseStatus.OK.code()))
+            .compose(cursor -> {
+                context.assertNotNull(cursor);
+                return TestHelper.getUsersPage(context, client, "1", cursor, HttpResponseStatus.OK.code());
+            })
+            .compose(x -> TestHelper.deleteUser(context, client, firstFut.result(), HttpResponseStatus.ACCEPTED.code()))
+            .compose(x -> TestHelper.deleteUser(context, client, secondFut.result(), HttpResponseStatus.ACCEPTED.code()))
+            .setHandler(x -> { async.complete(); });
+    }
+
+    @Test
+    public void getAllUsersStreamed(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "StreamedUserTest@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        // Fetching one row at a time, the stream still has to span both users.
+        Future<Long> firstFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<Long> secondFut = firstFut.compose(x -> TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code()));
+        secondFut.compose(x -> TestHelper.getAllUsersStreamed(context, client, HttpResponseStatus.OK.code()))
+            .compose(users -> {
+                context.assertTrue(users.length >= 2);
+                return TestHelper.deleteUser(context, client, firstFut.result(), HttpResponseStatus.ACCEPTED.code());
+            })
+            .compose(x -> TestHelper.deleteUser(context, client, secondFut.result(), HttpResponseStatus.ACCEPTED.code()))
+            .setHandler(x -> { async.complete(); });
+    }
+
+    @Test
+    public void getAllUsersInvalidPage(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        TestHelper.getUsersPage(context, client, "0", null, HttpResponseStatus.BAD_REQUEST.code())
+            .compose(x -> TestHelper.getUsersPage(context, client, "10", "not a cursor", HttpResponseStatus.BAD_REQUEST.code()))
+            .setHandler(x -> { async.complete(); });
+    }
+
     @Test
     public void postUser(TestContext context) {
         final Async async = context.async();
@@ -55,7 +115,7 @@ public class UserRouteTest {
             context.assertEquals(entity.name, e.name);
             context.assertEquals(entity.userId, e.userId);
 
-            return TestHelper.deleteUser(context, client, e.id, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, e.id, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -87,7 +147,7 @@ public class UserRouteTest {
             context.assertEquals("changeduser", e.name);
             context.assertEquals("changeid", e.userId);
 
-            return TestHelper.deleteUser(context, client, e.id, HttpResponseStatus.NO_CONTENT.code());
+            return TestHelper.deleteUser(context, client, e.id, HttpResponseStatus.ACCEPTED.code());
         })
             .setHandler(x -> { async.complete(); });
     }
@@ -104,9 +164,65 @@ public class UserRouteTest {
 
         Future<Long> postFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
         Future<Long> deleteFut = postFut.compose(userId -> {
-            return TestHelper.deleteUser(context, client, userId, HttpResponseStatus.NO_CONTENT.code()).map(userId);
+            return TestHelper.deleteUser(context, client, userId, HttpResponseStatus.ACCEPTED.code()).map(userId);
         });
         deleteFut.compose(userId -> { return TestHelper.getUser(context, client, userId, HttpResponseStatus.NOT_FOUND.code()); })
             .setHandler(x -> { async.complete(); });
     }
+
+    @Test
+    public void deleteMissingUser(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "deleteMissingUserTest@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        // Once it's gone, deleting it again finds nothing and starts no job.
+        Future<Long> postFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<Long> deleteFut = postFut.compose(userId -> {
+            return TestHelper.deleteUser(context, client, userId, HttpResponseStatus.ACCEPTED.code()).map(userId);
+        });
+        deleteFut.compose(userId -> { return TestHelper.deleteUser(context, client, userId, HttpResponseStatus.NOT_FOUND.code()); })
+            .setHandler(x -> { async.complete(); });
+    }
+
+    @Test
+    public void home(TestContext context) {
+        final Async async = context.async();
+
+        WebClient client = WebClient.create(vertx);
+
+        UserEntity entity = new UserEntity();
+        entity.email = "homeTest@test.com";
+        entity.name = "testuser";
+        entity.userId = "testId";
+
+        Future<Long> postFut = TestHelper.postUser(context, client, entity, HttpResponseStatus.CREATED.code());
+        Future<Long> postListFut = postFut.compose(userId -> {
+            ReadingListEntity listEntity = new ReadingListEntity();
+            listEntity.userId = userId;
+            listEntity.description = "description";
+            listEntity.name = "homeList";
+
+            return TestHelper.postReadingList(context, client, listEntity, userId, HttpResponseStatus.CREATED.code()).map(userId);
+        });
+        Future<Long> homeFut = postListFut.compose(userId -> {
+            return TestHelper.getHome(context, client, userId, HttpResponseStatus.OK.code()).map(home -> {
+                context.assertEquals("homeTest@test.com", home.getJsonObject("user").getString("email"));
+                context.assertEquals(1, home.getJsonArray("readingLists").size());
+                context.assertEquals("homeList", home.getJsonArray("readingLists").getJsonObject(0).getString("name"));
+                context.assertEquals(0, home.getJsonArray("followedLists").size());
+                context.assertNotNull(home.getJsonArray("tags"));
+                return userId;
+            });
+        });
+        homeFut.compose(userId -> {
+            return TestHelper.deleteUser(context, client, userId, HttpResponseStatus.ACCEPTED.code());
+        })
+            .setHandler(x -> { async.complete(); });
+    }
 }